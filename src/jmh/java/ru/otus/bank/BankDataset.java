@@ -0,0 +1,79 @@
+package ru.otus.bank;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.impl.AgreementDaoImpl;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.impl.PaymentProcessorImpl;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Account book shared by all benchmark threads: {@code accountCount} accounts, two per agreement (types 0 and 1),
+ * with balances large enough that no transfer or charge is rejected during a run.
+ */
+@State(Scope.Benchmark)
+public class BankDataset {
+
+    public static final int ACCOUNTS_PER_AGREEMENT = 2;
+
+    private static final BigDecimal BALANCE = new BigDecimal(1_000_000_000);
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int accountCount;
+
+    public AccountDao accountDao;
+
+    public AgreementDao agreementDao;
+
+    public AccountServiceImpl accountService;
+
+    public PaymentProcessorImpl paymentProcessor;
+
+    public long[] accountIds;
+
+    public Agreement[] agreements;
+
+    public String[] agreementNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accountDao = new AccountDaoImpl();
+        agreementDao = new AgreementDaoImpl();
+        accountService = new AccountServiceImpl(accountDao);
+        paymentProcessor = new PaymentProcessorImpl(accountService);
+
+        int agreementCount = accountCount / ACCOUNTS_PER_AGREEMENT;
+        accountIds = new long[agreementCount * ACCOUNTS_PER_AGREEMENT];
+        agreements = new Agreement[agreementCount];
+        agreementNames = new String[agreementCount];
+        for (int i = 0; i < agreementCount; i++) {
+            agreementNames[i] = "agreement_" + i;
+            agreements[i] = agreementDao.addAgreement(agreementNames[i]);
+            for (int type = 0; type < ACCOUNTS_PER_AGREEMENT; type++) {
+                accountIds[i * ACCOUNTS_PER_AGREEMENT + type] =
+                        accountService.addAccount(agreements[i], "acc_" + i + "_" + type, type, BALANCE).getId();
+            }
+        }
+    }
+
+    public long randomAccountId() {
+        return accountIds[ThreadLocalRandom.current().nextInt(accountIds.length)];
+    }
+
+    public Agreement randomAgreement() {
+        return agreements[ThreadLocalRandom.current().nextInt(agreements.length)];
+    }
+
+    public String randomAgreementName() {
+        return agreementNames[ThreadLocalRandom.current().nextInt(agreementNames.length)];
+    }
+}
@@ -0,0 +1,120 @@
+package ru.otus.bank.dao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.impl.ColumnarAccountDao;
+import ru.otus.bank.dao.mapped.MappedAccountDao;
+import ru.otus.bank.entity.Account;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Lookup cost by agreement must not depend on the total number of accounts in the book. Full scans compare the
+ * map of account objects with the columnar and the memory-mapped storage. Run with the gc profiler,
+ * {@code gc.alloc.rate.norm} of {@code findByIdOrNull} on the map storage must stay at zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountDaoBenchmark {
+
+    private static final int ACCOUNTS_PER_AGREEMENT = 3;
+
+    @Param({"1000", "100000", "1000000"})
+    int accountCount;
+
+    @Param({"map", "columnar", "mapped"})
+    String storage;
+
+    AccountDao accountDao;
+
+    long agreementCount;
+
+    Path mappedDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        switch (storage) {
+            case "columnar" -> accountDao = new ColumnarAccountDao(accountCount);
+            case "mapped" -> {
+                mappedDirectory = Files.createTempDirectory("accounts");
+                accountDao = new MappedAccountDao(mappedDirectory);
+            }
+            default -> accountDao = new AccountDaoImpl();
+        }
+        agreementCount = accountCount / ACCOUNTS_PER_AGREEMENT;
+        for (int i = 0; i < accountCount; i++) {
+            Account account = new Account();
+            account.setAgreementId(i % agreementCount + 1);
+            account.setType(i % ACCOUNTS_PER_AGREEMENT);
+            account.setNumber("acc_" + i);
+            account.setAmount(BigDecimal.TEN);
+            accountDao.save(account);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (accountDao instanceof MappedAccountDao mapped) {
+            mapped.close();
+            try (Stream<Path> files = Files.list(mappedDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(mappedDirectory);
+        }
+    }
+
+    @Benchmark
+    public Iterable<Account> findByAgreementId() {
+        return accountDao.findByAgreementId(ThreadLocalRandom.current().nextLong(agreementCount) + 1);
+    }
+
+    @Benchmark
+    public Iterable<Account> findByAgreementIdAndType() {
+        return accountDao.findByAgreementIdAndType(ThreadLocalRandom.current().nextLong(agreementCount) + 1,
+                ThreadLocalRandom.current().nextInt(ACCOUNTS_PER_AGREEMENT));
+    }
+
+    @Benchmark
+    public Optional<Account> findById() {
+        return accountDao.findById(ThreadLocalRandom.current().nextLong(accountCount) + 2);
+    }
+
+    @Benchmark
+    public Account findByIdOrNull() {
+        return accountDao.findByIdOrNull(ThreadLocalRandom.current().nextLong(accountCount) + 2);
+    }
+
+    @Benchmark
+    public long scanBalances() {
+        long total = 0;
+        for (Account account : accountDao.findAll()) {
+            total += account.getMinorAmount();
+        }
+        return total;
+    }
+}
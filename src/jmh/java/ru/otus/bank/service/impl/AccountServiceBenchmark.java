@@ -0,0 +1,44 @@
+package ru.otus.bank.service.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.otus.bank.BankDataset;
+import ru.otus.bank.entity.Account;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles of the account service on a shared account book; the thread count is set
+ * with {@code -t} or the {@code jmhThreads} Gradle property, allocation rate is reported by {@code -prof gc}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class AccountServiceBenchmark {
+
+    private static final BigDecimal SUM = new BigDecimal("0.01");
+
+    @Benchmark
+    public boolean makeTransfer(BankDataset dataset) {
+        return dataset.accountService.makeTransfer(dataset.randomAccountId(), dataset.randomAccountId(), SUM);
+    }
+
+    @Benchmark
+    public boolean charge(BankDataset dataset) {
+        return dataset.accountService.charge(dataset.randomAccountId(), SUM);
+    }
+
+    @Benchmark
+    public List<Account> getAccounts(BankDataset dataset) {
+        return dataset.accountService.getAccounts(dataset.randomAgreement());
+    }
+}
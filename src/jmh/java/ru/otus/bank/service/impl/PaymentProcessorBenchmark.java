@@ -0,0 +1,31 @@
+package ru.otus.bank.service.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.otus.bank.BankDataset;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class PaymentProcessorBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    private static final BigDecimal COMISSION_PERCENT = new BigDecimal("0.01");
+
+    @Benchmark
+    public boolean makeTransferWithComission(BankDataset dataset) {
+        return dataset.paymentProcessor.makeTransferWithComission(dataset.randomAgreement(),
+                dataset.randomAgreement(), 0, 1, AMOUNT, COMISSION_PERCENT);
+    }
+}
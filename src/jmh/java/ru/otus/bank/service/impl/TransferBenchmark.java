@@ -0,0 +1,57 @@
+package ru.otus.bank.service.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per transfer, run with {@code -prof gc}: the minor-unit path should stay near zero bytes per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+    private static final BigDecimal SUM = new BigDecimal("0.01");
+
+    AccountServiceImpl accountService;
+
+    long firstAccountId;
+
+    long secondAccountId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        accountService = new AccountServiceImpl(new AccountDaoImpl());
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        firstAccountId = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(1_000_000_000)).getId();
+        secondAccountId = accountService.addAccount(agreement, "acc2", 0, new BigDecimal(1_000_000_000)).getId();
+    }
+
+    @Benchmark
+    public boolean transferBigDecimal() {
+        return accountService.makeTransfer(firstAccountId, secondAccountId, SUM);
+    }
+
+    @Benchmark
+    public boolean transferMinor() {
+        return accountService.makeTransferMinor(firstAccountId, secondAccountId, 1, 0);
+    }
+}
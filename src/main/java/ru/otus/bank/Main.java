@@ -2,6 +2,8 @@ package ru.otus.bank;
 
 import ru.otus.bank.dao.AccountDao;
 import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.impl.AgreementDaoImpl;
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
 import ru.otus.bank.service.AccountService;
@@ -54,8 +56,8 @@ public class Main {
     }
 
     public static void init() {
-        AccountDao accountDao = new AccountDao();
-        AgreementDao agreementDao = new AgreementDao();
+        AccountDao accountDao = new AccountDaoImpl();
+        AgreementDao agreementDao = new AgreementDaoImpl();
 
         agreementService = new AgreementServiceImpl(agreementDao);
         accountService = new AccountServiceImpl(accountDao);
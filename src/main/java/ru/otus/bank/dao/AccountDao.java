@@ -2,41 +2,88 @@ package ru.otus.bank.dao;
 
 import ru.otus.bank.entity.Account;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class AccountDao {
+public interface AccountDao {
 
-    HashMap<Long, Account> accountMap = new HashMap<>();
+    Iterable<Account> findByAgreementId(Long agreementId);
 
-    AtomicLong id = new AtomicLong(1);
+    Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type);
 
-    public Iterable<Account> findByAgreementId(Long agreementId) {
-        return accountMap.values().stream()
-                .filter(account -> account.getAgreementId().equals(agreementId))
-                .toList();
+    Optional<Account> findById(Long accountId);
+
+    /**
+     * Account with the given id, or null. Meant for hot paths such as transfers: storages answer it with one
+     * probe and without boxing the id or wrapping the result.
+     */
+    default Account findByIdOrNull(long accountId) {
+        return findById(accountId).orElse(null);
     }
 
-    public Optional<Account> findById(Long accountId) {
-        if (!accountMap.containsKey(accountId)) {
-            return Optional.empty();
+    Account save(Account account);
+
+    /**
+     * Saves a batch of accounts, e.g. of a bulk import. Storages override it to hand out the ids of the new
+     * accounts as one block instead of one by one.
+     */
+    default void saveAll(List<Account> accounts) {
+        for (Account account : accounts) {
+            save(account);
         }
-        return Optional.of(accountMap.get(accountId));
     }
 
-    public Account save(Account account) {
-        if (account.getId() == null || account.getId() == 0) {
-            account.setId(id.incrementAndGet());
-        }
+    /**
+     * Hint that about {@code additionalAccounts} more accounts are going to be saved, so storages can grow
+     * their tables once instead of step by step.
+     */
+    default void reserve(int additionalAccounts) {
+    }
 
-        accountMap.put(account.getId(), account);
-        return account;
+    Iterable<Account> findAll();
+
+    /**
+     * Lazy stream over all accounts. Storages whose iteration can be split return streams that parallelize.
+     */
+    default Stream<Account> streamAll() {
+        return StreamSupport.stream(findAll().spliterator(), false);
     }
 
-    public Iterable<Account> findAll() {
-        return accountMap.values();
+    /**
+     * Up to {@code limit} accounts with ids greater than {@code afterId}, in id order; start with
+     * {@link AccountPage#FIRST}. Accounts saved while paging are returned if their id is beyond the cursor.
+     */
+    default AccountPage findPage(long afterId, int limit) {
+        return AccountPages.scan(findAll(), afterId, limit);
     }
 
+    /**
+     * Marks the start of a group of saves made by the current thread that must be persisted together,
+     * see {@link AccountUnitOfWork#commit()}. Storages without durability ignore batches.
+     */
+    default void beginBatch() {
+    }
 
+    default void commitBatch() {
+    }
+
+    default void abortBatch() {
+    }
+
+    /**
+     * Waits until the batches committed by the current thread are durable. Storages that sync to disk may
+     * return from {@link #commitBatch()} before that, so callers can release their locks first and then wait
+     * here.
+     */
+    default void awaitDurable() {
+    }
+
+    /**
+     * Whether the changes of a batch survive a crash once {@link #awaitDurable()} has returned.
+     */
+    default boolean isDurable() {
+        return false;
+    }
 }
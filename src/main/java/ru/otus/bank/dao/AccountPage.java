@@ -0,0 +1,20 @@
+package ru.otus.bank.dao;
+
+import ru.otus.bank.entity.Account;
+
+import java.util.List;
+
+/**
+ * One page of accounts in ascending id order. The next page starts after {@code nextAfterId}, which is
+ * {@link #END} once the last page has been returned.
+ */
+public record AccountPage(List<Account> accounts, long nextAfterId) {
+
+    public static final long FIRST = 0;
+
+    public static final long END = -1;
+
+    public boolean hasNext() {
+        return nextAfterId != END;
+    }
+}
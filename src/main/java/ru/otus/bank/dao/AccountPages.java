@@ -0,0 +1,79 @@
+package ru.otus.bank.dao;
+
+import ru.otus.bank.entity.Account;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongFunction;
+
+/**
+ * Keyset pagination over account ids for {@link AccountDao#findPage(long, int)} implementations.
+ */
+public final class AccountPages {
+
+    private static final Comparator<Account> BY_ID = Comparator.comparingLong(Account::getId);
+
+    private AccountPages() {
+    }
+
+    /**
+     * Finds the page with one pass over all accounts, keeping only {@code limit} candidates in memory.
+     */
+    public static AccountPage scan(Iterable<Account> accounts, long afterId, int limit) {
+        checkLimit(limit);
+        PriorityQueue<Account> page = new PriorityQueue<>(limit, BY_ID.reversed());
+        for (Account account : accounts) {
+            long id = account.getId();
+            if (id <= afterId) {
+                continue;
+            }
+            if (page.size() < limit) {
+                page.add(account);
+            } else if (id < page.peek().getId()) {
+                page.poll();
+                page.add(account);
+            }
+        }
+        List<Account> result = new ArrayList<>(page);
+        result.sort(BY_ID);
+        return page(result, limit);
+    }
+
+    /**
+     * Finds the page by looking up the ids following {@code afterId} one by one, which only pays off while ids
+     * are dense, as they are when handed out by a sequence. Gives up and returns {@code null} after
+     * {@code limit + size} lookups; callers then fall back to {@link #scan(Iterable, long, int)}.
+     *
+     * @param maxId  highest id stored
+     * @param size   number of accounts stored
+     * @param lookup account by id, or {@code null}
+     */
+    public static AccountPage probe(long afterId, int limit, long maxId, long size, LongFunction<Account> lookup) {
+        checkLimit(limit);
+        List<Account> result = new ArrayList<>(limit);
+        long budget = size + limit;
+        for (long id = Math.max(afterId, 0) + 1; id <= maxId && result.size() < limit; id++) {
+            if (--budget < 0) {
+                return null;
+            }
+            Account account = lookup.apply(id);
+            if (account != null) {
+                result.add(account);
+            }
+        }
+        return page(result, limit);
+    }
+
+    private static AccountPage page(List<Account> accounts, int limit) {
+        long next = accounts.size() < limit ? AccountPage.END : accounts.get(accounts.size() - 1).getId();
+        return new AccountPage(accounts, next);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+}
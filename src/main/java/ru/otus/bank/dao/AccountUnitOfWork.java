@@ -0,0 +1,110 @@
+package ru.otus.bank.dao;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Money;
+
+import java.util.Arrays;
+
+/**
+ * Stages balance changes of several accounts and applies them together. Nothing is written to the accounts
+ * until {@link #commit()}; the saves of a commit form one {@link AccountDao} batch, and if saving fails midway,
+ * the balances already applied are put back, so the accounts are left either fully updated or untouched.
+ * Callers are responsible for locking the staged accounts.
+ * <p>
+ * Saved accounts are matched by id, so two instances of one stored account (e.g. views handed out by separate
+ * lookups) share one staged amount.
+ * <p>
+ * Amounts are minor units, see {@link Money}. A unit of work is reusable after commit or rollback, so one
+ * instance per thread is enough.
+ */
+public class AccountUnitOfWork {
+
+    private final AccountDao accountDao;
+
+    private Account[] accounts = new Account[2];
+
+    private long[] amounts = new long[2];
+
+    private long[] previousAmounts = new long[2];
+
+    private int size;
+
+    public AccountUnitOfWork(AccountDao accountDao) {
+        this.accountDao = accountDao;
+    }
+
+    public void debit(Account account, long sum) {
+        stage(account, Money.subtract(amountOf(account), sum));
+    }
+
+    public void credit(Account account, long sum) {
+        stage(account, Money.add(amountOf(account), sum));
+    }
+
+    public long amountOf(Account account) {
+        int index = indexOf(account);
+        return index < 0 ? account.getMinorAmount() : amounts[index];
+    }
+
+    /**
+     * The amounts are changed inside the batch, so a DAO sees them change only between {@code beginBatch} and
+     * {@code commitBatch} or {@code abortBatch}.
+     */
+    public void commit() {
+        accountDao.beginBatch();
+        int applied = 0;
+        try {
+            for (; applied < size; applied++) {
+                previousAmounts[applied] = accounts[applied].getMinorAmount();
+                accounts[applied].setMinorAmount(amounts[applied]);
+            }
+            for (int i = 0; i < size; i++) {
+                accountDao.save(accounts[i]);
+            }
+            accountDao.commitBatch();
+        } catch (RuntimeException e) {
+            for (int i = 0; i < applied; i++) {
+                accounts[i].setMinorAmount(previousAmounts[i]);
+            }
+            accountDao.abortBatch();
+            throw e;
+        } finally {
+            clear();
+        }
+    }
+
+    public void rollback() {
+        clear();
+    }
+
+    private void stage(Account account, long amount) {
+        int index = indexOf(account);
+        if (index >= 0) {
+            amounts[index] = amount;
+            return;
+        }
+        if (size == accounts.length) {
+            accounts = Arrays.copyOf(accounts, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+            previousAmounts = Arrays.copyOf(previousAmounts, size * 2);
+        }
+        accounts[size] = account;
+        amounts[size] = amount;
+        size++;
+    }
+
+    private int indexOf(Account account) {
+        long id = account.getId();
+        for (int i = 0; i < size; i++) {
+            if (accounts[i] == account || id != 0 && accounts[i].getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void clear() {
+        Arrays.fill(accounts, 0, size, null);
+        size = 0;
+    }
+}
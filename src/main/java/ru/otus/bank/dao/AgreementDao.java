@@ -2,35 +2,31 @@ package ru.otus.bank.dao;
 
 import ru.otus.bank.entity.Agreement;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
 
-public class AgreementDao {
+public interface AgreementDao {
 
-    HashMap<Long, Agreement> agreementMap = new HashMap<>();
+    Agreement addAgreement(String name);
 
-    AtomicLong id = new AtomicLong(0);
+    Optional<Agreement> findByName(String name);
 
+    Agreement save(Agreement agreement);
 
-    public Agreement addAgreement(String name) {
-        Agreement agreement = new Agreement();
-        agreement.setName(name);
-        agreement.setId(id.incrementAndGet());
-
-        agreementMap.put(agreement.getId(), agreement);
-        return agreement;
+    /**
+     * Saves a batch of agreements, see {@link AccountDao#saveAll(List)}.
+     */
+    default void saveAll(List<Agreement> agreements) {
+        for (Agreement agreement : agreements) {
+            save(agreement);
+        }
     }
 
-    public Optional<Agreement> findByName(String name) {
-        return agreementMap.values().stream().filter(agreement -> agreement.getName().equals(name)).findFirst();
+    /**
+     * Hint that about {@code additionalAgreements} more agreements are going to be saved.
+     */
+    default void reserve(int additionalAgreements) {
     }
 
-    public Agreement save(Agreement agreement) {
-        if (agreement.getId() == null || agreement.getId() == 0) {
-            agreement.setId(id.incrementAndGet());
-        }
-        agreementMap.put(agreement.getId(), agreement);
-        return agreement;
-    }
+    Iterable<Agreement> findAll();
 }
@@ -0,0 +1,125 @@
+package ru.otus.bank.dao.bulk;
+
+import ru.otus.bank.entity.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static ru.otus.bank.dao.bulk.BulkLoader.HEADER_SIZE;
+import static ru.otus.bank.dao.bulk.BulkLoader.MAX_NUMBER_LENGTH;
+import static ru.otus.bank.dao.bulk.BulkLoader.NULL_INT;
+import static ru.otus.bank.dao.bulk.BulkLoader.RECORD_SIZE;
+
+/**
+ * Writes the binary import format of {@link BulkLoader}, e.g. to convert a portfolio once and load it many times.
+ * <p>
+ * File layout: a header, one fixed-width record per account and the table of agreement names the records refer
+ * to by ordinal. An account record holds the amount in minor units, the agreement ordinal, the type and the
+ * UTF-8 account number of at most {@value BulkLoader#MAX_NUMBER_LENGTH} bytes. Only the agreement names are
+ * kept in memory while writing.
+ */
+public class BulkFileWriter implements Closeable {
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    private final Map<String, Integer> agreements = new LinkedHashMap<>();
+
+    private long position = HEADER_SIZE;
+
+    private long accountCount;
+
+    public BulkFileWriter(Path file) {
+        this.file = file;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create " + file, e);
+        }
+    }
+
+    public void add(String agreementName, String accountNumber, Integer type, long minorAmount) {
+        if (agreementName == null) {
+            throw new IllegalArgumentException("Agreement name is required");
+        }
+        byte[] number = accountNumber == null ? null : accountNumber.getBytes(StandardCharsets.UTF_8);
+        if (number != null && number.length > MAX_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("Account number " + accountNumber + " is longer than "
+                    + MAX_NUMBER_LENGTH + " bytes");
+        }
+        int agreement = agreements.computeIfAbsent(agreementName, name -> agreements.size());
+
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        int start = buffer.position();
+        buffer.putLong(minorAmount)
+                .putInt(agreement)
+                .putInt(type == null ? NULL_INT : type)
+                .putShort((short) (number == null ? -1 : number.length));
+        if (number != null) {
+            buffer.put(number);
+        }
+        while (buffer.position() < start + RECORD_SIZE) {
+            buffer.put((byte) 0);
+        }
+        accountCount++;
+    }
+
+    /**
+     * Writes the agreement table and the header.
+     */
+    @Override
+    public void close() {
+        try (channel) {
+            long agreementsOffset = position + (long) buffer.position();
+            for (String name : agreements.keySet()) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < Integer.BYTES + bytes.length) {
+                    flush();
+                }
+                if (buffer.remaining() < Integer.BYTES + bytes.length) {
+                    throw new IllegalArgumentException("Agreement name " + name + " is too long");
+                }
+                buffer.putInt(bytes.length).put(bytes);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(BulkLoader.MAGIC).putInt(BulkLoader.VERSION).putInt(Money.SCALE).putInt(0)
+                    .putLong(accountCount).putLong(agreements.size()).putLong(agreementsOffset);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write " + file, e);
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write " + file, e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,447 @@
+package ru.otus.bank.dao.bulk;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Imports a portfolio of accounts, with the agreements they belong to, from a CSV file or from the binary
+ * format written by {@link BulkFileWriter}. Agreements are matched by name: existing ones are reused and the
+ * missing ones are created first, as one batch. Then the file is split into chunks that are memory-mapped and
+ * parsed in parallel; every chunk saves its accounts in batches through {@link AccountDao#saveAll(List)}, so
+ * memory use is bounded by the chunks in flight, whatever the size of the file. Storages are told the number of
+ * records up front through {@code reserve}.
+ * <p>
+ * CSV lines are {@code agreement,number,type,amount} without quoting or a header line; an empty number or type
+ * is stored as null and the amount is a decimal with at most {@link Money#SCALE} fraction digits. Accounts are
+ * not saved in file order, so their ids don't follow it either.
+ * <p>
+ * The storages have to accept concurrent saves. A malformed record fails the load with the accounts of the
+ * batches saved so far left in place.
+ */
+public class BulkLoader {
+
+    static final int MAGIC = 0x424B4C44;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+    static final int MAX_NUMBER_LENGTH = RECORD_SIZE - 18;
+
+    static final int NULL_INT = Integer.MIN_VALUE;
+
+    static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final AgreementDao agreementDao;
+
+    private final AccountDao accountDao;
+
+    private final ForkJoinPool pool;
+
+    private final int batchSize;
+
+    private final int chunkSize;
+
+    public BulkLoader(AgreementDao agreementDao, AccountDao accountDao) {
+        this(agreementDao, accountDao, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param pool      runs the parsing of the chunks
+     * @param batchSize number of accounts passed to one {@link AccountDao#saveAll(List)}
+     */
+    public BulkLoader(AgreementDao agreementDao, AccountDao accountDao, ForkJoinPool pool, int batchSize) {
+        this(agreementDao, accountDao, pool, batchSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    BulkLoader(AgreementDao agreementDao, AccountDao accountDao, ForkJoinPool pool, int batchSize, int chunkSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.agreementDao = agreementDao;
+        this.accountDao = accountDao;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    public record LoadResult(long agreementsCreated, long accountsLoaded) {
+    }
+
+    /**
+     * Loads a CSV file in two passes over its chunks: the first collects the agreement names and counts the
+     * lines, the second creates the accounts.
+     */
+    public LoadResult loadCsv(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+
+            Set<String> names = ConcurrentHashMap.newKeySet();
+            LongAdder lines = new LongAdder();
+            forEachChunk(chunks, chunk -> {
+                Set<String> chunkNames = new HashSet<>();
+                LineCursor cursor = new LineCursor(channel, file, size, chunk);
+                while (cursor.next()) {
+                    if (!cursor.sameAgreement()) {
+                        chunkNames.add(cursor.agreementName());
+                    }
+                    lines.increment();
+                }
+                names.addAll(chunkNames);
+            });
+
+            Map<String, Long> agreementIds = new HashMap<>();
+            int created = resolveAgreements(names, agreementIds);
+            accountDao.reserve((int) Math.min(lines.sum(), Integer.MAX_VALUE));
+
+            LongAdder loaded = new LongAdder();
+            forEachChunk(chunks, chunk -> {
+                List<Account> batch = new ArrayList<>(batchSize);
+                LineCursor cursor = new LineCursor(channel, file, size, chunk);
+                while (cursor.next()) {
+                    batch.add(cursor.account(agreementIds));
+                    if (batch.size() == batchSize) {
+                        save(batch, loaded);
+                    }
+                }
+                save(batch, loaded);
+            });
+            return new LoadResult(created, loaded.sum());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't load " + file, e);
+        }
+    }
+
+    /**
+     * Loads a file written by {@link BulkFileWriter}.
+     */
+    public LoadResult loadBinary(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("Not an account import file: " + file);
+            }
+            int scale = header.getInt();
+            if (scale != Money.SCALE) {
+                throw new IllegalStateException("Import amount scale " + scale + " doesn't match " + Money.SCALE);
+            }
+            header.getInt();
+            long accountCount = header.getLong();
+            int agreementCount = Math.toIntExact(header.getLong());
+            long agreementsOffset = header.getLong();
+
+            List<String> names = readNames(channel, agreementsOffset, agreementCount);
+            Map<String, Long> agreementIds = new HashMap<>();
+            int created = resolveAgreements(names, agreementIds);
+            long[] agreementIdsByOrdinal = names.stream().mapToLong(agreementIds::get).toArray();
+            accountDao.reserve((int) Math.min(accountCount, Integer.MAX_VALUE));
+
+            int recordsPerChunk = Math.max(chunkSize / RECORD_SIZE, 1);
+            int chunks = (int) ((accountCount + recordsPerChunk - 1) / recordsPerChunk);
+            LongAdder loaded = new LongAdder();
+            forEachChunk(chunks, chunk -> {
+                long first = (long) chunk * recordsPerChunk;
+                int count = (int) Math.min(recordsPerChunk, accountCount - first);
+                ByteBuffer records = map(channel, HEADER_SIZE + first * RECORD_SIZE, (long) count * RECORD_SIZE);
+                List<Account> batch = new ArrayList<>(batchSize);
+                byte[] number = new byte[MAX_NUMBER_LENGTH];
+                for (int i = 0; i < count; i++) {
+                    batch.add(readAccount(records, i * RECORD_SIZE, agreementIdsByOrdinal, number));
+                    if (batch.size() == batchSize) {
+                        save(batch, loaded);
+                    }
+                }
+                save(batch, loaded);
+            });
+            return new LoadResult(created, loaded.sum());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't load " + file, e);
+        }
+    }
+
+    /**
+     * Fills {@code ids} with the ids of the named agreements, creating the missing ones. Returns how many were
+     * created.
+     */
+    private int resolveAgreements(Collection<String> names, Map<String, Long> ids) {
+        List<Agreement> missing = new ArrayList<>();
+        for (String name : names) {
+            Optional<Agreement> existing = agreementDao.findByName(name);
+            if (existing.isPresent()) {
+                ids.put(name, existing.get().getId());
+            } else {
+                Agreement agreement = new Agreement();
+                agreement.setName(name);
+                missing.add(agreement);
+            }
+        }
+        agreementDao.reserve(missing.size());
+        agreementDao.saveAll(missing);
+        for (Agreement agreement : missing) {
+            ids.put(agreement.getName(), agreement.getId());
+        }
+        return missing.size();
+    }
+
+    private void save(List<Account> batch, LongAdder loaded) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        accountDao.saveAll(batch);
+        loaded.add(batch.size());
+        batch.clear();
+    }
+
+    private void forEachChunk(int chunks, ChunkTask task) {
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            try {
+                task.run(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).join();
+    }
+
+    private static List<String> readNames(FileChannel channel, long offset, int count) throws IOException {
+        ByteBuffer table = map(channel, offset, channel.size() - offset);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[table.getInt()];
+            table.get(name);
+            names.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+
+    private static Account readAccount(ByteBuffer records, int offset, long[] agreementIds, byte[] number) {
+        Account account = new Account();
+        account.setMinorAmount(records.getLong(offset));
+        account.setAgreementId(agreementIds[records.getInt(offset + 8)]);
+        int type = records.getInt(offset + 12);
+        account.setType(type == NULL_INT ? null : type);
+        int numberLength = records.getShort(offset + 16);
+        if (numberLength >= 0) {
+            records.get(offset + 18, number, 0, numberLength);
+            account.setNumber(new String(number, 0, numberLength, StandardCharsets.UTF_8));
+        }
+        return account;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Region of " + length + " bytes is too large to map");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /**
+     * Parses a decimal amount into minor units, failing on more than {@link Money#SCALE} fraction digits.
+     */
+    static long parseMinor(byte[] bytes, int from, int to) {
+        boolean negative = from < to && bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        long minor = 0;
+        int fractionDigits = -1;
+        boolean digits = false;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (fractionDigits == Money.SCALE) {
+                    throw new IllegalArgumentException("Amount has more than " + Money.SCALE + " fraction digits");
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                minor = Math.addExact(Math.multiplyExact(minor, 10), b - '0');
+                digits = true;
+            } else {
+                throw new IllegalArgumentException("Malformed amount");
+            }
+        }
+        if (!digits) {
+            throw new IllegalArgumentException("Malformed amount");
+        }
+        for (int scale = Math.max(fractionDigits, 0); scale < Money.SCALE; scale++) {
+            minor = Math.multiplyExact(minor, 10);
+        }
+        return negative ? -minor : minor;
+    }
+
+    static int parseInt(byte[] bytes, int from, int to) {
+        boolean negative = from < to && bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            throw new IllegalArgumentException("Malformed type");
+        }
+        int value = 0;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b < '0' || b > '9') {
+                throw new IllegalArgumentException("Malformed type");
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    @FunctionalInterface
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    /**
+     * Walks the lines that start inside one chunk of a CSV file; the last one may end in the next chunk. Each line
+     * is copied into {@link #line} and split at commas.
+     */
+    private final class LineCursor {
+        private final byte[] line = new byte[MAX_LINE];
+        private final int[] commas = new int[3];
+
+        private final Path file;
+        private final ByteBuffer region;
+        private final long regionStart;
+        private final int end;
+        private final boolean lastRegion;
+        private int position;
+        private int length;
+        private long lineOffset;
+        private byte[] lastAgreement = new byte[0];
+        private Long lastAgreementId;
+
+        LineCursor(FileChannel channel, Path file, long size, int chunk) throws IOException {
+            this.file = file;
+            long start = (long) chunk * chunkSize;
+            long chunkEnd = Math.min(size, start + chunkSize);
+            regionStart = Math.max(start - 1, 0);
+            long regionEnd = Math.min(size, chunkEnd + MAX_LINE);
+            lastRegion = regionEnd == size;
+            region = map(channel, regionStart, regionEnd - regionStart);
+            end = (int) (chunkEnd - regionStart);
+            if (start > 0) {
+                while (position < end && region.get(position) != '\n') {
+                    position++;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * Moves to the next non-empty line, returns false at the end of the chunk.
+         */
+        boolean next() {
+            while (position < end) {
+                int lineEnd = position;
+                while (lineEnd < region.limit() && region.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == region.limit() && !lastRegion || lineEnd - position > MAX_LINE) {
+                    throw malformed(regionStart + position, "line is longer than " + MAX_LINE + " bytes");
+                }
+                lineOffset = regionStart + position;
+                length = lineEnd - position;
+                region.get(position, line, 0, length);
+                position = lineEnd + 1;
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                if (length > 0) {
+                    split();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Whether the line has the agreement of the previous call; files usually list the accounts of an agreement
+         * together, so this saves decoding the name on most lines.
+         */
+        boolean sameAgreement() {
+            if (Arrays.equals(lastAgreement, 0, lastAgreement.length, line, 0, commas[0])) {
+                return true;
+            }
+            lastAgreement = Arrays.copyOf(line, commas[0]);
+            lastAgreementId = null;
+            return false;
+        }
+
+        String agreementName() {
+            return string(0, commas[0]);
+        }
+
+        Account account(Map<String, Long> agreementIds) {
+            try {
+                Account account = new Account();
+                if (!sameAgreement() || lastAgreementId == null) {
+                    lastAgreementId = agreementIds.get(agreementName());
+                }
+                account.setAgreementId(lastAgreementId);
+                if (commas[1] > commas[0] + 1) {
+                    account.setNumber(string(commas[0] + 1, commas[1]));
+                }
+                if (commas[2] > commas[1] + 1) {
+                    account.setType(parseInt(line, commas[1] + 1, commas[2]));
+                }
+                account.setMinorAmount(parseMinor(line, commas[2] + 1, length));
+                return account;
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                throw malformed(lineOffset, e.getMessage());
+            }
+        }
+
+        private String string(int from, int to) {
+            return new String(line, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        private void split() {
+            int found = 0;
+            for (int i = 0; i < length; i++) {
+                if (line[i] == ',') {
+                    if (found == commas.length) {
+                        throw malformed(lineOffset, "more than 4 fields");
+                    }
+                    commas[found++] = i;
+                }
+            }
+            if (found < commas.length) {
+                throw malformed(lineOffset, "less than 4 fields");
+            }
+            if (commas[0] == 0) {
+                throw malformed(lineOffset, "agreement name is required");
+            }
+        }
+
+        private IllegalArgumentException malformed(long offset, String reason) {
+            return new IllegalArgumentException("Malformed line at byte " + offset + " of " + file + ": " + reason);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package ru.otus.bank.dao.cache;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-through cache of accounts by id in front of a slower {@link AccountDao}, bounded by a
+ * {@link SegmentedLruCache}. Queries other than {@link #findById(Long)} go to the delegate.
+ * <p>
+ * In write-through mode every save goes to the delegate before the cache is updated, and batches are forwarded.
+ * In write-behind mode saves of stored accounts only update the cache; the saves of a batch, or a single save
+ * outside one, are queued as a group. {@link #flush()}, which runs periodically on a background thread and on
+ * {@link #close()}, writes the accounts of all queued groups to the delegate as one batch. New accounts are
+ * always written through, since the delegate assigns their ids. Accounts with queued writes are pinned in memory
+ * and served to every query in place of the delegate's copy until the delegate has committed them; a failed
+ * flush leaves everything queued for the next one.
+ * <p>
+ * The delegate receives an account's state at flush time, so consecutive writes of one account coalesce. A
+ * flush waits for the batches in progress and holds new ones off until the delegate batch is committed, so it
+ * writes the state after a set of whole batches: both legs of a transfer reach the delegate together or not at
+ * all. Batches only change accounts between {@code beginBatch} and {@code commitBatch}, as
+ * {@link ru.otus.bank.dao.AccountUnitOfWork} does.
+ */
+public class CachingAccountDao implements AccountDao, AutoCloseable {
+
+    private final AccountDao delegate;
+
+    private final SegmentedLruCache<Long, Account> cache;
+
+    private final boolean writeBehind;
+
+    private final Map<Long, Dirty> dirty = new ConcurrentHashMap<>();
+
+    private final Queue<List<Account>> writeQueue = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<List<Account>> batch = new ThreadLocal<>();
+
+    /**
+     * Held shared by write-behind batches and exclusively by {@link #flush()}.
+     */
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Write-through cache.
+     */
+    public CachingAccountDao(AccountDao delegate, int capacity) {
+        this.delegate = delegate;
+        this.cache = new SegmentedLruCache<>(capacity);
+        this.writeBehind = false;
+        this.flusher = null;
+    }
+
+    /**
+     * Write-behind cache flushed every {@code flushInterval}.
+     */
+    public CachingAccountDao(AccountDao delegate, int capacity, Duration flushInterval) {
+        this.delegate = delegate;
+        this.cache = new SegmentedLruCache<>(capacity);
+        this.writeBehind = true;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "account-cache-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Writes the accounts of the queued groups to the delegate as one batch and waits until it is durable; new
+     * batches are held off only until the delegate batch is committed. If that fails, the groups stay queued
+     * and the exception is rethrown.
+     */
+    public synchronized void flush() {
+        flushLock.writeLock().lock();
+        try {
+            List<List<Account>> groups = new ArrayList<>(writeQueue);
+            if (groups.isEmpty()) {
+                return;
+            }
+            Map<Long, Account> accounts = new LinkedHashMap<>();
+            for (List<Account> group : groups) {
+                for (Account account : group) {
+                    accounts.put(account.getId(), account);
+                }
+            }
+            delegate.beginBatch();
+            try {
+                for (Account account : accounts.values()) {
+                    delegate.save(account);
+                }
+                delegate.commitBatch();
+            } catch (RuntimeException e) {
+                delegate.abortBatch();
+                throw e;
+            }
+            for (List<Account> group : groups) {
+                writeQueue.poll();
+                for (Account account : group) {
+                    dirty.computeIfPresent(account.getId(), (id, entry) -> entry.queued == 1
+                            ? null : new Dirty(entry.account, entry.queued - 1));
+                }
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return Optional.ofNullable(findByIdOrNull(accountId));
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        Account account = cache.get(accountId);
+        if (account != null) {
+            return account;
+        }
+        Dirty pinned = dirty.get(accountId);
+        if (pinned != null) {
+            cache.put(accountId, pinned.account);
+            return pinned.account;
+        }
+        Account loaded = delegate.findByIdOrNull(accountId);
+        if (loaded != null) {
+            cache.put(accountId, loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return current(delegate.findByAgreementId(agreementId));
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return current(delegate.findByAgreementIdAndType(agreementId, type));
+    }
+
+    @Override
+    public Account save(Account account) {
+        if (!writeBehind || account.getId() == 0) {
+            Account saved = delegate.save(account);
+            cache.put(saved.getId(), saved);
+            return saved;
+        }
+        cache.put(account.getId(), account);
+        List<Account> pending = batch.get();
+        if (pending != null) {
+            pending.add(account);
+        } else {
+            enqueue(List.of(account));
+        }
+        return account;
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return current(delegate.findAll());
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        delegate.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return writeBehind ? delegate.streamAll().map(this::current) : delegate.streamAll();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        AccountPage page = delegate.findPage(afterId, limit);
+        if (!writeBehind || dirty.isEmpty()) {
+            return page;
+        }
+        return new AccountPage(page.accounts().stream().map(this::current).collect(Collectors.toList()),
+                page.nextAfterId());
+    }
+
+    @Override
+    public void beginBatch() {
+        if (writeBehind) {
+            flushLock.readLock().lock();
+            batch.set(new ArrayList<>(2));
+        } else {
+            delegate.beginBatch();
+        }
+    }
+
+    @Override
+    public void commitBatch() {
+        if (!writeBehind) {
+            delegate.commitBatch();
+            return;
+        }
+        List<Account> pending = batch.get();
+        if (pending == null) {
+            return;
+        }
+        batch.remove();
+        try {
+            if (!pending.isEmpty()) {
+                enqueue(pending);
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void abortBatch() {
+        if (!writeBehind) {
+            delegate.abortBatch();
+        } else if (batch.get() != null) {
+            batch.remove();
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write-behind batches reach the delegate only on {@link #flush()}, which waits for them itself.
+     */
+    @Override
+    public void awaitDurable() {
+        if (!writeBehind) {
+            delegate.awaitDurable();
+        }
+    }
+
+    @Override
+    public boolean isDurable() {
+        return !writeBehind && delegate.isDurable();
+    }
+
+    private void enqueue(List<Account> group) {
+        for (Account account : group) {
+            dirty.compute(account.getId(), (id, entry) -> new Dirty(account, entry == null ? 1 : entry.queued + 1));
+        }
+        writeQueue.add(group);
+    }
+
+    private Iterable<Account> current(Iterable<Account> accounts) {
+        if (!writeBehind || dirty.isEmpty()) {
+            return accounts;
+        }
+        return StreamSupport.stream(accounts.spliterator(), false).map(this::current).collect(Collectors.toList());
+    }
+
+    private Account current(Account account) {
+        Dirty pinned = dirty.get(account.getId());
+        return pinned == null ? account : pinned.account;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // the failed group stays queued and is retried on the next run
+        }
+    }
+
+    private record Dirty(Account account, int queued) {
+    }
+}
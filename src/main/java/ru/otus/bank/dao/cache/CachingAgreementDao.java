@@ -0,0 +1,64 @@
+package ru.otus.bank.dao.cache;
+
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Agreement;
+
+import java.util.Optional;
+
+/**
+ * Read-through, write-through cache of agreements by name in front of a slower {@link AgreementDao}.
+ */
+public class CachingAgreementDao implements AgreementDao {
+
+    private final AgreementDao delegate;
+
+    private final SegmentedLruCache<String, Agreement> cache;
+
+    public CachingAgreementDao(AgreementDao delegate, int capacity) {
+        this.delegate = delegate;
+        this.cache = new SegmentedLruCache<>(capacity);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public Agreement addAgreement(String name) {
+        Agreement agreement = delegate.addAgreement(name);
+        cache.put(agreement.getName(), agreement);
+        return agreement;
+    }
+
+    @Override
+    public Optional<Agreement> findByName(String name) {
+        Agreement agreement = cache.get(name);
+        if (agreement != null) {
+            if (name.equals(agreement.getName())) {
+                return Optional.of(agreement);
+            }
+            // renamed since it was cached
+            cache.invalidate(name);
+        }
+        Optional<Agreement> loaded = delegate.findByName(name);
+        loaded.ifPresent(found -> cache.put(name, found));
+        return loaded;
+    }
+
+    @Override
+    public Agreement save(Agreement agreement) {
+        Agreement saved = delegate.save(agreement);
+        cache.put(saved.getName(), saved);
+        return saved;
+    }
+
+    @Override
+    public Iterable<Agreement> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAgreements) {
+        delegate.reserve(additionalAgreements);
+    }
+}
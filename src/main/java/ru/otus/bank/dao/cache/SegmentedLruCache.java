@@ -0,0 +1,149 @@
+package ru.otus.bank.dao.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded segmented LRU cache. A new entry starts in the probation segment and is promoted to the protected
+ * segment on its second hit; entries pushed out of the protected segment go back to probation, and evictions
+ * take the least recently used probation entry. A scan over many keys used once therefore only churns probation
+ * and leaves the frequently used keys alone.
+ * <p>
+ * The cache is split into stripes by key hash, each with its own lock and an equal share of the capacity.
+ */
+public class SegmentedLruCache<K, V> {
+
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Stripe<K, V>[] stripes;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public SegmentedLruCache(int capacity) {
+        this(capacity, Integer.highestOneBit(
+                Math.max(1, Math.min(capacity / 256, Runtime.getRuntime().availableProcessors() * 4))));
+    }
+
+    /**
+     * @param stripeCount number of independently locked stripes, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(int capacity, int stripeCount) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1 || stripeCount > capacity) {
+            throw new IllegalArgumentException("Invalid stripe count: " + stripeCount);
+        }
+        stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * The cached value, or null on a miss.
+     */
+    public V get(K key) {
+        V value = stripeOf(key).get(key);
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (stripeOf(key).put(key, value)) {
+            evictions.increment();
+        }
+    }
+
+    public void invalidate(K key) {
+        stripeOf(key).remove(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    private Stripe<K, V> stripeOf(K key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ hash >>> 16) & stripes.length - 1];
+    }
+
+    private static final class Stripe<K, V> {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * PROTECTED_PERCENT / 100;
+        }
+
+        synchronized V get(K key) {
+            V value = protectedSegment.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = probation.remove(key);
+            if (value != null) {
+                protectedSegment.put(key, value);
+                if (protectedSegment.size() > protectedCapacity) {
+                    Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Returns whether an entry was evicted to make room.
+         */
+        synchronized boolean put(K key, V value) {
+            if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+                return false;
+            }
+            if (probation.put(key, value) != null) {
+                return false;
+            }
+            if (probation.size() + protectedSegment.size() <= capacity) {
+                return false;
+            }
+            removeEldest(probation.isEmpty() ? protectedSegment : probation);
+            return true;
+        }
+
+        synchronized void remove(K key) {
+            if (protectedSegment.remove(key) == null) {
+                probation.remove(key);
+            }
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> segment) {
+            Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+            Map.Entry<K, V> eldest = iterator.next();
+            Map.Entry<K, V> removed = Map.entry(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.otus.bank.dao.event;
+
+/**
+ * Immutable fact about an account recorded in the {@link EventJournal}. Amounts are minor units, see
+ * {@link ru.otus.bank.entity.Money}. Events saved in one {@link ru.otus.bank.dao.AccountDao} batch, e.g. the
+ * legs of one transfer, share an operation id.
+ */
+public sealed interface AccountEvent {
+
+    long accountId();
+
+    long operationId();
+
+    record Opened(long accountId, long operationId, Long agreementId, Integer type, String number,
+                  long amount) implements AccountEvent {
+    }
+
+    record Debited(long accountId, long operationId, long amount) implements AccountEvent {
+    }
+
+    record Credited(long accountId, long operationId, long amount) implements AccountEvent {
+    }
+}
@@ -0,0 +1,112 @@
+package ru.otus.bank.dao.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of a group of events in the write-ahead log: the number of events, then per event its kind,
+ * account id, operation id and amount; opened accounts also carry their agreement id, type and number.
+ */
+final class AccountEvents {
+
+    private static final byte OPENED = 1;
+    private static final byte DEBITED = 2;
+    private static final byte CREDITED = 3;
+
+    private static final int HAS_AGREEMENT_ID = 1;
+    private static final int HAS_TYPE = 1 << 1;
+    private static final int HAS_NUMBER = 1 << 2;
+
+    private AccountEvents() {
+    }
+
+    static byte[] encode(List<AccountEvent> events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 * events.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(events.size());
+            for (AccountEvent event : events) {
+                write(out, event);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<AccountEvent> decode(ByteBuffer record) {
+        int count = record.getInt();
+        List<AccountEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(read(record));
+        }
+        return events;
+    }
+
+    private static void write(DataOutputStream out, AccountEvent event) throws IOException {
+        if (event instanceof AccountEvent.Opened opened) {
+            out.writeByte(OPENED);
+            out.writeLong(opened.accountId());
+            out.writeLong(opened.operationId());
+            out.writeLong(opened.amount());
+            int flags = (opened.agreementId() != null ? HAS_AGREEMENT_ID : 0)
+                    | (opened.type() != null ? HAS_TYPE : 0)
+                    | (opened.number() != null ? HAS_NUMBER : 0);
+            out.writeByte(flags);
+            if (opened.agreementId() != null) {
+                out.writeLong(opened.agreementId());
+            }
+            if (opened.type() != null) {
+                out.writeInt(opened.type());
+            }
+            if (opened.number() != null) {
+                byte[] number = opened.number().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(number.length);
+                out.write(number);
+            }
+        } else if (event instanceof AccountEvent.Debited debited) {
+            out.writeByte(DEBITED);
+            out.writeLong(debited.accountId());
+            out.writeLong(debited.operationId());
+            out.writeLong(debited.amount());
+        } else if (event instanceof AccountEvent.Credited credited) {
+            out.writeByte(CREDITED);
+            out.writeLong(credited.accountId());
+            out.writeLong(credited.operationId());
+            out.writeLong(credited.amount());
+        }
+    }
+
+    private static AccountEvent read(ByteBuffer record) {
+        byte kind = record.get();
+        long accountId = record.getLong();
+        long operationId = record.getLong();
+        long amount = record.getLong();
+        switch (kind) {
+            case OPENED -> {
+                int flags = record.get();
+                Long agreementId = (flags & HAS_AGREEMENT_ID) != 0 ? record.getLong() : null;
+                Integer type = (flags & HAS_TYPE) != 0 ? record.getInt() : null;
+                String number = null;
+                if ((flags & HAS_NUMBER) != 0) {
+                    byte[] bytes = new byte[record.getInt()];
+                    record.get(bytes);
+                    number = new String(bytes, StandardCharsets.UTF_8);
+                }
+                return new AccountEvent.Opened(accountId, operationId, agreementId, type, number, amount);
+            }
+            case DEBITED -> {
+                return new AccountEvent.Debited(accountId, operationId, amount);
+            }
+            case CREDITED -> {
+                return new AccountEvent.Credited(accountId, operationId, amount);
+            }
+            default -> throw new IllegalStateException("Unknown event kind " + kind);
+        }
+    }
+}
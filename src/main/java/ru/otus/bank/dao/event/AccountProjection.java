@@ -0,0 +1,10 @@
+package ru.otus.bank.dao.event;
+
+/**
+ * State derived from the {@link EventJournal}. Events of one account are applied in journal order; events of
+ * different accounts may be applied concurrently.
+ */
+public interface AccountProjection {
+
+    void apply(long offset, AccountEvent event);
+}
@@ -0,0 +1,56 @@
+package ru.otus.bank.dao.event;
+
+import ru.otus.bank.entity.Money;
+
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Current balance of every account, in minor units. Events of an account not opened in the projection are
+ * rejected, so a projection replayed from a non-zero offset has to be {@link #seed seeded} first.
+ */
+public class BalanceProjection implements AccountProjection {
+
+    private final ConcurrentHashMap<Long, Balance> balances = new ConcurrentHashMap<>();
+
+    @Override
+    public void apply(long offset, AccountEvent event) {
+        if (event instanceof AccountEvent.Opened opened) {
+            balances.put(opened.accountId(), new Balance(opened.amount()));
+            return;
+        }
+        Balance balance = balances.get(event.accountId());
+        if (balance == null) {
+            throw new IllegalStateException("Event " + offset + " refers to unknown account " + event.accountId());
+        }
+        if (event instanceof AccountEvent.Debited debited) {
+            balance.amount = Money.subtract(balance.amount, debited.amount());
+        } else if (event instanceof AccountEvent.Credited credited) {
+            balance.amount = Money.add(balance.amount, credited.amount());
+        }
+    }
+
+    /**
+     * Sets the balance of an account as of the offset the replay will start from, e.g. from a snapshot.
+     */
+    public void seed(long accountId, long amount) {
+        balances.put(accountId, new Balance(amount));
+    }
+
+    public OptionalLong balanceOf(long accountId) {
+        Balance balance = balances.get(accountId);
+        return balance == null ? OptionalLong.empty() : OptionalLong.of(balance.amount);
+    }
+
+    public int size() {
+        return balances.size();
+    }
+
+    private static final class Balance {
+        volatile long amount;
+
+        Balance(long amount) {
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ru.otus.bank.dao.event;
+
+import ru.otus.bank.dao.wal.WriteAheadLog;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Append-only sequence of {@link AccountEvent}s addressed by offset. Appends are serialized; reads and replays
+ * don't lock and see every event appended before they started.
+ * <p>
+ * With a {@link WriteAheadLog} every appended group of events is also written to the log as one record, and the
+ * journal is reloaded from the log when created. With {@link WriteAheadLog.Durability#STRICT} an append returns
+ * once its record is on disk, but waits for that without holding the append lock, so concurrent appends share
+ * one flush.
+ */
+public class EventJournal {
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int REPLAY_WINDOW = 1 << 16;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private final WriteAheadLog log;
+
+    private volatile AccountEvent[][] chunks = new AccountEvent[1][];
+
+    private volatile long size;
+
+    public EventJournal() {
+        this.log = null;
+    }
+
+    public EventJournal(WriteAheadLog log) {
+        this.log = log;
+        log.replay(0, record -> store(AccountEvents.decode(record)));
+    }
+
+    /**
+     * Appends the events as one contiguous group and returns the offset of the first one.
+     */
+    public long append(List<AccountEvent> events) {
+        byte[] record = log == null ? null : AccountEvents.encode(events);
+        long first;
+        long position = 0;
+        appendLock.lock();
+        try {
+            if (log != null) {
+                position = log.write(record, 0, record.length);
+            }
+            first = store(events);
+        } finally {
+            appendLock.unlock();
+        }
+        if (log != null && log.durability() == WriteAheadLog.Durability.STRICT) {
+            log.awaitDurable(position);
+        }
+        return first;
+    }
+
+    public AccountEvent get(long offset) {
+        if (offset < 0 || offset >= size) {
+            throw new IndexOutOfBoundsException("No event at offset " + offset);
+        }
+        return chunks[(int) (offset >>> CHUNK_SHIFT)][(int) offset & CHUNK_MASK];
+    }
+
+    /**
+     * Offset the next event will get.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Applies the events from {@code fromOffset} up to the current end to the projection, in journal order.
+     * A projection replayed from a non-zero offset has to hold the state as of that offset already, e.g. a
+     * {@link BalanceProjection} seeded from a snapshot.
+     */
+    public void replay(long fromOffset, AccountProjection projection) {
+        long end = size;
+        for (long offset = fromOffset; offset < end; offset++) {
+            projection.apply(offset, get(offset));
+        }
+    }
+
+    /**
+     * Same as {@link #replay(long, AccountProjection)}, but the accounts are split into {@code partitions} by
+     * id and the partitions are replayed in parallel; events of one account are still applied in order.
+     * <p>
+     * The events are read once: each window of the journal is sorted into per-partition offset buckets, then the
+     * buckets are applied in parallel before the next window is read.
+     */
+    public void replay(long fromOffset, int partitions, AccountProjection projection) {
+        long end = size;
+        int[][] buckets = new int[partitions][];
+        int[] counts = new int[partitions];
+        for (long windowStart = fromOffset; windowStart < end; windowStart += REPLAY_WINDOW) {
+            long start = windowStart;
+            int length = (int) Math.min(REPLAY_WINDOW, end - start);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) {
+                int partition = partitionOf(get(start + i).accountId(), partitions);
+                int[] bucket = buckets[partition];
+                if (bucket == null || counts[partition] == bucket.length) {
+                    bucket = Arrays.copyOf(bucket == null ? new int[0] : bucket,
+                            Math.min(REPLAY_WINDOW, Math.max(16, counts[partition] * 2)));
+                    buckets[partition] = bucket;
+                }
+                bucket[counts[partition]++] = i;
+            }
+            IntStream.range(0, partitions).parallel().forEach(partition -> {
+                int[] bucket = buckets[partition];
+                for (int i = 0; i < counts[partition]; i++) {
+                    long offset = start + bucket[i];
+                    projection.apply(offset, get(offset));
+                }
+            });
+        }
+    }
+
+    private static int partitionOf(long accountId, int partitions) {
+        return Math.floorMod(Long.hashCode(accountId * 0x9E3779B97F4A7C15L), partitions);
+    }
+
+    private long store(List<AccountEvent> events) {
+        long first = size;
+        AccountEvent[][] current = chunks;
+        long offset = first;
+        for (AccountEvent event : events) {
+            int chunk = (int) (offset >>> CHUNK_SHIFT);
+            if (chunk == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                chunks = current;
+            }
+            if (current[chunk] == null) {
+                current[chunk] = new AccountEvent[CHUNK_SIZE];
+            }
+            current[chunk][(int) offset & CHUNK_MASK] = event;
+            offset++;
+        }
+        size = offset;
+        return first;
+    }
+}
@@ -0,0 +1,218 @@
+package ru.otus.bank.dao.event;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Money;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Records every balance change of the delegate's accounts as events in an {@link EventJournal} and keeps
+ * projections of them up to date.
+ * <p>
+ * A save is turned into an event by comparing the saved balance with the {@link BalanceProjection}: the first
+ * save of an account opens it, later ones debit or credit the difference, and saves that don't change the
+ * balance produce no event. Events of one batch (a charge, or the legs of a transfer) share an operation id and
+ * are appended together on {@link #commitBatch()}.
+ * <p>
+ * The projections are rebuilt from the journal, in parallel, on construction. The delegate itself is not: it is
+ * expected to be restored on its own, e.g. by a {@link ru.otus.bank.dao.wal.JournaledAccountDao}.
+ */
+public class EventSourcedAccountDao implements AccountDao {
+
+    private final AccountDao delegate;
+
+    private final EventJournal journal;
+
+    private final BalanceProjection balances = new BalanceProjection();
+
+    private final List<AccountProjection> projections = new ArrayList<>();
+
+    private final AtomicLong operationIds = new AtomicLong();
+
+    private final ThreadLocal<Batch> batch = new ThreadLocal<>();
+
+    public EventSourcedAccountDao(AccountDao delegate, EventJournal journal, AccountProjection... projections) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.projections.add(balances);
+        this.projections.addAll(List.of(projections));
+        journal.replay(0, Runtime.getRuntime().availableProcessors(), this::project);
+        for (long offset = 0; offset < journal.size(); offset++) {
+            operationIds.accumulateAndGet(journal.get(offset).operationId(), Math::max);
+        }
+    }
+
+    public BalanceProjection balances() {
+        return balances;
+    }
+
+    public EventJournal journal() {
+        return journal;
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return delegate.findByAgreementId(agreementId);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return delegate.findByAgreementIdAndType(agreementId, type);
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return delegate.findById(accountId);
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        return delegate.findByIdOrNull(accountId);
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account saved = delegate.save(account);
+        Batch current = activeBatch();
+        long operationId = current != null ? current.operationId : operationIds.incrementAndGet();
+        AccountEvent event = toEvent(saved, operationId, current);
+        if (event == null) {
+            return saved;
+        }
+        if (current != null) {
+            current.events.add(event);
+            current.balances.put(saved.getId(), saved.getMinorAmount());
+        } else {
+            append(List.of(event));
+        }
+        return saved;
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        delegate.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+        Batch current = batch.get();
+        if (current == null) {
+            current = new Batch();
+            batch.set(current);
+        }
+        current.operationId = operationIds.incrementAndGet();
+        current.active = true;
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+        Batch current = activeBatch();
+        if (current == null) {
+            return;
+        }
+        try {
+            if (!current.events.isEmpty()) {
+                append(current.events);
+            }
+        } finally {
+            current.clear();
+        }
+    }
+
+    @Override
+    public void abortBatch() {
+        delegate.abortBatch();
+        Batch current = batch.get();
+        if (current != null) {
+            current.clear();
+        }
+    }
+
+    @Override
+    public void awaitDurable() {
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return delegate.isDurable();
+    }
+
+    private AccountEvent toEvent(Account saved, long operationId, Batch current) {
+        long accountId = saved.getId();
+        Long pending = current != null ? current.balances.get(accountId) : null;
+        OptionalLong known = pending != null ? OptionalLong.of(pending) : balances.balanceOf(accountId);
+        if (known.isEmpty()) {
+            return new AccountEvent.Opened(accountId, operationId, saved.getAgreementId(), saved.getType(),
+                    saved.getNumber(), saved.getMinorAmount());
+        }
+        long difference = Money.subtract(saved.getMinorAmount(), known.getAsLong());
+        if (difference < 0) {
+            return new AccountEvent.Debited(accountId, operationId, -difference);
+        }
+        if (difference > 0) {
+            return new AccountEvent.Credited(accountId, operationId, difference);
+        }
+        return null;
+    }
+
+    private Batch activeBatch() {
+        Batch current = batch.get();
+        return current != null && current.active ? current : null;
+    }
+
+    private void append(List<AccountEvent> events) {
+        long offset = journal.append(events);
+        for (AccountEvent event : events) {
+            project(offset++, event);
+        }
+    }
+
+    private void project(long offset, AccountEvent event) {
+        for (AccountProjection projection : projections) {
+            projection.apply(offset, event);
+        }
+    }
+
+    /**
+     * Events and balances staged by the current thread's batch; reused between batches.
+     */
+    private static final class Batch {
+        final List<AccountEvent> events = new ArrayList<>(4);
+        final Map<Long, Long> balances = new HashMap<>(4);
+        long operationId;
+        boolean active;
+
+        void clear() {
+            events.clear();
+            balances.clear();
+            active = false;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ru.otus.bank.dao.impl;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.dao.AccountPages;
+import ru.otus.bank.entity.Account;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class AccountDaoImpl implements AccountDao {
+
+    ConcurrentLongHashMap<Account> accountMap = new ConcurrentLongHashMap<>();
+
+    /**
+     * agreementId -> ids of the accounts of this agreement, maintained by {@link #save(Account)}.
+     * Buckets are small and copied on write, so readers never see a bucket being modified.
+     */
+    ConcurrentHashMap<Long, List<Long>> agreementIndex = new ConcurrentHashMap<>();
+
+    /**
+     * accountId -> agreementId the account is currently indexed under. Accounts are mutable and
+     * saved in place, so the previous agreementId can't be taken from the stored account itself.
+     */
+    ConcurrentHashMap<Long, Long> indexedAgreementIds = new ConcurrentHashMap<>();
+
+    AtomicLong id = new AtomicLong(1);
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        List<Long> accountIds = agreementIndex.getOrDefault(agreementId, Collections.emptyList());
+        List<Account> result = new ArrayList<>(accountIds.size());
+        for (Long accountId : accountIds) {
+            result.add(accountMap.get(accountId));
+        }
+        return result;
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        List<Long> accountIds = agreementIndex.getOrDefault(agreementId, Collections.emptyList());
+        List<Account> result = new ArrayList<>();
+        for (Long accountId : accountIds) {
+            Account account = accountMap.get(accountId);
+            if (Objects.equals(account.getType(), type)) {
+                result.add(account);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return Optional.ofNullable(accountMap.get(accountId));
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        return accountMap.get(accountId);
+    }
+
+    @Override
+    public Account save(Account account) {
+        if (account.getId() == null || account.getId() == 0) {
+            account.setId(id.incrementAndGet());
+        } else {
+            id.accumulateAndGet(account.getId(), Math::max);
+        }
+
+        store(account);
+        return account;
+    }
+
+    /**
+     * Takes one block of ids for the new accounts of the batch, and adds them to the bucket of each agreement with
+     * one copy per agreement. Accounts of the batch show up in agreement lookups once the whole batch is stored.
+     */
+    @Override
+    public void saveAll(List<Account> accounts) {
+        int newAccounts = 0;
+        long maxId = 0;
+        for (Account account : accounts) {
+            if (account.getId() == null || account.getId() == 0) {
+                newAccounts++;
+            } else {
+                maxId = Math.max(maxId, account.getId());
+            }
+        }
+        if (maxId > 0) {
+            id.accumulateAndGet(maxId, Math::max);
+        }
+        long nextId = id.getAndAdd(newAccounts) + 1;
+        Map<Long, List<Long>> added = new HashMap<>();
+        for (Account account : accounts) {
+            if (account.getId() == null || account.getId() == 0) {
+                account.setId(nextId++);
+            }
+            accountMap.put(account.getId(), account);
+            Long agreementId = unindex(account);
+            if (agreementId != null) {
+                added.computeIfAbsent(agreementId, key -> new ArrayList<>()).add(account.getId());
+            }
+        }
+        added.forEach(this::addToIndex);
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        accountMap.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return accountMap.values();
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return accountMap.values().stream();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        AccountPage page = AccountPages.probe(afterId, limit, id.get(), accountMap.size(), accountMap::get);
+        return page != null ? page : AccountPages.scan(accountMap.values(), afterId, limit);
+    }
+
+    private void store(Account account) {
+        accountMap.put(account.getId(), account);
+        Long agreementId = unindex(account);
+        if (agreementId != null) {
+            addToIndex(agreementId, List.of(account.getId()));
+        }
+    }
+
+    /**
+     * Records the agreement the account is indexed under and drops it from the bucket of its previous agreement.
+     * Returns the agreement whose bucket the account still has to be added to, or null.
+     */
+    private Long unindex(Account account) {
+        Long agreementId = account.getAgreementId();
+        Long previousAgreementId = agreementId == null
+                ? indexedAgreementIds.remove(account.getId())
+                : indexedAgreementIds.put(account.getId(), agreementId);
+
+        if (Objects.equals(previousAgreementId, agreementId)) {
+            return null;
+        }
+        if (previousAgreementId != null) {
+            agreementIndex.computeIfPresent(previousAgreementId, (key, ids) -> {
+                List<Long> updated = new ArrayList<>(ids);
+                updated.remove(account.getId());
+                return updated.isEmpty() ? null : Collections.unmodifiableList(updated);
+            });
+        }
+        return agreementId;
+    }
+
+    private void addToIndex(Long agreementId, List<Long> accountIds) {
+        agreementIndex.compute(agreementId, (key, ids) -> {
+            List<Long> updated = new ArrayList<>((ids == null ? 0 : ids.size()) + accountIds.size());
+            if (ids != null) {
+                updated.addAll(ids);
+            }
+            updated.addAll(accountIds);
+            return Collections.unmodifiableList(updated);
+        });
+    }
+}
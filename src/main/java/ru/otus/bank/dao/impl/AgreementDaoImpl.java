@@ -0,0 +1,139 @@
+package ru.otus.bank.dao.impl;
+
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AgreementException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves are serialized, so a name is checked and taken in one step; lookups don't lock.
+ */
+public class AgreementDaoImpl implements AgreementDao {
+
+    ConcurrentLongHashMap<Agreement> agreementMap = new ConcurrentLongHashMap<>();
+
+    /**
+     * Unique name -> agreement index, maintained by {@link #save(Agreement)}.
+     */
+    ConcurrentHashMap<String, Agreement> nameIndex = new ConcurrentHashMap<>();
+
+    /**
+     * agreementId -> name the agreement is currently indexed under, to release the old name on rename.
+     */
+    ConcurrentHashMap<Long, String> indexedNames = new ConcurrentHashMap<>();
+
+    AtomicLong id = new AtomicLong(0);
+
+
+    @Override
+    public Agreement addAgreement(String name) {
+        Agreement agreement = new Agreement();
+        agreement.setName(name);
+
+        return save(agreement);
+    }
+
+    @Override
+    public Optional<Agreement> findByName(String name) {
+        return Optional.ofNullable(nameIndex.get(name));
+    }
+
+    @Override
+    public synchronized Agreement save(Agreement agreement) {
+        checkName(agreement);
+        Long originalId = agreement.getId();
+        boolean isNew = originalId == null || originalId == 0;
+        if (isNew) {
+            agreement.setId(id.incrementAndGet());
+        } else {
+            id.accumulateAndGet(agreement.getId(), Math::max);
+        }
+
+        try {
+            store(agreement);
+        } catch (AgreementException e) {
+            if (isNew) {
+                agreement.setId(originalId);
+            }
+            throw e;
+        }
+        return agreement;
+    }
+
+    /**
+     * Takes one block of ids for the new agreements of the batch. Names are checked against each other and the
+     * store before any id is taken, and no other save runs in between, so a rejected batch leaves both the store
+     * and the agreements untouched.
+     */
+    @Override
+    public synchronized void saveAll(List<Agreement> agreements) {
+        Set<String> names = new HashSet<>();
+        int newAgreements = 0;
+        long maxId = 0;
+        for (Agreement agreement : agreements) {
+            checkName(agreement);
+            if (!names.add(agreement.getName())) {
+                throw new AgreementException("Agreement with name " + agreement.getName() + " already exists");
+            }
+            if (agreement.getId() == null || agreement.getId() == 0) {
+                newAgreements++;
+            } else {
+                maxId = Math.max(maxId, agreement.getId());
+            }
+        }
+        if (maxId > 0) {
+            id.accumulateAndGet(maxId, Math::max);
+        }
+        long nextId = id.getAndAdd(newAgreements) + 1;
+        for (Agreement agreement : agreements) {
+            if (agreement.getId() == null || agreement.getId() == 0) {
+                agreement.setId(nextId++);
+            }
+            store(agreement);
+        }
+    }
+
+    @Override
+    public void reserve(int additionalAgreements) {
+        agreementMap.reserve(additionalAgreements);
+    }
+
+    @Override
+    public Iterable<Agreement> findAll() {
+        return agreementMap.values();
+    }
+
+    private void checkName(Agreement agreement) {
+        if (agreement.getName() == null) {
+            throw new AgreementException("Agreement name is required");
+        }
+        Agreement owner = nameIndex.get(agreement.getName());
+        if (owner != null && !owner.getId().equals(agreement.getId())) {
+            throw new AgreementException("Agreement with name " + agreement.getName() + " already exists");
+        }
+    }
+
+    private void store(Agreement agreement) {
+        Agreement owner = nameIndex.putIfAbsent(agreement.getName(), agreement);
+        if (owner != null && !owner.getId().equals(agreement.getId())) {
+            throw new AgreementException("Agreement with name " + agreement.getName() + " already exists");
+        }
+        if (owner != null) {
+            nameIndex.put(agreement.getName(), agreement);
+        }
+
+        String previousName = indexedNames.put(agreement.getId(), agreement.getName());
+        if (previousName != null && !previousName.equals(agreement.getName())) {
+            nameIndex.computeIfPresent(previousName,
+                    (name, indexed) -> indexed.getId().equals(agreement.getId()) ? null : indexed);
+        }
+
+        agreementMap.put(agreement.getId(), agreement);
+    }
+}
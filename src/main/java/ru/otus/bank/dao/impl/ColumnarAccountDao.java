@@ -0,0 +1,471 @@
+package ru.otus.bank.dao.impl;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.dao.AccountPages;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Money;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Account storage laid out as columns of primitives indexed by a dense slot number instead of one object per
+ * account. Account numbers are kept in a {@link StringPool}.
+ * <p>
+ * Accounts are handed out as flyweight views: a view reads and writes the columns of its slot directly, so a
+ * balance set on a view is stored immediately and {@link #save(Account)} of a view only has to re-link it when
+ * its agreement changed. Plain {@link Account} objects passed to {@link #save(Account)} are copied into the
+ * columns and a view is returned.
+ * <p>
+ * Columns are split into fixed-size chunks that are never moved, so growing the storage doesn't race with
+ * writers of existing slots. Structural changes (new slots, agreement re-links, numbers) take one lock;
+ * balance updates are plain writes guarded by the caller's account locks. A new chunk directory is published
+ * before the slots it holds are, so lock-free readers take the slot first ({@code size}, an agreement head)
+ * and read {@link #columns} after it.
+ */
+public class ColumnarAccountDao implements AccountDao {
+
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final long NULL_AGREEMENT = Long.MIN_VALUE;
+    private static final int NULL_TYPE = Integer.MIN_VALUE;
+    private static final int NO_SLOT = LongIntHashIndex.MISSING;
+
+    private final ReentrantLock structureLock = new ReentrantLock();
+
+    private final LongIntHashIndex slotsById;
+
+    /**
+     * agreementId -> last linked slot of the agreement; earlier ones are chained through the {@code next} column.
+     */
+    private final LongIntHashIndex agreementHeads;
+
+    private final StringPool numbers = new StringPool();
+
+    private final AtomicLong id = new AtomicLong(1);
+
+    private volatile Columns columns = new Columns(0);
+
+    private volatile int size;
+
+    public ColumnarAccountDao() {
+        this(1024);
+    }
+
+    public ColumnarAccountDao(int expectedSize) {
+        slotsById = new LongIntHashIndex(expectedSize);
+        agreementHeads = new LongIntHashIndex(Math.max(expectedSize / 2, 16));
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return findByAgreement(agreementId, null, false);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return findByAgreement(agreementId, type, true);
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return Optional.ofNullable(findByIdOrNull(accountId));
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        int slot = slotsById.get(accountId);
+        return slot == NO_SLOT ? null : new AccountView(slot);
+    }
+
+    @Override
+    public Account save(Account account) {
+        if (account instanceof AccountView view && view.owner() == this) {
+            return view;
+        }
+
+        structureLock.lock();
+        try {
+            if (account.getId() == null || account.getId() == 0) {
+                account.setId(id.incrementAndGet());
+            } else {
+                id.accumulateAndGet(account.getId(), Math::max);
+            }
+
+            int slot = slotsById.get(account.getId());
+            if (slot == NO_SLOT) {
+                slot = allocateSlot(account.getId());
+            }
+            Columns current = columns;
+            current.balances[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = account.getMinorAmount();
+            current.types[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] =
+                    account.getType() == null ? NULL_TYPE : account.getType();
+            current.numbers[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = numbers.intern(account.getNumber());
+            relink(slot, account.getAgreementId());
+            if (slot == size) {
+                slotsById.put(account.getId(), slot);
+                size = slot + 1;
+            }
+            return new AccountView(slot);
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    /**
+     * Saves the batch under one acquisition of the structure lock.
+     */
+    @Override
+    public void saveAll(List<Account> accounts) {
+        structureLock.lock();
+        try {
+            for (Account account : accounts) {
+                save(account);
+            }
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        structureLock.lock();
+        try {
+            slotsById.reserve(additionalAccounts);
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return () -> new Iterator<>() {
+            private final int end = size;
+            private int slot;
+
+            @Override
+            public boolean hasNext() {
+                return slot < end;
+            }
+
+            @Override
+            public Account next() {
+                if (slot >= end) {
+                    throw new NoSuchElementException();
+                }
+                return new AccountView(slot++);
+            }
+        };
+    }
+
+    /**
+     * Stream over the slots stored when the stream was created, split into slot ranges when run in parallel.
+     */
+    @Override
+    public Stream<Account> streamAll() {
+        return StreamSupport.stream(new SlotSpliterator(0, size), false);
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        AccountPage page = AccountPages.probe(afterId, limit, id.get(), size, accountId -> {
+            int slot = slotsById.get(accountId);
+            return slot == NO_SLOT ? null : new AccountView(slot);
+        });
+        return page != null ? page : AccountPages.scan(findAll(), afterId, limit);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sum of all balances in minor units, computed by a sequential scan of the balance column.
+     */
+    public long totalMinorAmount() {
+        int end = size;
+        Columns current = columns;
+        long total = 0;
+        for (int chunk = 0; chunk * CHUNK_SIZE < end; chunk++) {
+            long[] balances = current.balances[chunk];
+            int limit = Math.min(CHUNK_SIZE, end - chunk * CHUNK_SIZE);
+            for (int i = 0; i < limit; i++) {
+                total = Money.add(total, balances[i]);
+            }
+        }
+        return total;
+    }
+
+    private List<Account> findByAgreement(Long agreementId, Integer type, boolean filterByType) {
+        List<Account> result = new ArrayList<>();
+        if (agreementId == null) {
+            return result;
+        }
+        int head = agreementHeads.get(agreementId);
+        // chained slots are older than the head, so a directory read after it covers them all
+        Columns current = columns;
+        int typeValue = type == null ? NULL_TYPE : type;
+        for (int slot = head; slot != NO_SLOT;
+             slot = current.next[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK]) {
+            if (!filterByType || current.types[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] == typeValue) {
+                result.add(new AccountView(slot));
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Must be called under the structure lock, the only writer of {@link #columns}.
+     */
+    private int allocateSlot(long accountId) {
+        int slot = size;
+        Columns current = columns;
+        if (slot >>> CHUNK_SHIFT == current.ids.length) {
+            current = current.grow();
+            columns = current;
+        }
+        if ((slot & CHUNK_MASK) == 0) {
+            current.allocateChunk(slot >>> CHUNK_SHIFT);
+        }
+        current.ids[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = accountId;
+        current.agreementIds[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = NULL_AGREEMENT;
+        current.next[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = NO_SLOT;
+        return slot;
+    }
+
+    /**
+     * Moves the slot to the chain of another agreement. Must be called under the structure lock, so
+     * {@link #columns} can't change meanwhile.
+     */
+    private void relink(int slot, Long agreementId) {
+        Columns current = columns;
+        long[] agreementChunk = current.agreementIds[slot >>> CHUNK_SHIFT];
+        long previous = agreementChunk[slot & CHUNK_MASK];
+        long updated = agreementId == null ? NULL_AGREEMENT : agreementId;
+        if (previous == updated) {
+            return;
+        }
+        if (previous != NULL_AGREEMENT) {
+            unlink(current, slot, previous);
+        }
+        agreementChunk[slot & CHUNK_MASK] = updated;
+        if (updated != NULL_AGREEMENT) {
+            int head = agreementHeads.get(updated);
+            current.next[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = head;
+            agreementHeads.put(updated, slot);
+        }
+    }
+
+    private void unlink(Columns current, int slot, long agreementId) {
+        int next = current.next[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+        int head = agreementHeads.get(agreementId);
+        if (head == slot) {
+            agreementHeads.put(agreementId, next);
+            return;
+        }
+        for (int previous = head; previous != NO_SLOT; ) {
+            int[] nextChunk = current.next[previous >>> CHUNK_SHIFT];
+            if (nextChunk[previous & CHUNK_MASK] == slot) {
+                nextChunk[previous & CHUNK_MASK] = next;
+                return;
+            }
+            previous = nextChunk[previous & CHUNK_MASK];
+        }
+    }
+
+    private final class SlotSpliterator implements Spliterator<Account> {
+        private int slot;
+        private final int end;
+
+        SlotSpliterator(int slot, int end) {
+            this.slot = slot;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Account> action) {
+            if (slot >= end) {
+                return false;
+            }
+            action.accept(new AccountView(slot++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Account> trySplit() {
+            int middle = (slot + end) >>> 1;
+            if (middle - slot < 1024) {
+                return null;
+            }
+            SlotSpliterator prefix = new SlotSpliterator(slot, middle);
+            slot = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - slot;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    /**
+     * Chunk directories of all columns. Growing copies only the directories; chunks are shared and allocated
+     * when the first slot of a chunk is taken.
+     */
+    private static final class Columns {
+        final long[][] ids;
+        final long[][] balances;
+        final long[][] agreementIds;
+        final int[][] types;
+        final int[][] numbers;
+        final int[][] next;
+
+        Columns(int chunks) {
+            ids = new long[chunks][];
+            balances = new long[chunks][];
+            agreementIds = new long[chunks][];
+            types = new int[chunks][];
+            numbers = new int[chunks][];
+            next = new int[chunks][];
+        }
+
+        private Columns(Columns source, int chunks) {
+            ids = Arrays.copyOf(source.ids, chunks);
+            balances = Arrays.copyOf(source.balances, chunks);
+            agreementIds = Arrays.copyOf(source.agreementIds, chunks);
+            types = Arrays.copyOf(source.types, chunks);
+            numbers = Arrays.copyOf(source.numbers, chunks);
+            next = Arrays.copyOf(source.next, chunks);
+        }
+
+        Columns grow() {
+            return new Columns(this, Math.max(ids.length * 2, 1));
+        }
+
+        void allocateChunk(int chunk) {
+            ids[chunk] = new long[CHUNK_SIZE];
+            balances[chunk] = new long[CHUNK_SIZE];
+            agreementIds[chunk] = new long[CHUNK_SIZE];
+            types[chunk] = new int[CHUNK_SIZE];
+            numbers[chunk] = new int[CHUNK_SIZE];
+            next[chunk] = new int[CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Flyweight over one slot. Inherited {@link Account} fields are not used, except the id.
+     */
+    private final class AccountView extends Account {
+        private final int slot;
+
+        AccountView(int slot) {
+            this.slot = slot;
+            super.setId(columns.ids[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK]);
+        }
+
+        ColumnarAccountDao owner() {
+            return ColumnarAccountDao.this;
+        }
+
+        @Override
+        public void setId(Long id) {
+            if (!getId().equals(id)) {
+                throw new UnsupportedOperationException("Stored account id can't be changed");
+            }
+        }
+
+        @Override
+        public BigDecimal getAmount() {
+            return Money.toBigDecimal(getMinorAmount());
+        }
+
+        @Override
+        public void setAmount(BigDecimal amount) {
+            setMinorAmount(Money.toMinor(amount));
+        }
+
+        @Override
+        public long getMinorAmount() {
+            return columns.balances[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+        }
+
+        @Override
+        public void setMinorAmount(long amount) {
+            columns.balances[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = amount;
+        }
+
+        @Override
+        public Integer getType() {
+            int type = columns.types[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+            return type == NULL_TYPE ? null : type;
+        }
+
+        @Override
+        public void setType(Integer type) {
+            columns.types[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = type == null ? NULL_TYPE : type;
+        }
+
+        @Override
+        public String getNumber() {
+            return numbers.get(columns.numbers[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK]);
+        }
+
+        @Override
+        public void setNumber(String number) {
+            structureLock.lock();
+            try {
+                columns.numbers[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = numbers.intern(number);
+            } finally {
+                structureLock.unlock();
+            }
+        }
+
+        @Override
+        public Long getAgreementId() {
+            long agreementId = columns.agreementIds[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+            return agreementId == NULL_AGREEMENT ? null : agreementId;
+        }
+
+        @Override
+        public void setAgreementId(Long agreementId) {
+            structureLock.lock();
+            try {
+                relink(slot, agreementId);
+            } finally {
+                structureLock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Account{" +
+                    "id=" + getId() +
+                    ", amount=" + getAmount() +
+                    ", type=" + getType() +
+                    ", number='" + getNumber() + '\'' +
+                    ", agreementId=" + getAgreementId() +
+                    "}\n";
+        }
+    }
+}
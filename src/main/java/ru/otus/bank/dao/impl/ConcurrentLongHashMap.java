@@ -0,0 +1,326 @@
+package ru.otus.bank.dao.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing {@code long -> V} map with linear probing and no boxing of keys. The keys are split over
+ * segments by hash, each with its own table and lock, so writes to different segments don't contend; reads take
+ * no lock. As in {@link LongIntHashIndex}, a key is published with release semantics after its value and a
+ * segment's table is replaced as a whole on resize, so a reader always sees either a complete entry or none.
+ * Entries are never removed.
+ */
+final class ConcurrentLongHashMap<V> {
+
+    static final int DEFAULT_SEGMENTS = 16;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Segment<V>[] segments;
+
+    private final int segmentShift;
+
+    private final Collection<V> values = new Values();
+
+    ConcurrentLongHashMap() {
+        this(16, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param segments number of independently locked segments, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    ConcurrentLongHashMap(int expectedSize, int segments) {
+        if (segments <= 0 || Integer.bitCount(segments) != 1) {
+            throw new IllegalArgumentException("Segment count must be a power of two: " + segments);
+        }
+        this.segments = (Segment<V>[]) new Segment<?>[segments];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segments);
+        int segmentSize = Math.max(expectedSize / segments, 1);
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    V get(long key) {
+        int hash = mix(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the previous value of the key, or null.
+     */
+    V put(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new NullPointerException("Value is required");
+        }
+        int hash = mix(key);
+        return segmentFor(hash).put(key, hash, value);
+    }
+
+    /**
+     * Grows the segments up front for {@code additionalSize} more keys.
+     */
+    void reserve(int additionalSize) {
+        int perSegment = additionalSize / segments.length + 1;
+        for (Segment<V> segment : segments) {
+            segment.reserve(perSegment);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Live view of the values. Iteration is weakly consistent: it never fails, and sees the entries present when
+     * it started unless their segment was resized meanwhile. The spliterator splits by segment and then by slot
+     * range, so parallel streams divide the work evenly.
+     */
+    Collection<V> values() {
+        return values;
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int tableSize(int expectedSize) {
+        int size = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        return Math.max(size, 16);
+    }
+
+    private static final class Segment<V> {
+        volatile Table table;
+
+        volatile int size;
+
+        Segment(int expectedSize) {
+            table = new Table(tableSize(expectedSize));
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key, int hash) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                long found = (long) KEYS.getAcquire(current.keys, i);
+                if (found == key) {
+                    return (V) VALUES.getAcquire(current.values, i);
+                }
+                if (found == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        synchronized V put(long key, int hash, V value) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                long found = current.keys[i];
+                if (found == key) {
+                    @SuppressWarnings("unchecked")
+                    V previous = (V) current.values[i];
+                    VALUES.setRelease(current.values, i, value);
+                    return previous;
+                }
+                if (found == EMPTY) {
+                    current.values[i] = value;
+                    KEYS.setRelease(current.keys, i, key);
+                    size++;
+                    if (size * 2 > current.keys.length) {
+                        resize(current.keys.length * 2);
+                    }
+                    return null;
+                }
+            }
+        }
+
+        synchronized void reserve(int additionalSize) {
+            int capacity = tableSize(size + additionalSize);
+            if (capacity > table.keys.length) {
+                resize(capacity);
+            }
+        }
+
+        private void resize(int capacity) {
+            Table current = table;
+            Table resized = new Table(capacity);
+            int mask = resized.keys.length - 1;
+            for (int i = 0; i < current.keys.length; i++) {
+                long key = current.keys[i];
+                if (key == EMPTY) {
+                    continue;
+                }
+                int slot = mix(key) & mask;
+                while (resized.keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                resized.keys[slot] = key;
+                resized.values[slot] = current.values[i];
+            }
+            table = resized;
+        }
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentLongHashMap.this.size();
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new ValueSpliterator(0, segments.length);
+        }
+    }
+
+    /**
+     * Covers the segments {@code [segment, segmentEnd)}. Once it starts on a segment it binds that segment's
+     * current table, and from then on splits the remaining slots of that table.
+     */
+    private final class ValueSpliterator implements Spliterator<V> {
+        private static final int MIN_SPLIT_SLOTS = 64;
+
+        private int segment;
+        private int segmentEnd;
+        private Table table;
+        private int slot;
+        private int slotEnd;
+
+        ValueSpliterator(int segment, int segmentEnd) {
+            this.segment = segment;
+            this.segmentEnd = segmentEnd;
+        }
+
+        private ValueSpliterator(int segment, Table table, int slot, int slotEnd) {
+            this(segment, segment + 1);
+            this.table = table;
+            this.slot = slot;
+            this.slotEnd = slotEnd;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (true) {
+                if (table == null) {
+                    if (segment >= segmentEnd) {
+                        return false;
+                    }
+                    bind();
+                }
+                while (slot < slotEnd) {
+                    int i = slot++;
+                    if ((long) KEYS.getAcquire(table.keys, i) != EMPTY) {
+                        action.accept((V) VALUES.getAcquire(table.values, i));
+                        return true;
+                    }
+                }
+                table = null;
+                segment++;
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (table == null) {
+                if (segmentEnd - segment > 1) {
+                    int middle = (segment + segmentEnd) >>> 1;
+                    ValueSpliterator prefix = new ValueSpliterator(segment, middle);
+                    segment = middle;
+                    return prefix;
+                }
+                if (segment >= segmentEnd) {
+                    return null;
+                }
+                bind();
+            } else if (segmentEnd - segment > 1) {
+                ValueSpliterator rest = new ValueSpliterator(segment + 1, segmentEnd);
+                segmentEnd = segment + 1;
+                return rest;
+            }
+            if (slotEnd - slot < MIN_SPLIT_SLOTS * 2) {
+                return null;
+            }
+            int middle = (slot + slotEnd) >>> 1;
+            ValueSpliterator prefix = new ValueSpliterator(segment, table, slot, middle);
+            slot = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            int from = segment;
+            if (table != null) {
+                size = (long) segments[segment].size * (slotEnd - slot) / table.keys.length;
+                from++;
+            }
+            for (int i = from; i < segmentEnd; i++) {
+                size += segments[i].size;
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.CONCURRENT | Spliterator.NONNULL;
+        }
+
+        private void bind() {
+            table = segments[segment].table;
+            slot = 0;
+            slotEnd = table.keys.length;
+        }
+    }
+}
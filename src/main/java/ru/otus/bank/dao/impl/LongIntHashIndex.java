@@ -0,0 +1,117 @@
+package ru.otus.bank.dao.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Open-addressing {@code long -> int} map with linear probing and no boxing. Reads are lock-free; writes must
+ * be serialized by the caller. A key is published with release semantics after its value, and the table is
+ * replaced as a whole on resize, so a reader always sees either a complete entry or none.
+ */
+final class LongIntHashIndex {
+
+    static final int MISSING = -1;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile Table table;
+
+    private int size;
+
+    LongIntHashIndex(int expectedSize) {
+        table = new Table(tableSize(expectedSize));
+    }
+
+    int get(long key) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long found = (long) KEYS.getAcquire(current.keys, i);
+            if (found == key) {
+                return (int) VALUES.getAcquire(current.values, i);
+            }
+            if (found == EMPTY) {
+                return MISSING;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+        if (insert(table, key, value)) {
+            size++;
+            if (size * 2 > table.keys.length) {
+                resize(table.keys.length * 2);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Grows the table up front for {@code additionalSize} more keys.
+     */
+    void reserve(int additionalSize) {
+        int capacity = tableSize(size + additionalSize);
+        if (capacity > table.keys.length) {
+            resize(capacity);
+        }
+    }
+
+    private static boolean insert(Table table, long key, int value) {
+        int mask = table.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long found = table.keys[i];
+            if (found == key) {
+                VALUES.setRelease(table.values, i, value);
+                return false;
+            }
+            if (found == EMPTY) {
+                table.values[i] = value;
+                KEYS.setRelease(table.keys, i, key);
+                return true;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        Table current = table;
+        Table resized = new Table(capacity);
+        for (int i = 0; i < current.keys.length; i++) {
+            if (current.keys[i] != EMPTY) {
+                insert(resized, current.keys[i], current.values[i]);
+            }
+        }
+        table = resized;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int size = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        return Math.max(size, 16);
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+}
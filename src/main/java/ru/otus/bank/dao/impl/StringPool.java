@@ -0,0 +1,103 @@
+package ru.otus.bank.dao.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interned strings stored as UTF-8 bytes in one growing arena instead of separate {@link String} objects.
+ * Equal strings share one id. Lookups by id are lock-free; {@link #intern(String)} must be serialized by the
+ * caller. Entries are never modified once written, and arrays are replaced rather than resized in place.
+ */
+final class StringPool {
+
+    static final int NULL_ID = -1;
+
+    private volatile Entries entries = new Entries(new byte[1024], new int[64], new int[64], 0);
+
+    private int[] table = emptyTable(128);
+
+    int intern(String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = Arrays.hashCode(bytes);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        Entries current = entries;
+        for (int id; (id = table[slot]) != NULL_ID; slot = (slot + 1) & mask) {
+            if (current.matches(id, bytes)) {
+                return id;
+            }
+        }
+
+        int id = current.count;
+        entries = current.append(bytes);
+        table[slot] = id;
+        if ((id + 1) * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    String get(int id) {
+        if (id == NULL_ID) {
+            return null;
+        }
+        Entries current = entries;
+        return new String(current.arena, current.offsets[id], current.lengths[id], StandardCharsets.UTF_8);
+    }
+
+    private void rehash() {
+        Entries current = entries;
+        int[] rehashed = emptyTable(table.length * 2);
+        int mask = rehashed.length - 1;
+        for (int id = 0; id < current.count; id++) {
+            int slot = current.hash(id) & mask;
+            while (rehashed[slot] != NULL_ID) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id;
+        }
+        table = rehashed;
+    }
+
+    private static int[] emptyTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, NULL_ID);
+        return table;
+    }
+
+    private record Entries(byte[] arena, int[] offsets, int[] lengths, int count) {
+
+        boolean matches(int id, byte[] bytes) {
+            return Arrays.equals(arena, offsets[id], offsets[id] + lengths[id], bytes, 0, bytes.length);
+        }
+
+        int hash(int id) {
+            int hash = 1;
+            for (int i = offsets[id]; i < offsets[id] + lengths[id]; i++) {
+                hash = 31 * hash + arena[i];
+            }
+            return hash;
+        }
+
+        Entries append(byte[] bytes) {
+            int offset = count == 0 ? 0 : offsets[count - 1] + lengths[count - 1];
+            byte[] newArena = arena;
+            if (offset + bytes.length > arena.length) {
+                newArena = Arrays.copyOf(arena, Math.max(arena.length * 2, offset + bytes.length));
+            }
+            int[] newOffsets = offsets;
+            int[] newLengths = lengths;
+            if (count == offsets.length) {
+                newOffsets = Arrays.copyOf(offsets, count * 2);
+                newLengths = Arrays.copyOf(lengths, count * 2);
+            }
+            System.arraycopy(bytes, 0, newArena, offset, bytes.length);
+            newOffsets[count] = offset;
+            newLengths[count] = bytes.length;
+            return new Entries(newArena, newOffsets, newLengths, count + 1);
+        }
+    }
+}
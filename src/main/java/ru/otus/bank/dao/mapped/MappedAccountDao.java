@@ -0,0 +1,616 @@
+package ru.otus.bank.dao.mapped;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.dao.AccountPages;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Account storage in memory-mapped files, so the records live outside the Java heap and stay in the files
+ * across restarts. {@code accounts.dat} holds a header and fixed-width account records; {@code numbers.dat}
+ * holds the UTF-8 account numbers the records point to. Both are mapped in fixed-size segments that are never
+ * remapped.
+ * <p>
+ * Accounts are handed out as flyweight views over their record, like {@link
+ * ru.otus.bank.dao.impl.ColumnarAccountDao}: balances are read and written in place with acquire/release
+ * {@link VarHandle} accesses, and {@link #addToBalance(long, long)} and
+ * {@link #compareAndSetBalance(long, long, long)} update them atomically. The id and agreement indexes are
+ * {@link OffHeapLongIntIndex}es rebuilt from the records on open.
+ * <p>
+ * The files are written back by the operating system; {@link #force()} and {@link #close()} write them to
+ * disk. A process crash keeps every completed write, but changes of several records are not atomic, so pair
+ * this storage with a {@link ru.otus.bank.dao.wal.JournaledAccountDao} where transfers must survive power loss.
+ */
+public class MappedAccountDao implements AccountDao, Closeable {
+
+    static final int MAGIC = 0x42414D41;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 48;
+
+    private static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+    private static final int DEFAULT_NUMBER_SEGMENT_SIZE = 1 << 24;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_COUNT = 8;
+    private static final int H_NEXT_ID = 16;
+    private static final int H_NUMBERS_END = 24;
+    private static final int H_SEGMENT_RECORDS = 32;
+    private static final int H_NUMBER_SEGMENT_SIZE = 36;
+
+    private static final int R_ID = 0;
+    private static final int R_BALANCE = 8;
+    private static final int R_AGREEMENT = 16;
+    private static final int R_NUMBER_OFFSET = 24;
+    private static final int R_TYPE = 32;
+    private static final int R_NUMBER_LENGTH = 36;
+    private static final int R_NEXT = 40;
+
+    private static final long NULL_AGREEMENT = Long.MIN_VALUE;
+    private static final int NULL_TYPE = Integer.MIN_VALUE;
+    private static final int NULL_NUMBER = -1;
+    private static final int NO_SLOT = OffHeapLongIntIndex.MISSING;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel accountsChannel;
+
+    private final FileChannel numbersChannel;
+
+    private final MappedByteBuffer header;
+
+    private final int segmentRecords;
+
+    private final int numberSegmentSize;
+
+    private final ReentrantLock structureLock = new ReentrantLock();
+
+    private final OffHeapLongIntIndex slotsById;
+
+    /**
+     * agreementId -> last linked slot of the agreement; earlier ones are chained through the records' next slot.
+     */
+    private final OffHeapLongIntIndex agreementHeads;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private volatile MappedByteBuffer[] numberSegments = new MappedByteBuffer[0];
+
+    private volatile int size;
+
+    public MappedAccountDao(Path directory) {
+        this(directory, DEFAULT_SEGMENT_RECORDS, DEFAULT_NUMBER_SEGMENT_SIZE);
+    }
+
+    /**
+     * Segment sizes only apply to new files; existing files keep the sizes stored in their header.
+     */
+    MappedAccountDao(Path directory, int segmentRecords, int numberSegmentSize) {
+        try {
+            Files.createDirectories(directory);
+            accountsChannel = FileChannel.open(directory.resolve("accounts.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            numbersChannel = FileChannel.open(directory.resolve("numbers.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean created = accountsChannel.size() == 0;
+            header = accountsChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created) {
+                INTS.set(header, H_MAGIC, MAGIC);
+                INTS.set(header, H_VERSION, VERSION);
+                INTS.set(header, H_SEGMENT_RECORDS, segmentRecords);
+                INTS.set(header, H_NUMBER_SEGMENT_SIZE, numberSegmentSize);
+            } else if ((int) INTS.get(header, H_MAGIC) != MAGIC || (int) INTS.get(header, H_VERSION) != VERSION) {
+                throw new IllegalStateException("Not an account table: " + directory);
+            }
+            this.segmentRecords = (int) INTS.get(header, H_SEGMENT_RECORDS);
+            this.numberSegmentSize = (int) INTS.get(header, H_NUMBER_SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int count = (int) (long) LONGS.getAcquire(header, H_COUNT);
+        slotsById = new OffHeapLongIntIndex(Math.max(count, 1024));
+        agreementHeads = new OffHeapLongIntIndex(Math.max(count / 2, 16));
+        load(count);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return findByAgreement(agreementId, null, false);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return findByAgreement(agreementId, type, true);
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return Optional.ofNullable(findByIdOrNull(accountId));
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        int slot = slotsById.get(accountId);
+        return slot == NO_SLOT ? null : new RecordView(slot);
+    }
+
+    @Override
+    public Account save(Account account) {
+        if (account instanceof RecordView view && view.owner() == this) {
+            return view;
+        }
+
+        structureLock.lock();
+        try {
+            long nextId = (long) LONGS.get(header, H_NEXT_ID);
+            if (account.getId() == null || account.getId() == 0) {
+                account.setId(nextId + 1);
+            }
+            LONGS.setRelease(header, H_NEXT_ID, Math.max(nextId, account.getId()));
+
+            int slot = slotsById.get(account.getId());
+            boolean added = slot == NO_SLOT;
+            if (added) {
+                slot = allocateSlot(account.getId());
+            }
+            MappedByteBuffer segment = segmentOf(slot);
+            int offset = offsetOf(slot);
+            LONGS.setRelease(segment, offset + R_BALANCE, account.getMinorAmount());
+            INTS.set(segment, offset + R_TYPE, account.getType() == null ? NULL_TYPE : account.getType());
+            writeNumber(segment, offset, account.getNumber());
+            relink(slot, account.getAgreementId());
+            if (added) {
+                slotsById.put(account.getId(), slot);
+                size = slot + 1;
+                LONGS.setRelease(header, H_COUNT, (long) size);
+            }
+            return new RecordView(slot);
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return () -> new Iterator<>() {
+            private final int end = size;
+            private int slot;
+
+            @Override
+            public boolean hasNext() {
+                return slot < end;
+            }
+
+            @Override
+            public Account next() {
+                if (slot >= end) {
+                    throw new NoSuchElementException();
+                }
+                return new RecordView(slot++);
+            }
+        };
+    }
+
+    /**
+     * Stream over the records stored when the stream was created, split into slot ranges when run in parallel.
+     */
+    @Override
+    public Stream<Account> streamAll() {
+        return StreamSupport.stream(new SlotSpliterator(0, size), false);
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        AccountPage page = AccountPages.probe(afterId, limit, (long) LONGS.getAcquire(header, H_NEXT_ID), size,
+                accountId -> {
+                    int slot = slotsById.get(accountId);
+                    return slot == NO_SLOT ? null : new RecordView(slot);
+                });
+        return page != null ? page : AccountPages.scan(findAll(), afterId, limit);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Atomically adds {@code delta} minor units to the balance and returns the new balance.
+     */
+    public long addToBalance(long accountId, long delta) {
+        int slot = requireSlot(accountId);
+        return (long) LONGS.getAndAdd(segmentOf(slot), offsetOf(slot) + R_BALANCE, delta) + delta;
+    }
+
+    public boolean compareAndSetBalance(long accountId, long expected, long updated) {
+        int slot = requireSlot(accountId);
+        return LONGS.compareAndSet(segmentOf(slot), offsetOf(slot) + R_BALANCE, expected, updated);
+    }
+
+    /**
+     * Sum of all balances in minor units, computed by a sequential scan of the records.
+     */
+    public long totalMinorAmount() {
+        int end = size;
+        long total = 0;
+        for (int slot = 0; slot < end; slot++) {
+            total = Money.add(total, (long) LONGS.getAcquire(segmentOf(slot), offsetOf(slot) + R_BALANCE));
+        }
+        return total;
+    }
+
+    /**
+     * Writes all changes of the mapped files to disk.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : numberSegments) {
+            segment.force();
+        }
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Forces the files and closes the channels. The mappings stay valid until they are garbage collected, but
+     * the dao must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        structureLock.lock();
+        try {
+            force();
+            accountsChannel.close();
+            numbersChannel.close();
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    private void load(int count) {
+        structureLock.lock();
+        try {
+            for (int slot = 0; slot < count; slot++) {
+                if (slot % segmentRecords == 0) {
+                    mapSegment(slot / segmentRecords);
+                }
+                MappedByteBuffer segment = segmentOf(slot);
+                int offset = offsetOf(slot);
+                slotsById.put((long) LONGS.get(segment, offset + R_ID), slot);
+                long agreementId = (long) LONGS.get(segment, offset + R_AGREEMENT);
+                LONGS.set(segment, offset + R_AGREEMENT, NULL_AGREEMENT);
+                relink(slot, agreementId == NULL_AGREEMENT ? null : agreementId);
+            }
+            long numbersEnd = (long) LONGS.get(header, H_NUMBERS_END);
+            for (int i = 0; (long) i * numberSegmentSize < numbersEnd; i++) {
+                mapNumberSegment(i);
+            }
+            size = count;
+        } finally {
+            structureLock.unlock();
+        }
+    }
+
+    private List<Account> findByAgreement(Long agreementId, Integer type, boolean filterByType) {
+        List<Account> result = new ArrayList<>();
+        if (agreementId == null) {
+            return result;
+        }
+        int typeValue = type == null ? NULL_TYPE : type;
+        for (int slot = agreementHeads.get(agreementId); slot != NO_SLOT;
+             slot = (int) INTS.getAcquire(segmentOf(slot), offsetOf(slot) + R_NEXT)) {
+            if (!filterByType || (int) INTS.get(segmentOf(slot), offsetOf(slot) + R_TYPE) == typeValue) {
+                result.add(new RecordView(slot));
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private int allocateSlot(long accountId) {
+        int slot = size;
+        if (slot % segmentRecords == 0) {
+            mapSegment(slot / segmentRecords);
+        }
+        MappedByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        LONGS.set(segment, offset + R_ID, accountId);
+        LONGS.set(segment, offset + R_AGREEMENT, NULL_AGREEMENT);
+        INTS.set(segment, offset + R_NUMBER_LENGTH, NULL_NUMBER);
+        INTS.set(segment, offset + R_NEXT, NO_SLOT);
+        return slot;
+    }
+
+    /**
+     * Moves the slot to the chain of another agreement. Must be called under the structure lock.
+     */
+    private void relink(int slot, Long agreementId) {
+        MappedByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        long previous = (long) LONGS.get(segment, offset + R_AGREEMENT);
+        long updated = agreementId == null ? NULL_AGREEMENT : agreementId;
+        if (previous == updated) {
+            return;
+        }
+        if (previous != NULL_AGREEMENT) {
+            unlink(slot, previous);
+        }
+        LONGS.setRelease(segment, offset + R_AGREEMENT, updated);
+        if (updated != NULL_AGREEMENT) {
+            INTS.setRelease(segment, offset + R_NEXT, agreementHeads.get(updated));
+            agreementHeads.put(updated, slot);
+        }
+    }
+
+    private void unlink(int slot, long agreementId) {
+        int next = (int) INTS.get(segmentOf(slot), offsetOf(slot) + R_NEXT);
+        int head = agreementHeads.get(agreementId);
+        if (head == slot) {
+            agreementHeads.put(agreementId, next);
+            return;
+        }
+        for (int previous = head; previous != NO_SLOT; ) {
+            int previousNext = (int) INTS.get(segmentOf(previous), offsetOf(previous) + R_NEXT);
+            if (previousNext == slot) {
+                INTS.setRelease(segmentOf(previous), offsetOf(previous) + R_NEXT, next);
+                return;
+            }
+            previous = previousNext;
+        }
+    }
+
+    /**
+     * Appends the number to the numbers file unless the record already holds it. Numbers never span segments.
+     * Must be called under the structure lock.
+     */
+    private void writeNumber(MappedByteBuffer segment, int offset, String number) {
+        if (number == null) {
+            INTS.setRelease(segment, offset + R_NUMBER_LENGTH, NULL_NUMBER);
+            return;
+        }
+        if (number.equals(readNumber(segment, offset))) {
+            return;
+        }
+        byte[] bytes = number.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > numberSegmentSize) {
+            throw new IllegalArgumentException("Account number is too long: " + bytes.length + " bytes");
+        }
+        long end = (long) LONGS.get(header, H_NUMBERS_END);
+        if (end % numberSegmentSize + bytes.length > numberSegmentSize) {
+            end = (end / numberSegmentSize + 1) * numberSegmentSize;
+        }
+        int segmentIndex = (int) (end / numberSegmentSize);
+        if (segmentIndex == numberSegments.length) {
+            mapNumberSegment(segmentIndex);
+        }
+        numberSegments[segmentIndex].put((int) (end % numberSegmentSize), bytes);
+        LONGS.set(segment, offset + R_NUMBER_OFFSET, end);
+        INTS.setRelease(segment, offset + R_NUMBER_LENGTH, bytes.length);
+        LONGS.setRelease(header, H_NUMBERS_END, end + bytes.length);
+    }
+
+    private String readNumber(MappedByteBuffer segment, int offset) {
+        int length = (int) INTS.getAcquire(segment, offset + R_NUMBER_LENGTH);
+        if (length == NULL_NUMBER) {
+            return null;
+        }
+        long position = (long) LONGS.get(segment, offset + R_NUMBER_OFFSET);
+        byte[] bytes = new byte[length];
+        numberSegments[(int) (position / numberSegmentSize)].get((int) (position % numberSegmentSize), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void mapSegment(int index) {
+        long position = HEADER_SIZE + (long) index * segmentRecords * RECORD_SIZE;
+        MappedByteBuffer[] grown = Arrays.copyOf(segments, index + 1);
+        grown[index] = map(accountsChannel, position, (long) segmentRecords * RECORD_SIZE);
+        segments = grown;
+    }
+
+    private void mapNumberSegment(int index) {
+        MappedByteBuffer[] grown = Arrays.copyOf(numberSegments, index + 1);
+        grown[index] = map(numbersChannel, (long) index * numberSegmentSize, numberSegmentSize);
+        numberSegments = grown;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int requireSlot(long accountId) {
+        int slot = slotsById.get(accountId);
+        if (slot == NO_SLOT) {
+            throw new IllegalArgumentException("No account " + accountId);
+        }
+        return slot;
+    }
+
+    private MappedByteBuffer segmentOf(int slot) {
+        return segments[slot / segmentRecords];
+    }
+
+    private int offsetOf(int slot) {
+        return slot % segmentRecords * RECORD_SIZE;
+    }
+
+    private final class SlotSpliterator implements Spliterator<Account> {
+        private int slot;
+        private final int end;
+
+        SlotSpliterator(int slot, int end) {
+            this.slot = slot;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Account> action) {
+            if (slot >= end) {
+                return false;
+            }
+            action.accept(new RecordView(slot++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Account> trySplit() {
+            int middle = (slot + end) >>> 1;
+            if (middle - slot < 1024) {
+                return null;
+            }
+            SlotSpliterator prefix = new SlotSpliterator(slot, middle);
+            slot = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - slot;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    /**
+     * Flyweight over one record. Inherited {@link Account} fields are not used, except the id.
+     */
+    private final class RecordView extends Account {
+        private final int slot;
+        private final MappedByteBuffer segment;
+        private final int offset;
+
+        RecordView(int slot) {
+            this.slot = slot;
+            this.segment = segmentOf(slot);
+            this.offset = offsetOf(slot);
+            super.setId((long) LONGS.get(segment, offset + R_ID));
+        }
+
+        MappedAccountDao owner() {
+            return MappedAccountDao.this;
+        }
+
+        @Override
+        public void setId(Long id) {
+            if (!getId().equals(id)) {
+                throw new UnsupportedOperationException("Stored account id can't be changed");
+            }
+        }
+
+        @Override
+        public BigDecimal getAmount() {
+            return Money.toBigDecimal(getMinorAmount());
+        }
+
+        @Override
+        public void setAmount(BigDecimal amount) {
+            setMinorAmount(Money.toMinor(amount));
+        }
+
+        @Override
+        public long getMinorAmount() {
+            return (long) LONGS.getAcquire(segment, offset + R_BALANCE);
+        }
+
+        @Override
+        public void setMinorAmount(long amount) {
+            LONGS.setRelease(segment, offset + R_BALANCE, amount);
+        }
+
+        @Override
+        public Integer getType() {
+            int type = (int) INTS.getAcquire(segment, offset + R_TYPE);
+            return type == NULL_TYPE ? null : type;
+        }
+
+        @Override
+        public void setType(Integer type) {
+            INTS.setRelease(segment, offset + R_TYPE, type == null ? NULL_TYPE : type);
+        }
+
+        @Override
+        public String getNumber() {
+            structureLock.lock();
+            try {
+                return readNumber(segment, offset);
+            } finally {
+                structureLock.unlock();
+            }
+        }
+
+        @Override
+        public void setNumber(String number) {
+            structureLock.lock();
+            try {
+                writeNumber(segment, offset, number);
+            } finally {
+                structureLock.unlock();
+            }
+        }
+
+        @Override
+        public Long getAgreementId() {
+            long agreementId = (long) LONGS.getAcquire(segment, offset + R_AGREEMENT);
+            return agreementId == NULL_AGREEMENT ? null : agreementId;
+        }
+
+        @Override
+        public void setAgreementId(Long agreementId) {
+            structureLock.lock();
+            try {
+                relink(slot, agreementId);
+            } finally {
+                structureLock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Account{" +
+                    "id=" + getId() +
+                    ", amount=" + getAmount() +
+                    ", type=" + getType() +
+                    ", number='" + getNumber() + '\'' +
+                    ", agreementId=" + getAgreementId() +
+                    "}\n";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.otus.bank.dao.mapped;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open-addressing long to int map kept in direct buffers outside the Java heap, with linear probing. Keys are
+ * stored xor {@link Long#MIN_VALUE}, so the zeroed memory of a new table reads as empty and
+ * {@link Long#MIN_VALUE} itself can't be a key.
+ * <p>
+ * One writer at a time (callers hold a lock), any number of lock-free readers: an entry's value is written
+ * before its key is published with a release store, and a resized table is published through a volatile field.
+ */
+final class OffHeapLongIntIndex {
+
+    static final int MISSING = -1;
+
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    private static final VarHandle KEYS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final VarHandle VALUES = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private volatile Table table;
+
+    private int size;
+
+    OffHeapLongIntIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 4L / 3 + 1 && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        table = new Table(capacity);
+    }
+
+    int get(long key) {
+        Table current = table;
+        long stored = key ^ Long.MIN_VALUE;
+        for (int i = hash(key) & current.mask; ; i = i + 1 & current.mask) {
+            long found = (long) KEYS.getAcquire(current.keys, i << 3);
+            if (found == stored) {
+                return (int) VALUES.getAcquire(current.values, i << 2);
+            }
+            if (found == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Unsupported key: " + key);
+        }
+        Table current = table;
+        if ((size + 1) * 4L > current.capacity() * 3L) {
+            current = resize(current);
+        }
+        if (insert(current, key, value)) {
+            size++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static boolean insert(Table table, long key, int value) {
+        long stored = key ^ Long.MIN_VALUE;
+        for (int i = hash(key) & table.mask; ; i = i + 1 & table.mask) {
+            long found = (long) KEYS.getAcquire(table.keys, i << 3);
+            if (found == stored) {
+                VALUES.setRelease(table.values, i << 2, value);
+                return false;
+            }
+            if (found == 0) {
+                VALUES.setRelease(table.values, i << 2, value);
+                KEYS.setRelease(table.keys, i << 3, stored);
+                return true;
+            }
+        }
+    }
+
+    private Table resize(Table current) {
+        if (current.capacity() >= MAX_CAPACITY) {
+            throw new IllegalStateException("Index is full: " + size + " keys");
+        }
+        Table resized = new Table(current.capacity() << 1);
+        for (int i = 0; i < current.capacity(); i++) {
+            long stored = (long) KEYS.getAcquire(current.keys, i << 3);
+            if (stored != 0) {
+                insert(resized, stored ^ Long.MIN_VALUE, (int) VALUES.getAcquire(current.values, i << 2));
+            }
+        }
+        table = resized;
+        return resized;
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    private static final class Table {
+        final ByteBuffer keys;
+        final ByteBuffer values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = ByteBuffer.allocateDirect(capacity << 3).order(ByteOrder.nativeOrder());
+            values = ByteBuffer.allocateDirect(capacity << 2).order(ByteOrder.nativeOrder());
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+}
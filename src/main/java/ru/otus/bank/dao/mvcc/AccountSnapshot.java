@@ -0,0 +1,86 @@
+package ru.otus.bank.dao.mvcc;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Consistent read-only view of all accounts as of one commit version. Accounts returned by a snapshot are
+ * detached copies. The versions a snapshot needs are kept until it is closed.
+ */
+public final class AccountSnapshot implements AutoCloseable {
+
+    private final VersionedAccountDao owner;
+
+    private final long version;
+
+    private final long timestamp;
+
+    AccountSnapshot(VersionedAccountDao owner, long version, long timestamp) {
+        this.owner = owner;
+        this.version = version;
+        this.timestamp = timestamp;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Commit time of {@link #version()}, in milliseconds since the epoch.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public Optional<Account> findById(Long accountId) {
+        AccountVersion head = owner.head(accountId);
+        AccountVersion visible = head == null ? null : head.visibleAt(version);
+        return visible == null ? Optional.empty() : Optional.of(visible.toAccount());
+    }
+
+    public List<Account> findByAgreementId(Long agreementId) {
+        List<Account> result = new ArrayList<>();
+        for (AccountVersion head : owner.heads(agreementId)) {
+            AccountVersion visible = head.visibleAt(version);
+            if (visible != null && Objects.equals(visible.agreementId, agreementId)) {
+                result.add(visible.toAccount());
+            }
+        }
+        return result;
+    }
+
+    public List<Account> findAll() {
+        List<Account> result = new ArrayList<>();
+        for (AccountVersion head : owner.heads()) {
+            AccountVersion visible = head.visibleAt(version);
+            if (visible != null) {
+                result.add(visible.toAccount());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sum of all balances in minor units, without copying the accounts.
+     */
+    public long totalMinorAmount() {
+        long total = 0;
+        for (AccountVersion head : owner.heads()) {
+            AccountVersion visible = head.visibleAt(version);
+            if (visible != null) {
+                total = Money.add(total, visible.amount);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        owner.release(this);
+    }
+}
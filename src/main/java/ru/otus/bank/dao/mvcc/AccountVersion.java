@@ -0,0 +1,49 @@
+package ru.otus.bank.dao.mvcc;
+
+import ru.otus.bank.entity.Account;
+
+/**
+ * Immutable state of one account as of a commit version, linked to the state it replaced.
+ */
+final class AccountVersion {
+
+    final long version;
+    final long id;
+    final long amount;
+    final Long agreementId;
+    final Integer type;
+    final String number;
+
+    volatile AccountVersion previous;
+
+    AccountVersion(long version, Account account, AccountVersion previous) {
+        this.version = version;
+        this.id = account.getId();
+        this.amount = account.getMinorAmount();
+        this.agreementId = account.getAgreementId();
+        this.type = account.getType();
+        this.number = account.getNumber();
+        this.previous = previous;
+    }
+
+    /**
+     * Newest state visible at {@code atVersion}, or {@code null} if the account didn't exist yet.
+     */
+    AccountVersion visibleAt(long atVersion) {
+        AccountVersion current = this;
+        while (current != null && current.version > atVersion) {
+            current = current.previous;
+        }
+        return current;
+    }
+
+    Account toAccount() {
+        Account account = new Account();
+        account.setId(id);
+        account.setMinorAmount(amount);
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setNumber(number);
+        return account;
+    }
+}
@@ -0,0 +1,269 @@
+package ru.otus.bank.dao.mvcc;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps immutable versions of the delegate's accounts so that readers can take {@link AccountSnapshot consistent
+ * snapshots} while writers go on changing the live accounts.
+ * <p>
+ * Every save outside a batch, and every batch as a whole, is a commit with the next version number; the accounts
+ * of a commit become visible to snapshots together. A commit takes its number from an atomic counter and links
+ * its versions in with a compare-and-set on each account's head, so commits of different accounts don't block
+ * each other; only the publication of the numbers happens in order. Commits of one account have to be ordered by
+ * the caller, as the account locks of the services do. Versions older than the newest one visible to the oldest
+ * open snapshot are unlinked when the account is committed again.
+ * <p>
+ * Reads through the {@link AccountDao} methods go to the delegate and see the live accounts.
+ */
+public class VersionedAccountDao implements AccountDao {
+
+    private final AccountDao delegate;
+
+    private final ConcurrentHashMap<Long, AccountVersion> heads = new ConcurrentHashMap<>();
+
+    /**
+     * Agreement id -> ids of the accounts that had it in any committed version.
+     */
+    private final ConcurrentHashMap<Long, Set<Long>> agreementIndex = new ConcurrentHashMap<>();
+
+    private final Map<AccountSnapshot, Long> openSnapshots = new ConcurrentHashMap<>();
+
+    private final AtomicInteger openingSnapshots = new AtomicInteger();
+
+    private final ThreadLocal<List<Account>> batch = new ThreadLocal<>();
+
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    private volatile Commit published = new Commit(0, System.currentTimeMillis());
+
+    public VersionedAccountDao(AccountDao delegate) {
+        this.delegate = delegate;
+        List<Account> existing = new ArrayList<>();
+        delegate.findAll().forEach(existing::add);
+        if (!existing.isEmpty()) {
+            commit(existing);
+        }
+    }
+
+    /**
+     * Opens a snapshot of the latest commit. The snapshot must be closed to let its versions be collected.
+     */
+    public AccountSnapshot openSnapshot() {
+        openingSnapshots.incrementAndGet();
+        try {
+            Commit commit = published;
+            AccountSnapshot snapshot = new AccountSnapshot(this, commit.version(), commit.timestamp());
+            openSnapshots.put(snapshot, snapshot.version());
+            return snapshot;
+        } finally {
+            openingSnapshots.decrementAndGet();
+        }
+    }
+
+    public long currentVersion() {
+        return published.version();
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return delegate.findByAgreementId(agreementId);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return delegate.findByAgreementIdAndType(agreementId, type);
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return delegate.findById(accountId);
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        return delegate.findByIdOrNull(accountId);
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account saved = delegate.save(account);
+        List<Account> pending = batch.get();
+        if (pending != null) {
+            pending.add(saved);
+        } else {
+            commit(List.of(saved));
+        }
+        return saved;
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        delegate.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+        batch.set(new ArrayList<>(2));
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+        List<Account> pending = batch.get();
+        batch.remove();
+        if (pending != null && !pending.isEmpty()) {
+            commit(pending);
+        }
+    }
+
+    @Override
+    public void abortBatch() {
+        delegate.abortBatch();
+        batch.remove();
+    }
+
+    @Override
+    public void awaitDurable() {
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return delegate.isDurable();
+    }
+
+    AccountVersion head(Long accountId) {
+        return heads.get(accountId);
+    }
+
+    Collection<AccountVersion> heads() {
+        return heads.values();
+    }
+
+    /**
+     * Heads of the accounts that had the agreement in any version; all heads for a {@code null} agreement.
+     */
+    Collection<AccountVersion> heads(Long agreementId) {
+        if (agreementId == null) {
+            return heads.values();
+        }
+        Set<Long> accountIds = agreementIndex.getOrDefault(agreementId, Set.of());
+        List<AccountVersion> result = new ArrayList<>(accountIds.size());
+        for (Long accountId : accountIds) {
+            AccountVersion head = heads.get(accountId);
+            if (head != null) {
+                result.add(head);
+            }
+        }
+        return result;
+    }
+
+    void release(AccountSnapshot snapshot) {
+        openSnapshots.remove(snapshot);
+    }
+
+    int versionCount(Long accountId) {
+        int count = 0;
+        for (AccountVersion current = heads.get(accountId); current != null; current = current.previous) {
+            count++;
+        }
+        return count;
+    }
+
+    private void commit(List<Account> accounts) {
+        long next = lastVersion.incrementAndGet();
+        AccountVersion[] linked = new AccountVersion[accounts.size()];
+        try {
+            for (int i = 0; i < linked.length; i++) {
+                linked[i] = link(next, accounts.get(i));
+            }
+        } finally {
+            publish(next);
+        }
+
+        // A snapshot registered after this point reads a version >= next, one still opening might not.
+        if (openingSnapshots.get() > 0) {
+            return;
+        }
+        long horizon = next;
+        for (long snapshotVersion : openSnapshots.values()) {
+            horizon = Math.min(horizon, snapshotVersion);
+        }
+        for (AccountVersion head : linked) {
+            prune(head, horizon);
+        }
+    }
+
+    private AccountVersion link(long next, Account account) {
+        Long id = account.getId();
+        AccountVersion linked = new AccountVersion(next, account, null);
+        while (true) {
+            AccountVersion head = heads.get(id);
+            linked.previous = head;
+            if (linked.agreementId != null && (head == null || !Objects.equals(head.agreementId, linked.agreementId))) {
+                agreementIndex.computeIfAbsent(linked.agreementId, key -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            if (head == null ? heads.putIfAbsent(id, linked) == null : heads.replace(id, head, linked)) {
+                return linked;
+            }
+        }
+    }
+
+    /**
+     * Makes commit {@code next} visible to new snapshots once all the commits before it are.
+     */
+    private void publish(long next) {
+        int spins = 0;
+        while (published.version() != next - 1) {
+            if (++spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        published = new Commit(next, System.currentTimeMillis());
+    }
+
+    private record Commit(long version, long timestamp) {
+    }
+
+    /**
+     * Unlinks everything behind the newest version visible at {@code horizon}.
+     */
+    private static void prune(AccountVersion head, long horizon) {
+        AccountVersion oldestNeeded = head.visibleAt(horizon);
+        if (oldestNeeded != null) {
+            oldestNeeded.previous = null;
+        }
+    }
+}
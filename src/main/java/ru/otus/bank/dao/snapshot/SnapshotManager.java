@@ -0,0 +1,304 @@
+package ru.otus.bank.dao.snapshot;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.dao.wal.WriteAheadLog;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Writes and loads compact binary images of all accounts and agreements.
+ * <p>
+ * Snapshots are fuzzy: writers are not stopped while the image is taken. Both logs are synced first and their
+ * positions are stored in the snapshot; every change that the image may have missed is logged after these
+ * positions, so loading the snapshot and replaying the logs from them restores the exact state. Once the
+ * snapshot is on disk the log records before these positions are discarded.
+ * <p>
+ * File layout: a header, fixed-width account records, fixed-width agreement records and a heap with the
+ * UTF-8 account numbers and agreement names the records point to.
+ */
+public class SnapshotManager implements Closeable {
+
+    static final int MAGIC = 0x42534E50;
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 64;
+    static final int ACCOUNT_RECORD_SIZE = 40;
+    static final int AGREEMENT_RECORD_SIZE = 24;
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    private static final int ACCOUNTS_PER_WINDOW = Integer.MAX_VALUE / ACCOUNT_RECORD_SIZE;
+
+    private final Path file;
+
+    private final AccountDao accountDao;
+
+    private final WriteAheadLog accountLog;
+
+    private final AgreementDao agreementDao;
+
+    private final WriteAheadLog agreementLog;
+
+    private ScheduledExecutorService scheduler;
+
+    public SnapshotManager(Path file,
+                           AccountDao accountDao, WriteAheadLog accountLog,
+                           AgreementDao agreementDao, WriteAheadLog agreementLog) {
+        this.file = file;
+        this.accountDao = accountDao;
+        this.accountLog = accountLog;
+        this.agreementDao = agreementDao;
+        this.agreementLog = agreementLog;
+    }
+
+    public record SnapshotInfo(long accountCount, long agreementCount,
+                               long accountLogPosition, long agreementLogPosition) {
+    }
+
+    /**
+     * Takes a snapshot every {@code period} until the manager is closed.
+     */
+    public synchronized void schedule(Duration period) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Snapshots are already scheduled");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::takeSnapshotQuietly, period.toMillis(), period.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized SnapshotInfo takeSnapshot() {
+        long accountLogPosition = accountLog.sync();
+        long agreementLogPosition = agreementLog.sync();
+
+        List<Account> accounts = new ArrayList<>();
+        accountDao.findAll().forEach(accounts::add);
+        List<Agreement> agreements = new ArrayList<>();
+        agreementDao.findAll().forEach(agreements::add);
+
+        SnapshotInfo info = new SnapshotInfo(accounts.size(), agreements.size(),
+                accountLogPosition, agreementLogPosition);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                write(channel, info, accounts, agreements);
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write snapshot " + file, e);
+        }
+        accountLog.discardBefore(accountLogPosition);
+        agreementLog.discardBefore(agreementLogPosition);
+        return info;
+    }
+
+    /**
+     * Loads the snapshot, if there is one, into the given storages. The account storage is asked to
+     * {@linkplain AccountDao#reserve(int) reserve} room for the accounts first; they are loaded in parallel, so
+     * it has to accept concurrent saves. Returns the log positions to resume the replay from.
+     */
+    public static Optional<SnapshotInfo> load(Path file, AccountDao accountTarget, AgreementDao agreementTarget) {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("Not a snapshot file: " + file);
+            }
+            int scale = header.getInt();
+            if (scale != Money.SCALE) {
+                throw new IllegalStateException("Snapshot amount scale " + scale + " doesn't match " + Money.SCALE);
+            }
+            header.getInt();
+            SnapshotInfo info = new SnapshotInfo(header.getLong(), header.getLong(), header.getLong(), header.getLong());
+            long agreementsOffset = HEADER_SIZE + info.accountCount() * ACCOUNT_RECORD_SIZE;
+            long heapOffset = agreementsOffset + info.agreementCount() * AGREEMENT_RECORD_SIZE;
+            long heapSize = channel.size() - heapOffset;
+            if (heapSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Snapshot string heap is too large: " + heapSize);
+            }
+            ByteBuffer heap = channel.map(FileChannel.MapMode.READ_ONLY, heapOffset, heapSize);
+
+            ByteBuffer agreementRecords = channel.map(FileChannel.MapMode.READ_ONLY, agreementsOffset,
+                    info.agreementCount() * AGREEMENT_RECORD_SIZE);
+            for (long i = 0; i < info.agreementCount(); i++) {
+                agreementTarget.save(readAgreement(agreementRecords, heap));
+            }
+
+            int windows = (int) ((info.accountCount() + ACCOUNTS_PER_WINDOW - 1) / ACCOUNTS_PER_WINDOW);
+            for (int window = 0; window < windows; window++) {
+                long first = (long) window * ACCOUNTS_PER_WINDOW;
+                int count = (int) Math.min(ACCOUNTS_PER_WINDOW, info.accountCount() - first);
+                accountTarget.reserve(count);
+                MappedByteBuffer accountRecords = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * ACCOUNT_RECORD_SIZE, (long) count * ACCOUNT_RECORD_SIZE);
+                IntStream.range(0, count).parallel().forEach(i ->
+                        accountTarget.save(readAccount(accountRecords, i * ACCOUNT_RECORD_SIZE, heap)));
+            }
+            return Optional.of(info);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't load snapshot " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void takeSnapshotQuietly() {
+        try {
+            takeSnapshot();
+        } catch (RuntimeException e) {
+            // the logs are kept until a snapshot succeeds, the next run retries
+        }
+    }
+
+    private static void write(FileChannel channel, SnapshotInfo info,
+                              List<Account> accounts, List<Agreement> agreements) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(Money.SCALE).putInt(0)
+                .putLong(info.accountCount()).putLong(info.agreementCount())
+                .putLong(info.accountLogPosition()).putLong(info.agreementLogPosition());
+        channel.write(header.clear(), 0);
+
+        long recordPosition = HEADER_SIZE;
+        long heapStart = HEADER_SIZE + (long) accounts.size() * ACCOUNT_RECORD_SIZE
+                + (long) agreements.size() * AGREEMENT_RECORD_SIZE;
+        ByteBuffer records = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        StringHeap heap = new StringHeap(channel, heapStart);
+
+        for (Account account : accounts) {
+            if (records.remaining() < ACCOUNT_RECORD_SIZE) {
+                recordPosition += flush(channel, records, recordPosition);
+            }
+            byte[] number = account.getNumber() == null ? null : account.getNumber().getBytes(StandardCharsets.UTF_8);
+            records.putLong(account.getId())
+                    .putLong(account.getAgreementId() == null ? NULL_LONG : account.getAgreementId())
+                    .putLong(account.getMinorAmount())
+                    .putLong(number == null ? NULL_LONG : heap.add(number))
+                    .putInt(account.getType() == null ? NULL_INT : account.getType())
+                    .putInt(number == null ? 0 : number.length);
+        }
+        for (Agreement agreement : agreements) {
+            if (records.remaining() < AGREEMENT_RECORD_SIZE) {
+                recordPosition += flush(channel, records, recordPosition);
+            }
+            byte[] name = agreement.getName().getBytes(StandardCharsets.UTF_8);
+            records.putLong(agreement.getId())
+                    .putLong(heap.add(name))
+                    .putInt(name.length)
+                    .putInt(0);
+        }
+        flush(channel, records, recordPosition);
+        heap.flush();
+    }
+
+    private static Account readAccount(ByteBuffer records, int offset, ByteBuffer heap) {
+        Account account = new Account();
+        account.setId(records.getLong(offset));
+        long agreementId = records.getLong(offset + 8);
+        account.setAgreementId(agreementId == NULL_LONG ? null : agreementId);
+        account.setMinorAmount(records.getLong(offset + 16));
+        long numberOffset = records.getLong(offset + 24);
+        int type = records.getInt(offset + 32);
+        account.setType(type == NULL_INT ? null : type);
+        account.setNumber(numberOffset == NULL_LONG ? null : readString(heap, numberOffset, records.getInt(offset + 36)));
+        return account;
+    }
+
+    private static Agreement readAgreement(ByteBuffer records, ByteBuffer heap) {
+        Agreement agreement = new Agreement();
+        agreement.setId(records.getLong());
+        long nameOffset = records.getLong();
+        int nameLength = records.getInt();
+        records.getInt();
+        agreement.setName(readString(heap, nameOffset, nameLength));
+        return agreement;
+    }
+
+    private static String readString(ByteBuffer heap, long offset, int length) {
+        byte[] bytes = new byte[length];
+        heap.get((int) offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Buffered writer of the string heap, returns heap-relative offsets of the added strings.
+     */
+    private static class StringHeap {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private long flushedPosition;
+        private long size;
+
+        StringHeap(FileChannel channel, long start) {
+            this.channel = channel;
+            this.flushedPosition = start;
+        }
+
+        long add(byte[] value) throws IOException {
+            long offset = size;
+            int written = 0;
+            while (written < value.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(buffer.remaining(), value.length - written);
+                buffer.put(value, written, chunk);
+                written += chunk;
+            }
+            size += value.length;
+            return offset;
+        }
+
+        void flush() throws IOException {
+            flushedPosition += SnapshotManager.flush(channel, buffer, flushedPosition);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ru.otus.bank.dao.totals;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the number of accounts and the total balance, system-wide and per agreement and account type, up to date
+ * on every save, so these totals are read in constant time instead of scanning the store. Saves made inside a
+ * batch are counted on {@link #commitBatch()}, so an aborted transfer leaves the totals alone; batches are passed
+ * on to the delegate.
+ * <p>
+ * Totals read while transfers are committed may include one leg of a transfer but not the other; they are
+ * exact once the writers are done. All balance changes must be saved through this dao.
+ */
+public class RunningTotalsAccountDao implements AccountDao {
+
+    private final AccountDao delegate;
+
+    private final Map<Long, Counted> counted = new ConcurrentHashMap<>();
+
+    private final Totals total = new Totals();
+
+    private final Map<Long, Totals> byAgreement = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Totals> byType = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<List<Account>> batch = new ThreadLocal<>();
+
+    public RunningTotalsAccountDao(AccountDao delegate) {
+        this.delegate = delegate;
+        delegate.findAll().forEach(this::count);
+    }
+
+    public long count() {
+        return total.count.sum();
+    }
+
+    public long totalMinorAmount() {
+        return total.amount.sum();
+    }
+
+    public long countByAgreement(Long agreementId) {
+        Totals totals = byAgreement.get(agreementId);
+        return totals == null ? 0 : totals.count.sum();
+    }
+
+    public long totalMinorAmountByAgreement(Long agreementId) {
+        Totals totals = byAgreement.get(agreementId);
+        return totals == null ? 0 : totals.amount.sum();
+    }
+
+    public long countByType(Integer type) {
+        Totals totals = byType.get(type);
+        return totals == null ? 0 : totals.count.sum();
+    }
+
+    public long totalMinorAmountByType(Integer type) {
+        Totals totals = byType.get(type);
+        return totals == null ? 0 : totals.amount.sum();
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return delegate.findByAgreementId(agreementId);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return delegate.findByAgreementIdAndType(agreementId, type);
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return delegate.findById(accountId);
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        return delegate.findByIdOrNull(accountId);
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account saved = delegate.save(account);
+        List<Account> pending = batch.get();
+        if (pending != null) {
+            pending.add(saved);
+        } else {
+            count(saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        delegate.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+        batch.set(new ArrayList<>(2));
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+        List<Account> pending = batch.get();
+        batch.remove();
+        if (pending != null) {
+            pending.forEach(this::count);
+        }
+    }
+
+    @Override
+    public void abortBatch() {
+        delegate.abortBatch();
+        batch.remove();
+    }
+
+    @Override
+    public void awaitDurable() {
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return delegate.isDurable();
+    }
+
+    /**
+     * Replaces the contribution last counted for the account with its current state. The per-account entry
+     * is updated under the map's lock for that key, so concurrent saves of one account are counted in turn.
+     */
+    private void count(Account account) {
+        Counted current = new Counted(account.getMinorAmount(), account.getAgreementId(), account.getType());
+        counted.compute(account.getId(), (id, previous) -> {
+            if (previous != null) {
+                add(previous, -1);
+            }
+            add(current, 1);
+            return current;
+        });
+    }
+
+    private void add(Counted account, int sign) {
+        total.add(account.amount, sign);
+        if (account.agreementId != null) {
+            byAgreement.computeIfAbsent(account.agreementId, id -> new Totals()).add(account.amount, sign);
+        }
+        if (account.type != null) {
+            byType.computeIfAbsent(account.type, type -> new Totals()).add(account.amount, sign);
+        }
+    }
+
+    private record Counted(long amount, Long agreementId, Integer type) {
+    }
+
+    private static final class Totals {
+        final LongAdder count = new LongAdder();
+        final LongAdder amount = new LongAdder();
+
+        void add(long minorAmount, int sign) {
+            count.add(sign);
+            amount.add(sign * minorAmount);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ru.otus.bank.dao.wal;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Logs every saved account to a {@link WriteAheadLog} and serves reads from the delegate. The log is replayed
+ * into the delegate on construction. Saves made inside a batch are logged as one record on
+ * {@link #commitBatch()}, so the legs of a transfer are recovered together or not at all.
+ * <p>
+ * With {@link WriteAheadLog.Durability#STRICT} a save outside a batch returns once it is on disk. A batch is
+ * only written to the log by {@link #commitBatch()}, which is usually called under the caller's locks; the
+ * caller waits for it to reach the disk with {@link #awaitDurable()} after releasing them, so concurrent
+ * transfers share one flush instead of queuing behind it.
+ */
+public class JournaledAccountDao implements AccountDao {
+
+    private final AccountDao delegate;
+
+    private final WriteAheadLog log;
+
+    private final ThreadLocal<List<Account>> batch = new ThreadLocal<>();
+
+    /**
+     * Log position after the last batch the thread committed and hasn't waited for yet, 0 if none.
+     */
+    private final ThreadLocal<long[]> unsyncedPosition = ThreadLocal.withInitial(() -> new long[1]);
+
+    public JournaledAccountDao(AccountDao delegate, WriteAheadLog log) {
+        this(delegate, log, 0);
+    }
+
+    /**
+     * @param replayFrom log position to start the replay at, e.g. the position recorded in a snapshot the
+     *                   delegate has been loaded from
+     */
+    public JournaledAccountDao(AccountDao delegate, WriteAheadLog log, long replayFrom) {
+        this.delegate = delegate;
+        this.log = log;
+        log.replay(replayFrom, record -> WalRecords.decodeAccounts(record).forEach(delegate::save));
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        return delegate.findByAgreementId(agreementId);
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        return delegate.findByAgreementIdAndType(agreementId, type);
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        return delegate.findById(accountId);
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        return delegate.findByIdOrNull(accountId);
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account saved = delegate.save(account);
+        List<Account> pending = batch.get();
+        if (pending != null) {
+            pending.add(saved);
+        } else {
+            log.append(WalRecords.encodeAccounts(List.of(saved)));
+        }
+        return saved;
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        delegate.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void beginBatch() {
+        batch.set(new ArrayList<>(2));
+    }
+
+    @Override
+    public void commitBatch() {
+        List<Account> pending = batch.get();
+        batch.remove();
+        if (pending != null && !pending.isEmpty()) {
+            byte[] record = WalRecords.encodeAccounts(pending);
+            long position = log.write(record, 0, record.length);
+            if (log.durability() == WriteAheadLog.Durability.STRICT) {
+                unsyncedPosition.get()[0] = position;
+            }
+        }
+    }
+
+    @Override
+    public void abortBatch() {
+        batch.remove();
+    }
+
+    @Override
+    public void awaitDurable() {
+        long[] position = unsyncedPosition.get();
+        if (position[0] > 0) {
+            log.awaitDurable(position[0]);
+            position[0] = 0;
+        }
+    }
+
+    @Override
+    public boolean isDurable() {
+        return log.durability() == WriteAheadLog.Durability.STRICT;
+    }
+}
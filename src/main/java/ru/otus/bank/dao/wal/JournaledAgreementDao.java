@@ -0,0 +1,56 @@
+package ru.otus.bank.dao.wal;
+
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Agreement;
+
+import java.util.Optional;
+
+/**
+ * Logs every saved agreement to a {@link WriteAheadLog} and serves reads from the delegate. The log is replayed
+ * into the delegate on construction.
+ */
+public class JournaledAgreementDao implements AgreementDao {
+
+    private final AgreementDao delegate;
+
+    private final WriteAheadLog log;
+
+    public JournaledAgreementDao(AgreementDao delegate, WriteAheadLog log) {
+        this(delegate, log, 0);
+    }
+
+    public JournaledAgreementDao(AgreementDao delegate, WriteAheadLog log, long replayFrom) {
+        this.delegate = delegate;
+        this.log = log;
+        log.replay(replayFrom, record -> delegate.save(WalRecords.decodeAgreement(record)));
+    }
+
+    @Override
+    public Agreement addAgreement(String name) {
+        Agreement agreement = delegate.addAgreement(name);
+        log.append(WalRecords.encodeAgreement(agreement));
+        return agreement;
+    }
+
+    @Override
+    public Optional<Agreement> findByName(String name) {
+        return delegate.findByName(name);
+    }
+
+    @Override
+    public Agreement save(Agreement agreement) {
+        Agreement saved = delegate.save(agreement);
+        log.append(WalRecords.encodeAgreement(saved));
+        return saved;
+    }
+
+    @Override
+    public Iterable<Agreement> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAgreements) {
+        delegate.reserve(additionalAgreements);
+    }
+}
@@ -0,0 +1,129 @@
+package ru.otus.bank.dao.wal;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of the account and agreement images stored in the write-ahead log. Every record holds the full
+ * state of the saved entities, so replaying a record twice leaves the same result. Balances are stored as
+ * minor units, see {@link ru.otus.bank.entity.Money}.
+ */
+final class WalRecords {
+
+    static final byte ACCOUNTS = 3;
+    static final byte AGREEMENT = 2;
+
+    private static final int HAS_AGREEMENT_ID = 1;
+    private static final int HAS_TYPE = 1 << 1;
+    private static final int HAS_NUMBER = 1 << 2;
+
+    private WalRecords() {
+    }
+
+    static byte[] encodeAccounts(List<Account> accounts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * accounts.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ACCOUNTS);
+            out.writeInt(accounts.size());
+            for (Account account : accounts) {
+                writeAccount(out, account);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Account> decodeAccounts(ByteBuffer record) {
+        checkKind(record, ACCOUNTS);
+        int count = record.getInt();
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(readAccount(record));
+        }
+        return accounts;
+    }
+
+    static byte[] encodeAgreement(Agreement agreement) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(AGREEMENT);
+            out.writeLong(agreement.getId());
+            writeString(out, agreement.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Agreement decodeAgreement(ByteBuffer record) {
+        checkKind(record, AGREEMENT);
+        Agreement agreement = new Agreement();
+        agreement.setId(record.getLong());
+        agreement.setName(readString(record));
+        return agreement;
+    }
+
+    private static void writeAccount(DataOutputStream out, Account account) throws IOException {
+        int flags = (account.getAgreementId() != null ? HAS_AGREEMENT_ID : 0)
+                | (account.getType() != null ? HAS_TYPE : 0)
+                | (account.getNumber() != null ? HAS_NUMBER : 0);
+        out.writeLong(account.getId());
+        out.writeLong(account.getMinorAmount());
+        out.writeByte(flags);
+        if (account.getAgreementId() != null) {
+            out.writeLong(account.getAgreementId());
+        }
+        if (account.getType() != null) {
+            out.writeInt(account.getType());
+        }
+        if (account.getNumber() != null) {
+            writeString(out, account.getNumber());
+        }
+    }
+
+    private static Account readAccount(ByteBuffer record) {
+        Account account = new Account();
+        account.setId(record.getLong());
+        account.setMinorAmount(record.getLong());
+        int flags = record.get();
+        if ((flags & HAS_AGREEMENT_ID) != 0) {
+            account.setAgreementId(record.getLong());
+        }
+        if ((flags & HAS_TYPE) != 0) {
+            account.setType(record.getInt());
+        }
+        if ((flags & HAS_NUMBER) != 0) {
+            account.setNumber(readString(record));
+        }
+        return account;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkKind(ByteBuffer record, byte kind) {
+        byte actual = record.get();
+        if (actual != kind) {
+            throw new IllegalStateException("Unexpected write-ahead log record kind " + actual + ", expected " + kind);
+        }
+    }
+}
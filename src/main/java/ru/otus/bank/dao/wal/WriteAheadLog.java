@@ -0,0 +1,470 @@
+package ru.otus.bank.dao.wal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of checksummed records. Each record is framed as {@code [length][crc32][payload]}.
+ * Appends are copied into a memory buffer and written to disk by a single flusher thread, so every fsync
+ * covers all the records appended since the previous one (group commit).
+ * <p>
+ * Positions keep growing across the segment files the log is stored in. The first segment is the file the log
+ * is opened with; later ones are its siblings named after their start position, e.g. {@code accounts.wal.8192}.
+ * {@link #discardBefore(long)}, called once a snapshot covers a position, starts a new segment and deletes the
+ * ones that end before that position. A segment is only left behind once it is on disk, so on open just the
+ * last one is scanned and cut at the first torn or corrupted record, which is what a crash in the middle of a
+ * write leaves behind.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public enum Durability {
+        /**
+         * {@link #append(byte[])} returns only after the record is on disk. The flush interval is the time the
+         * flusher waits to gather more records into one fsync.
+         */
+        STRICT,
+        /**
+         * {@link #append(byte[])} returns once the record is buffered. The buffer is written and synced every
+         * flush interval, so a crash loses at most that much of the latest history.
+         */
+        RELAXED
+    }
+
+    static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path file;
+
+    private final Durability durability;
+
+    private final long flushIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition pending = lock.newCondition();
+
+    private final Condition flushed = lock.newCondition();
+
+    private final Thread flusher;
+
+    /**
+     * Start position -> file of every segment, the last one is being appended to.
+     */
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+
+    /**
+     * The last segment. Replaced under the lock while no flush is running.
+     */
+    private FileChannel channel;
+
+    private long segmentStart;
+
+    private boolean flushing;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private ByteBuffer standby = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private long appendedPosition;
+
+    private long durablePosition;
+
+    private boolean urgent;
+
+    private boolean closed;
+
+    private IOException failure;
+
+    public WriteAheadLog(Path file, Durability durability, Duration flushInterval) {
+        this.file = file;
+        this.durability = durability;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        try {
+            findSegments();
+            Map.Entry<Long, Path> last = segments.lastEntry();
+            segmentStart = last.getKey();
+            channel = FileChannel.open(last.getValue(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long validEnd = scan();
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+            appendedPosition = segmentStart + validEnd;
+            durablePosition = appendedPosition;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open write-ahead log " + file, e);
+        }
+
+        flusher = new Thread(this::flushLoop, "wal-flusher-" + file.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends a record and returns the log position right after it.
+     */
+    public long append(byte[] payload) {
+        return append(payload, 0, payload.length);
+    }
+
+    /**
+     * Appends {@code length} bytes of {@code payload} starting at {@code offset} as one record and returns the
+     * log position right after it. The array may be reused once the method returns.
+     */
+    public long append(byte[] payload, int offset, int length) {
+        long end = write(payload, offset, length);
+        if (durability == Durability.STRICT) {
+            awaitDurable(end);
+        }
+        return end;
+    }
+
+    /**
+     * Same as {@link #append(byte[], int, int)}, but never waits for the record to reach the disk, whatever the
+     * durability. Callers that must not hold their own locks while the log is flushed can write the record under
+     * the lock and {@link #awaitDurable(long) wait} for it after releasing it.
+     */
+    public long write(byte[] payload, int offset, int length) {
+        if (length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record is too large: " + length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, offset, length);
+        int frameSize = HEADER_SIZE + length;
+
+        lock.lock();
+        try {
+            checkWritable();
+            while (buffer.position() > 0 && buffer.remaining() < frameSize) {
+                urgent = true;
+                pending.signal();
+                flushed.awaitUninterruptibly();
+                checkWritable();
+            }
+            if (buffer.remaining() < frameSize) {
+                buffer = ByteBuffer.allocateDirect(frameSize);
+            }
+            buffer.putInt(length).putInt((int) crc.getValue()).put(payload, offset, length);
+            appendedPosition += frameSize;
+            pending.signal();
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the log is on disk at least up to {@code position}.
+     */
+    public void awaitDurable(long position) {
+        lock.lock();
+        try {
+            while (durablePosition < position) {
+                checkWritable();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Durability the log was opened with.
+     */
+    public Durability durability() {
+        return durability;
+    }
+
+    /**
+     * Position up to which the log is known to be on disk.
+     */
+    public long durablePosition() {
+        lock.lock();
+        try {
+            return durablePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until everything appended so far is on disk and returns the durable position.
+     */
+    public long sync() {
+        lock.lock();
+        try {
+            long end = appendedPosition;
+            if (durablePosition < end) {
+                urgent = true;
+                pending.signal();
+            }
+            while (durablePosition < end) {
+                checkWritable();
+                flushed.awaitUninterruptibly();
+            }
+            return durablePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Feeds the payload of every durable record starting at {@code fromPosition} to the handler, in log order.
+     * Fails if records after {@code fromPosition} have been discarded.
+     */
+    public void replay(long fromPosition, Consumer<ByteBuffer> handler) {
+        long end;
+        List<Map.Entry<Long, Path>> toRead;
+        lock.lock();
+        try {
+            end = durablePosition;
+            toRead = new ArrayList<>(segments.entrySet());
+        } finally {
+            lock.unlock();
+        }
+        long first = toRead.get(0).getKey();
+        if (fromPosition < first && fromPosition < end) {
+            throw new IllegalStateException("Records of " + file + " before " + first
+                    + " are discarded, can't replay from " + fromPosition);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try {
+            for (int i = 0; i < toRead.size(); i++) {
+                long start = toRead.get(i).getKey();
+                long segmentEnd = i + 1 < toRead.size() ? toRead.get(i + 1).getKey() : end;
+                if (segmentEnd <= fromPosition) {
+                    continue;
+                }
+                try (FileChannel segment = FileChannel.open(toRead.get(i).getValue(), StandardOpenOption.READ)) {
+                    long position = Math.max(fromPosition, start);
+                    while (position < segmentEnd) {
+                        header.clear();
+                        readFully(segment, header, position - start);
+                        int length = header.getInt(0);
+                        ByteBuffer payload = ByteBuffer.allocate(length);
+                        readFully(segment, payload, position - start + HEADER_SIZE);
+                        handler.accept(payload.flip());
+                        position += HEADER_SIZE + length;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't replay write-ahead log", e);
+        }
+    }
+
+    /**
+     * Discards the records before {@code position}, e.g. once a snapshot covers them: starts a new segment at
+     * the durable end of the log and deletes the segments that end at or before {@code position}. Appends wait
+     * while the segment is switched; a replay running meanwhile may fail.
+     */
+    public void discardBefore(long position) {
+        List<Path> obsolete = new ArrayList<>();
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            checkWritable();
+            if (durablePosition > segmentStart) {
+                Path next = file.resolveSibling(file.getFileName() + "." + durablePosition);
+                FileChannel rolled = FileChannel.open(next, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                channel.close();
+                channel = rolled;
+                segmentStart = durablePosition;
+                segments.put(segmentStart, next);
+            }
+            while (segments.size() > 1 && segments.higherKey(segments.firstKey()) <= position) {
+                obsolete.add(segments.pollFirstEntry().getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't start a new segment of write-ahead log " + file, e);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Path segment : obsolete) {
+                Files.deleteIfExists(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't delete discarded segments of write-ahead log " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't close write-ahead log", e);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer toWrite;
+            long target;
+            FileChannel segment;
+            lock.lock();
+            try {
+                awaitFlushTime();
+                if (buffer.position() == 0) {
+                    return;
+                }
+                toWrite = buffer;
+                buffer = standby;
+                standby = null;
+                target = appendedPosition;
+                urgent = false;
+                flushing = true;
+                segment = channel;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) {
+                    segment.write(toWrite);
+                }
+                segment.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                standby = toWrite.clear();
+                flushing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durablePosition = target;
+                }
+                flushed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits under the lock until there is something to flush and it is time to flush it, or the log is closed.
+     */
+    private void awaitFlushTime() {
+        while (!closed && buffer.position() == 0) {
+            pending.awaitUninterruptibly();
+        }
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        long remaining;
+        while (!closed && !urgent && (remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                pending.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                // the flusher is owned by the log and stops only on close
+            }
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log is broken", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+    }
+
+    private void findSegments() throws IOException {
+        String prefix = file.getFileName() + ".";
+        if (Files.exists(file)) {
+            segments.put(0L, file);
+        }
+        try (Stream<Path> siblings = Files.list(file.toAbsolutePath().getParent())) {
+            siblings.forEach(sibling -> {
+                String name = sibling.getFileName().toString();
+                String suffix = name.substring(Math.min(prefix.length(), name.length()));
+                if (name.startsWith(prefix) && !suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.parseLong(suffix), file.resolveSibling(name));
+                }
+            });
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, file);
+        }
+    }
+
+    /**
+     * Returns the length of the valid prefix of the last segment.
+     */
+    private long scan() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int length = header.getInt(0);
+            int checksum = header.getInt(Integer.BYTES);
+            if (length < 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.flip());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = source.read(target, position + target.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of write-ahead log at " + position);
+            }
+        }
+    }
+}
@@ -6,7 +6,11 @@ import java.util.Objects;
 public class Account {
 
     private long id;
-    private BigDecimal amount;
+
+    /**
+     * Balance in minor units, see {@link Money}.
+     */
+    private long amount;
 
     private Integer type;
 
@@ -23,10 +27,18 @@ public class Account {
     }
 
     public BigDecimal getAmount() {
-        return amount;
+        return Money.toBigDecimal(amount);
     }
 
     public void setAmount(BigDecimal amount) {
+        this.amount = Money.toMinor(amount);
+    }
+
+    public long getMinorAmount() {
+        return amount;
+    }
+
+    public void setMinorAmount(long amount) {
         this.amount = amount;
     }
 
@@ -58,7 +70,7 @@ public class Account {
     public String toString() {
         return "Account{" +
                 "id=" + id +
-                ", amount=" + amount +
+                ", amount=" + getAmount() +
                 ", type=" + type +
                 ", number='" + number + '\'' +
                 ", agreementId=" + agreementId +
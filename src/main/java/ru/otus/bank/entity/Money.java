@@ -0,0 +1,182 @@
+package ru.otus.bank.entity;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point amount of money stored as a count of minor units (kopecks, cents) with the scale {@link #SCALE}.
+ * <p>
+ * Hot paths keep amounts as raw {@code long} minor units and use the static helpers, which check for overflow
+ * and don't allocate; {@link BigDecimal} is only used at the API edges.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_UNITS = 100;
+
+    private static final BigDecimal MIN_AMOUNT = BigDecimal.valueOf(Long.MIN_VALUE, SCALE);
+
+    private static final BigDecimal MAX_AMOUNT = BigDecimal.valueOf(Long.MAX_VALUE, SCALE);
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    public static Money of(BigDecimal amount) {
+        return ofMinor(toMinor(amount));
+    }
+
+    public long minor() {
+        return minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(minor);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(add(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(subtract(minor, other.minor));
+    }
+
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    /**
+     * Converts an amount to minor units, failing if it has more fraction digits than {@link #SCALE}.
+     */
+    public static long toMinor(BigDecimal amount) {
+        if (amount.scale() == 0) {
+            return Math.multiplyExact(amount.longValueExact(), MINOR_UNITS);
+        }
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Amount " + amount + " can't be represented with scale " + SCALE);
+        }
+    }
+
+    /**
+     * Whether {@link #toMinor(BigDecimal)} accepts the amount, for the API edges that refuse such amounts instead
+     * of failing.
+     */
+    public static boolean isRepresentable(BigDecimal amount) {
+        if (amount.scale() > SCALE && amount.stripTrailingZeros().scale() > SCALE) {
+            return false;
+        }
+        return amount.compareTo(MIN_AMOUNT) >= 0 && amount.compareTo(MAX_AMOUNT) <= 0;
+    }
+
+    public static long toMinor(BigDecimal amount, RoundingMode roundingMode) {
+        try {
+            return amount.setScale(SCALE, roundingMode).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Amount " + amount + " can't be represented with scale " + SCALE);
+        }
+    }
+
+    /**
+     * Converts minor units back to an amount without trailing zeros, e.g. 1000 minor units become {@code 10}
+     * and 890 become {@code 8.9}.
+     */
+    public static BigDecimal toBigDecimal(long minor) {
+        if (minor % MINOR_UNITS == 0) {
+            return BigDecimal.valueOf(minor / MINOR_UNITS);
+        }
+        return BigDecimal.valueOf(minor, SCALE).stripTrailingZeros();
+    }
+
+    public static long add(long first, long second) {
+        return Math.addExact(first, second);
+    }
+
+    public static long subtract(long first, long second) {
+        return Math.subtractExact(first, second);
+    }
+
+    /**
+     * {@code amount * numerator / denominator} rounded half to even, e.g. a commission at a rate given as a
+     * fraction.
+     */
+    public static long multiply(long amount, long numerator, long denominator) {
+        long product = Math.multiplyExact(amount, numerator);
+        long quotient = product / denominator;
+        long remainder = Math.abs(product % denominator);
+        if (remainder * 2 > denominator || remainder * 2 == denominator && (quotient & 1) != 0) {
+            quotient += Long.signum(product);
+        }
+        return quotient;
+    }
+
+    /**
+     * {@code amount * rate} rounded half to even, without converting the amount to {@link BigDecimal}. The rate
+     * may have at most 18 fraction digits.
+     */
+    public static long multiply(long amount, BigDecimal rate) {
+        if (rate.scale() <= 0) {
+            return Math.multiplyExact(amount, rate.longValueExact());
+        }
+        if (rate.scale() > 18) {
+            throw new ArithmeticException("Rate " + rate + " has more than 18 fraction digits");
+        }
+        return multiply(amount, rate.unscaledValue().longValueExact(), POWERS_OF_TEN[rate.scale()]);
+    }
+
+    /**
+     * Whether {@link #multiply(long, BigDecimal)} accepts the rate, for the API edges that refuse such rates
+     * instead of failing.
+     */
+    public static boolean isRate(BigDecimal rate) {
+        if (rate.scale() > 18) {
+            return false;
+        }
+        BigInteger value = rate.scale() <= 0 ? rate.toBigIntegerExact() : rate.unscaledValue();
+        return value.bitLength() < Long.SIZE;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof Money money && minor == money.minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(minor, SCALE).toPlainString();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.otus.bank.metrics;
+
+/**
+ * Recording surface for the services and DAOs. All methods do nothing by default, see {@link #NOOP}; use
+ * {@link RecordingBankMetrics} to collect them.
+ */
+public interface BankMetrics {
+
+    BankMetrics NOOP = new BankMetrics() {
+    };
+
+    default void transferCompleted(long latencyNanos) {
+    }
+
+    default void transferRejected(RejectReason reason, long latencyNanos) {
+    }
+
+    default void chargeCompleted(long latencyNanos) {
+    }
+
+    default void chargeRejected(RejectReason reason, long latencyNanos) {
+    }
+
+    default void paymentCompleted(long latencyNanos) {
+    }
+
+    default void paymentRejected(RejectReason reason, long latencyNanos) {
+    }
+
+    default void lookup(long latencyNanos) {
+    }
+
+    default void save(long latencyNanos) {
+    }
+
+    default void lockWait(long nanos) {
+    }
+}
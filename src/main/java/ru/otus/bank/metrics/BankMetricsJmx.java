@@ -0,0 +1,53 @@
+package ru.otus.bank.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exposes {@link RecordingBankMetrics} as an MXBean; every attribute read takes a fresh snapshot.
+ */
+public class BankMetricsJmx implements BankMetricsMXBean {
+
+    public static final String DEFAULT_NAME = "ru.otus.bank:type=BankMetrics";
+
+    private final RecordingBankMetrics metrics;
+
+    public BankMetricsJmx(RecordingBankMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server under {@link #DEFAULT_NAME}.
+     */
+    public static ObjectName register(RecordingBankMetrics metrics) throws JMException {
+        return register(metrics, ManagementFactory.getPlatformMBeanServer(), new ObjectName(DEFAULT_NAME));
+    }
+
+    public static ObjectName register(RecordingBankMetrics metrics, MBeanServer server, ObjectName name)
+            throws JMException {
+        return server.registerMBean(new BankMetricsJmx(metrics), name).getObjectName();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        return metrics.snapshot().counters();
+    }
+
+    @Override
+    public Map<String, Long> getLatencies() {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        metrics.snapshot().latencies().forEach((name, histogram) -> {
+            latencies.put(name + ".count", histogram.count());
+            latencies.put(name + ".mean", Math.round(histogram.mean()));
+            latencies.put(name + ".p50", histogram.percentile(50));
+            latencies.put(name + ".p99", histogram.percentile(99));
+            latencies.put(name + ".p999", histogram.percentile(99.9));
+            latencies.put(name + ".max", histogram.max());
+        });
+        return latencies;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.otus.bank.metrics;
+
+import java.util.Map;
+
+public interface BankMetricsMXBean {
+
+    Map<String, Long> getCounters();
+
+    /**
+     * Latency count, mean, p50, p99, p99.9 and max in nanoseconds, keyed like {@code transfer.p99}.
+     */
+    Map<String, Long> getLatencies();
+}
@@ -0,0 +1,107 @@
+package ru.otus.bank.metrics;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets in the manner of HdrHistogram: values below 32
+ * are counted exactly, larger ones in 32 buckets per power of two, so a recorded value is reported within about
+ * 3%. Every thread records into its own counts, which are only written by that thread, so recording takes no
+ * lock, CAS or allocation; {@link #snapshot()} merges the counts of all threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final int SUM = BUCKETS;
+
+    private static final int MAX = BUCKETS + 1;
+
+    private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Recorder> localRecorder = ThreadLocal.withInitial(this::register);
+
+    /**
+     * Counts of recorders whose threads have ended.
+     */
+    private final long[] retired = new long[BUCKETS + 2];
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        AtomicLongArray counts = localRecorder.get().counts;
+        int bucket = bucketOf(value);
+        counts.setRelease(bucket, counts.getPlain(bucket) + 1);
+        counts.setRelease(SUM, counts.getPlain(SUM) + value);
+        if (value > counts.getPlain(MAX)) {
+            counts.setRelease(MAX, value);
+        }
+    }
+
+    public synchronized HistogramSnapshot snapshot() {
+        long[] merged = new long[BUCKETS + 2];
+        for (Recorder recorder : recorders) {
+            if (recorder.owner.isAlive()) {
+                recorder.addTo(merged);
+            } else {
+                recorder.addTo(retired);
+                recorders.remove(recorder);
+            }
+        }
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            merged[i] += retired[i];
+            count += merged[i];
+        }
+        return new HistogramSnapshot(Arrays.copyOf(merged, BUCKETS), count, merged[SUM] + retired[SUM],
+                Math.max(merged[MAX], retired[MAX]));
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Largest value counted in the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    private Recorder register() {
+        Recorder recorder = new Recorder(Thread.currentThread());
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    private static final class Recorder {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 2);
+        final Thread owner;
+
+        Recorder(Thread owner) {
+            this.owner = owner;
+        }
+
+        void addTo(long[] target) {
+            for (int i = 0; i < BUCKETS; i++) {
+                target[i] += counts.getAcquire(i);
+            }
+            target[SUM] += counts.getAcquire(SUM);
+            target[MAX] = Math.max(target[MAX], counts.getAcquire(MAX));
+        }
+    }
+}
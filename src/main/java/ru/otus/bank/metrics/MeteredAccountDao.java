@@ -0,0 +1,108 @@
+package ru.otus.bank.metrics;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Records the latency of lookups by id and agreement and of saves of the delegate.
+ */
+public class MeteredAccountDao implements AccountDao {
+
+    private final AccountDao delegate;
+
+    private final BankMetrics metrics;
+
+    public MeteredAccountDao(AccountDao delegate, BankMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        long start = System.nanoTime();
+        Iterable<Account> accounts = delegate.findByAgreementId(agreementId);
+        metrics.lookup(System.nanoTime() - start);
+        return accounts;
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        long start = System.nanoTime();
+        Iterable<Account> accounts = delegate.findByAgreementIdAndType(agreementId, type);
+        metrics.lookup(System.nanoTime() - start);
+        return accounts;
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        long start = System.nanoTime();
+        Optional<Account> account = delegate.findById(accountId);
+        metrics.lookup(System.nanoTime() - start);
+        return account;
+    }
+
+    @Override
+    public Account findByIdOrNull(long accountId) {
+        long start = System.nanoTime();
+        Account account = delegate.findByIdOrNull(accountId);
+        metrics.lookup(System.nanoTime() - start);
+        return account;
+    }
+
+    @Override
+    public Account save(Account account) {
+        long start = System.nanoTime();
+        Account saved = delegate.save(account);
+        metrics.save(System.nanoTime() - start);
+        return saved;
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void reserve(int additionalAccounts) {
+        delegate.reserve(additionalAccounts);
+    }
+
+    @Override
+    public Stream<Account> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public AccountPage findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+    }
+
+    @Override
+    public void abortBatch() {
+        delegate.abortBatch();
+    }
+
+    @Override
+    public void awaitDurable() {
+        delegate.awaitDurable();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return delegate.isDurable();
+    }
+}
@@ -0,0 +1,10 @@
+package ru.otus.bank.metrics;
+
+/**
+ * Publishes snapshots to a monitoring system, see {@link MetricsReporter}.
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+    void export(MetricsSnapshot snapshot);
+}
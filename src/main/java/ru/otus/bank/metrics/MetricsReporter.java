@@ -0,0 +1,50 @@
+package ru.otus.bank.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands a snapshot of the metrics to an exporter every {@code interval} on a background thread, and once more
+ * on {@link #close()}.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private final RecordingBankMetrics metrics;
+
+    private final MetricsExporter exporter;
+
+    private final ScheduledExecutorService scheduler;
+
+    public MetricsReporter(RecordingBankMetrics metrics, MetricsExporter exporter, Duration interval) {
+        this.metrics = metrics;
+        this.exporter = exporter;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = interval.toNanos();
+        scheduler.scheduleAtFixedRate(this::exportQuietly, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.export(exporter);
+    }
+
+    private void exportQuietly() {
+        try {
+            metrics.export(exporter);
+        } catch (RuntimeException e) {
+            // a failing exporter is retried with the next snapshot
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.otus.bank.metrics;
+
+import java.util.Map;
+
+/**
+ * Counters and latency histograms by name, see {@link RecordingBankMetrics} for the names.
+ */
+public record MetricsSnapshot(Map<String, Long> counters, Map<String, HistogramSnapshot> latencies) {
+}
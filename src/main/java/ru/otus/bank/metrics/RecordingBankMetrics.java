@@ -0,0 +1,126 @@
+package ru.otus.bank.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects {@link BankMetrics} in striped counters and per-thread {@link LatencyHistogram}s.
+ * <p>
+ * Counters are named {@code <operation>.completed}, {@code <operation>.rejected.<reason>} and
+ * {@code <operation>.attempted} (completed plus rejected) for the operations {@code transfer}, {@code charge}
+ * and {@code payment}. Latencies are named after the operations and {@code dao.lookup}, {@code dao.save} and
+ * {@code lock.wait}.
+ */
+public class RecordingBankMetrics implements BankMetrics {
+
+    private final Operation transfers = new Operation("transfer");
+
+    private final Operation charges = new Operation("charge");
+
+    private final Operation payments = new Operation("payment");
+
+    private final LatencyHistogram lookups = new LatencyHistogram();
+
+    private final LatencyHistogram saves = new LatencyHistogram();
+
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+
+    @Override
+    public void transferCompleted(long latencyNanos) {
+        transfers.completed(latencyNanos);
+    }
+
+    @Override
+    public void transferRejected(RejectReason reason, long latencyNanos) {
+        transfers.rejected(reason, latencyNanos);
+    }
+
+    @Override
+    public void chargeCompleted(long latencyNanos) {
+        charges.completed(latencyNanos);
+    }
+
+    @Override
+    public void chargeRejected(RejectReason reason, long latencyNanos) {
+        charges.rejected(reason, latencyNanos);
+    }
+
+    @Override
+    public void paymentCompleted(long latencyNanos) {
+        payments.completed(latencyNanos);
+    }
+
+    @Override
+    public void paymentRejected(RejectReason reason, long latencyNanos) {
+        payments.rejected(reason, latencyNanos);
+    }
+
+    @Override
+    public void lookup(long latencyNanos) {
+        lookups.record(latencyNanos);
+    }
+
+    @Override
+    public void save(long latencyNanos) {
+        saves.record(latencyNanos);
+    }
+
+    @Override
+    public void lockWait(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        Map<String, HistogramSnapshot> latencies = new LinkedHashMap<>();
+        for (Operation operation : new Operation[]{transfers, charges, payments}) {
+            operation.addTo(counters, latencies);
+        }
+        latencies.put("dao.lookup", lookups.snapshot());
+        latencies.put("dao.save", saves.snapshot());
+        latencies.put("lock.wait", lockWaits.snapshot());
+        return new MetricsSnapshot(counters, latencies);
+    }
+
+    public void export(MetricsExporter exporter) {
+        exporter.export(snapshot());
+    }
+
+    private static final class Operation {
+        private final String name;
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder[] rejected = new LongAdder[RejectReason.values().length];
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Operation(String name) {
+            this.name = name;
+            for (int i = 0; i < rejected.length; i++) {
+                rejected[i] = new LongAdder();
+            }
+        }
+
+        void completed(long latencyNanos) {
+            completed.increment();
+            latency.record(latencyNanos);
+        }
+
+        void rejected(RejectReason reason, long latencyNanos) {
+            rejected[reason.ordinal()].increment();
+            latency.record(latencyNanos);
+        }
+
+        void addTo(Map<String, Long> counters, Map<String, HistogramSnapshot> latencies) {
+            long completedCount = completed.sum();
+            long attempted = completedCount;
+            counters.put(name + ".completed", completedCount);
+            for (RejectReason reason : RejectReason.values()) {
+                long count = rejected[reason.ordinal()].sum();
+                counters.put(name + ".rejected." + reason, count);
+                attempted += count;
+            }
+            counters.put(name + ".attempted", attempted);
+            latencies.put(name, latency.snapshot());
+        }
+    }
+}
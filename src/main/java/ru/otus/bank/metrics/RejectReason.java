@@ -0,0 +1,8 @@
+package ru.otus.bank.metrics;
+
+public enum RejectReason {
+    INVALID_AMOUNT,
+    INSUFFICIENT_FUNDS,
+    ACCOUNT_NOT_FOUND,
+    FAILED
+}
@@ -1,10 +1,14 @@
 package ru.otus.bank.service;
 
+import ru.otus.bank.dao.AccountPage;
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+import ru.otus.bank.metrics.RejectReason;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface AccountService {
 
@@ -12,9 +16,56 @@ public interface AccountService {
 
     List<Account> getAccounts();
 
+    /**
+     * All accounts as a lazy stream, for jobs that walk the whole book without copying it.
+     */
+    Stream<Account> streamAccounts();
+
+    /**
+     * Accounts in id order, {@code limit} at a time, see {@link ru.otus.bank.dao.AccountDao#findPage(long, int)}.
+     */
+    AccountPage getAccountsPage(long afterId, int limit);
+
     List<Account> getAccounts(Agreement agreement);
 
+    List<Account> getAccounts(Agreement agreement, Integer type);
+
     boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum);
 
+    boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum, BigDecimal commission);
+
     boolean charge(Long accountId, BigDecimal chargeAmount);
+
+    /**
+     * Credits the account, e.g. with collected fees. Returns false if the amount isn't positive.
+     */
+    boolean deposit(Long accountId, BigDecimal amount);
+
+    /**
+     * Same as {@link #makeTransfer(Long, Long, BigDecimal, BigDecimal)} with amounts in minor units, see
+     * {@link Money}.
+     */
+    boolean makeTransferMinor(long sourceAccountId, long destinationAccountId, long sum, long commission);
+
+    /**
+     * Same as {@link #makeTransferMinor(long, long, long, long)}, but returns null if the transfer is done,
+     * otherwise why it was refused.
+     */
+    default RejectReason tryTransferMinor(long sourceAccountId, long destinationAccountId, long sum, long commission) {
+        if (sum <= 0 || commission < 0) {
+            return RejectReason.INVALID_AMOUNT;
+        }
+        return makeTransferMinor(sourceAccountId, destinationAccountId, sum, commission)
+                ? null : RejectReason.INSUFFICIENT_FUNDS;
+    }
+
+    /**
+     * Same as {@link #charge(Long, BigDecimal)} with the amount in minor units, see {@link Money}.
+     */
+    boolean chargeMinor(long accountId, long chargeAmount);
+
+    /**
+     * Same as {@link #deposit(Long, BigDecimal)} with the amount in minor units, see {@link Money}.
+     */
+    boolean depositMinor(long accountId, long amount);
 }
@@ -0,0 +1,18 @@
+package ru.otus.bank.service;
+
+import java.util.Map;
+
+public interface AggregationService {
+
+    BalanceSummary summarize();
+
+    /**
+     * Summaries keyed by agreement id; accounts without an agreement are left out.
+     */
+    Map<Long, BalanceSummary> summarizeByAgreement();
+
+    /**
+     * Summaries keyed by account type; accounts without a type are left out.
+     */
+    Map<Integer, BalanceSummary> summarizeByType();
+}
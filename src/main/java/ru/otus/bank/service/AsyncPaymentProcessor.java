@@ -0,0 +1,21 @@
+package ru.otus.bank.service;
+
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link PaymentProcessor}: transfers run in the background and their results are
+ * delivered through futures.
+ */
+public interface AsyncPaymentProcessor {
+
+    CompletableFuture<Boolean> makeTransfer(Agreement source, Agreement destination,
+                                            int sourceType, int destinationType, BigDecimal amount);
+
+    CompletableFuture<Boolean> makeTransferWithComission(Agreement source, Agreement destination,
+                                                         int sourceType, int destinationType,
+                                                         BigDecimal amount,
+                                                         BigDecimal comissionPercent);
+}
@@ -0,0 +1,24 @@
+package ru.otus.bank.service;
+
+import ru.otus.bank.entity.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Number of accounts and their total, smallest and largest balance, in minor units. Min and max are zero when
+ * there are no accounts.
+ */
+public record BalanceSummary(long count, long totalMinor, long minMinor, long maxMinor) {
+
+    public BigDecimal total() {
+        return Money.toBigDecimal(totalMinor);
+    }
+
+    public BigDecimal min() {
+        return Money.toBigDecimal(minMinor);
+    }
+
+    public BigDecimal max() {
+        return Money.toBigDecimal(maxMinor);
+    }
+}
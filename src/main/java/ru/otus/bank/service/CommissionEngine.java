@@ -0,0 +1,38 @@
+package ru.otus.bank.service;
+
+import ru.otus.bank.metrics.RejectReason;
+
+import java.math.BigDecimal;
+
+public interface CommissionEngine {
+
+    /**
+     * Commission in minor units for an amount in minor units at {@code rate} (e.g. {@code 0.01} for one
+     * percent), rounded half to even.
+     */
+    long commission(long amount, BigDecimal rate);
+
+    /**
+     * Transfers {@code amount} minor units, debiting the commission from the source together with the sum and
+     * collecting it as revenue. Returns false if the transfer is refused.
+     */
+    default boolean transfer(long sourceAccountId, long destinationAccountId, long amount, BigDecimal rate) {
+        return tryTransfer(sourceAccountId, destinationAccountId, amount, rate) == null;
+    }
+
+    /**
+     * Same as {@link #transfer(long, long, long, BigDecimal)}, but returns null if the transfer is done,
+     * otherwise why it was refused.
+     */
+    RejectReason tryTransfer(long sourceAccountId, long destinationAccountId, long amount, BigDecimal rate);
+
+    /**
+     * Revenue collected but not yet credited to the fee account.
+     */
+    long pendingRevenue();
+
+    /**
+     * Credits all collected revenue to the fee account.
+     */
+    void flush();
+}
@@ -3,6 +3,7 @@ package ru.otus.bank.service;
 import ru.otus.bank.entity.Agreement;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 
 public interface PaymentProcessor {
@@ -13,5 +14,7 @@ public interface PaymentProcessor {
                                       int sourceType, int destinationType,
                                       BigDecimal amount,
                                       BigDecimal comissionPercent);
+
+    List<TransferResult> makeTransfers(List<TransferRequest> requests);
 }
 
@@ -0,0 +1,8 @@
+package ru.otus.bank.service;
+
+public enum TransferResult {
+    COMPLETED,
+    REJECTED,
+    ACCOUNT_NOT_FOUND,
+    FAILED
+}
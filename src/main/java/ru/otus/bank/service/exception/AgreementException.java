@@ -0,0 +1,7 @@
+package ru.otus.bank.service.exception;
+
+public class AgreementException extends RuntimeException {
+    public AgreementException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.metrics.BankMetrics;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by all accounts: an account id is mapped to one stripe. Pairs of accounts are
+ * always locked in stripe order, so two transfers between the same accounts in opposite directions can't deadlock.
+ * Waits for a lock are reported to {@link BankMetrics#lockWait(long)}; a lock taken without waiting costs no
+ * clock read.
+ */
+class AccountLocks {
+
+    static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] stripes;
+
+    private final int mask;
+
+    private final BankMetrics metrics;
+
+    AccountLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    AccountLocks(int stripeCount) {
+        this(stripeCount, BankMetrics.NOOP);
+    }
+
+    AccountLocks(int stripeCount, BankMetrics metrics) {
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a positive power of two: " + stripeCount);
+        }
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = stripeCount - 1;
+        this.metrics = metrics;
+    }
+
+    void lock(long accountId) {
+        lock(stripes[stripe(accountId)]);
+    }
+
+    void unlock(long accountId) {
+        stripes[stripe(accountId)].unlock();
+    }
+
+    void lock(long firstAccountId, long secondAccountId) {
+        int first = stripe(firstAccountId);
+        int second = stripe(secondAccountId);
+        if (first == second) {
+            lock(stripes[first]);
+            return;
+        }
+        lock(stripes[Math.min(first, second)]);
+        lock(stripes[Math.max(first, second)]);
+    }
+
+    void unlock(long firstAccountId, long secondAccountId) {
+        int first = stripe(firstAccountId);
+        int second = stripe(secondAccountId);
+        if (first == second) {
+            stripes[first].unlock();
+            return;
+        }
+        stripes[Math.max(first, second)].unlock();
+        stripes[Math.min(first, second)].unlock();
+    }
+
+    private void lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            metrics.lockWait(0);
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        metrics.lockWait(System.nanoTime() - start);
+    }
+
+    private int stripe(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -1,21 +1,64 @@
 package ru.otus.bank.service.impl;
 
 import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.dao.AccountUnitOfWork;
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+import ru.otus.bank.metrics.BankMetrics;
+import ru.otus.bank.metrics.RejectReason;
 import ru.otus.bank.service.AccountService;
 import ru.otus.bank.service.exception.AccountException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class AccountServiceImpl implements AccountService {
+/**
+ * Locking {@link AccountService}. Accounts that take part in most transfers, such as the bank's own account,
+ * can be marked hot with {@link #markHot(long, int)}: their balance is then kept in a {@link SplitBalance} and
+ * changed without locking the account. The stored account is brought up to date by {@link #syncHotAccounts()},
+ * every period given to {@link #scheduleHotSync(Duration)} and on {@link #close()}; reads return copies carrying
+ * the current hot balance. Until a sync, hot changes live only in memory, so hot accounts are refused over
+ * {@link AccountDao#isDurable() durable} storage, whose callers expect a completed transfer to survive a crash.
+ * <p>
+ * Balance changes are committed under the account locks, and {@link AccountDao#awaitDurable()} is called only
+ * after the locks are released.
+ */
+public class AccountServiceImpl implements AccountService, AutoCloseable {
 
     private AccountDao accountDao;
 
+    private final BankMetrics metrics;
+
+    private final AccountLocks accountLocks;
+
+    private final ThreadLocal<AccountUnitOfWork> unitsOfWork = new ThreadLocal<>();
+
+    private final Map<Long, SplitBalance> hotBalances = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService hotSync;
+
     public AccountServiceImpl(AccountDao accountDao) {
+        this(accountDao, null);
+    }
+
+    /**
+     * @param metrics receives transfer and charge outcomes, latencies and lock waits; null records nothing
+     */
+    public AccountServiceImpl(AccountDao accountDao, BankMetrics metrics) {
         this.accountDao = accountDao;
+        this.metrics = metrics == null ? BankMetrics.NOOP : metrics;
+        this.accountLocks = new AccountLocks(AccountLocks.DEFAULT_STRIPES, this.metrics);
     }
 
     @Override
@@ -24,31 +67,246 @@ public class AccountServiceImpl implements AccountService {
         account.setAgreementId(agreement.getId());
         account.setNumber(accountNumber);
         account.setType(type);
+        if (!Money.isRepresentable(amount)) {
+            throw new AccountException("Invalid amount " + amount);
+        }
         account.setAmount(amount);
 
         return accountDao.save(account);
     }
 
+    /**
+     * Spreads the account's balance over {@code cells} cells (a power of two). The balance is then only changed
+     * through this service. Changes that were waiting for the account lock while it was marked are applied to
+     * the cells.
+     *
+     * @throws IllegalStateException if the storage is durable
+     */
+    public void markHot(long accountId, int cells) {
+        if (accountDao.isDurable()) {
+            throw new IllegalStateException("Hot accounts would lose changes on a crash of durable storage");
+        }
+        Account account = findAccount(accountId, "No account");
+
+        accountLocks.lock(accountId);
+        try {
+            hotBalances.computeIfAbsent(accountId, id -> new SplitBalance(account.getMinorAmount(), cells));
+        } finally {
+            accountLocks.unlock(accountId);
+        }
+    }
+
+    /**
+     * Saves the current balance of every hot account, each in its own batch.
+     */
+    public void syncHotAccounts() {
+        boolean saved = false;
+        for (Map.Entry<Long, SplitBalance> hot : hotBalances.entrySet()) {
+            long accountId = hot.getKey();
+            Account account = accountDao.findByIdOrNull(accountId);
+            if (account == null) {
+                continue;
+            }
+            accountLocks.lock(accountId);
+            try {
+                long change = hot.getValue().snapshot() - account.getMinorAmount();
+                if (change != 0) {
+                    AccountUnitOfWork unitOfWork = unitOfWork();
+                    unitOfWork.credit(account, change);
+                    unitOfWork.commit();
+                    saved = true;
+                }
+            } finally {
+                accountLocks.unlock(accountId);
+            }
+        }
+        if (saved) {
+            accountDao.awaitDurable();
+        }
+    }
+
+    /**
+     * Runs {@link #syncHotAccounts()} every {@code period} until the service is closed.
+     */
+    public synchronized void scheduleHotSync(Duration period) {
+        if (hotSync != null) {
+            throw new IllegalStateException("Hot account sync is already scheduled");
+        }
+        hotSync = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "hot-account-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = period.toNanos();
+        hotSync.scheduleWithFixedDelay(this::syncHotAccountsQuietly, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the scheduled sync and saves the hot balances once more.
+     */
+    @Override
+    public synchronized void close() {
+        if (hotSync != null) {
+            hotSync.shutdown();
+            try {
+                hotSync.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        syncHotAccounts();
+    }
+
+    private void syncHotAccountsQuietly() {
+        try {
+            syncHotAccounts();
+        } catch (RuntimeException e) {
+            // the cells keep the balance, the next run saves it
+        }
+    }
+
     @Override
     public List<Account> getAccounts() {
         return iterableToList(accountDao.findAll());
     }
 
-    private <T> List<T> iterableToList(Iterable<T> src) {
-        ArrayList<T> result = new ArrayList<>();
-        src.forEach(result::add);
+    @Override
+    public Stream<Account> streamAccounts() {
+        return hotBalances.isEmpty() ? accountDao.streamAll() : accountDao.streamAll().map(this::current);
+    }
+
+    @Override
+    public AccountPage getAccountsPage(long afterId, int limit) {
+        AccountPage page = accountDao.findPage(afterId, limit);
+        if (hotBalances.isEmpty()) {
+            return page;
+        }
+        return new AccountPage(page.accounts().stream().map(this::current).collect(Collectors.toList()),
+                page.nextAfterId());
+    }
+
+    private List<Account> iterableToList(Iterable<Account> src) {
+        ArrayList<Account> result = new ArrayList<>();
+        if (hotBalances.isEmpty()) {
+            src.forEach(result::add);
+        } else {
+            src.forEach(account -> result.add(current(account)));
+        }
         return result;
     }
 
+    /**
+     * For a hot account, a copy with the balance of its cells; the stored account is only changed by a sync.
+     */
+    private Account current(Account account) {
+        SplitBalance balance = hotBalances.get(account.getId());
+        if (balance == null) {
+            return account;
+        }
+        Account copy = new Account();
+        copy.setId(account.getId());
+        copy.setAgreementId(account.getAgreementId());
+        copy.setNumber(account.getNumber());
+        copy.setType(account.getType());
+        copy.setMinorAmount(balance.sum());
+        return copy;
+    }
+
     @Override
     public boolean charge(Long accountId, BigDecimal chargeAmount) {
-        Account account= accountDao.findById(accountId)
-                .orElseThrow(() -> new AccountException("No source account"));
-        if (account.getAmount().compareTo(chargeAmount)<0){
+        if (!Money.isRepresentable(chargeAmount)) {
+            metrics.chargeRejected(RejectReason.INVALID_AMOUNT, 0);
+            return false;
+        }
+        return chargeMinor(accountId, Money.toMinor(chargeAmount));
+    }
+
+    @Override
+    public boolean chargeMinor(long accountId, long chargeAmount) {
+        long start = System.nanoTime();
+        try {
+            RejectReason rejected = charge(accountId, chargeAmount);
+            if (rejected == null) {
+                accountDao.awaitDurable();
+                metrics.chargeCompleted(System.nanoTime() - start);
+                return true;
+            }
+            metrics.chargeRejected(rejected, System.nanoTime() - start);
+            return false;
+        } catch (AccountException e) {
+            metrics.chargeRejected(RejectReason.ACCOUNT_NOT_FOUND, System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.chargeRejected(RejectReason.FAILED, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns null if the charge is done, otherwise why it was refused.
+     */
+    private RejectReason charge(long accountId, long chargeAmount) {
+        Account account = findAccount(accountId, "No source account");
+
+        SplitBalance hotBalance = hotBalance(accountId);
+        if (hotBalance == null) {
+            accountLocks.lock(accountId);
+            try {
+                hotBalance = hotBalance(accountId);
+                if (hotBalance == null) {
+                    if (account.getMinorAmount() < chargeAmount) {
+                        return RejectReason.INSUFFICIENT_FUNDS;
+                    }
+                    AccountUnitOfWork unitOfWork = unitOfWork();
+                    unitOfWork.debit(account, chargeAmount);
+                    unitOfWork.commit();
+                    return null;
+                }
+            } finally {
+                accountLocks.unlock(accountId);
+            }
+        }
+        if (chargeAmount < 0) {
+            hotBalance.credit(Math.negateExact(chargeAmount));
+            return null;
+        }
+        return hotBalance.tryDebit(chargeAmount) ? null : RejectReason.INSUFFICIENT_FUNDS;
+    }
+
+    @Override
+    public boolean deposit(Long accountId, BigDecimal amount) {
+        if (!Money.isRepresentable(amount)) {
+            return false;
+        }
+        return depositMinor(accountId, Money.toMinor(amount));
+    }
+
+    @Override
+    public boolean depositMinor(long accountId, long amount) {
+        Account account = findAccount(accountId, "No destination account");
+
+        if (amount <= 0) {
             return false;
         }
-        account.setAmount(account.getAmount().subtract(chargeAmount));
-        accountDao.save(account);
+        SplitBalance hotBalance = hotBalance(accountId);
+        if (hotBalance == null) {
+            accountLocks.lock(accountId);
+            try {
+                hotBalance = hotBalance(accountId);
+                if (hotBalance == null) {
+                    AccountUnitOfWork unitOfWork = unitOfWork();
+                    unitOfWork.credit(account, amount);
+                    unitOfWork.commit();
+                }
+            } finally {
+                accountLocks.unlock(accountId);
+            }
+        }
+        if (hotBalance != null) {
+            hotBalance.credit(amount);
+            return true;
+        }
+        accountDao.awaitDurable();
         return true;
     }
 
@@ -56,27 +314,166 @@ public class AccountServiceImpl implements AccountService {
         return iterableToList(accountDao.findByAgreementId(agreement.getId()));
     }
 
-    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
-        Account sourceAccount = accountDao.findById(sourceAccountId)
-                .orElseThrow(() -> new AccountException("No source account"));
-        Account destinationAccount = accountDao.findById(destinationAccountId)
-                .orElseThrow(() -> new AccountException("No destination account"));
+    @Override
+    public List<Account> getAccounts(Agreement agreement, Integer type) {
+        return iterableToList(accountDao.findByAgreementIdAndType(agreement.getId(), type));
+    }
 
-        sourceAccount.setAmount(sourceAccount.getAmount().subtract(sum));
-        destinationAccount.setAmount(destinationAccount.getAmount().add(sum));
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        return makeTransfer(sourceAccountId, destinationAccountId, sum, BigDecimal.ZERO);
+    }
 
-        if (sourceAccount.getAmount().compareTo(sum) < 0) {
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum, BigDecimal commission) {
+        if (!Money.isRepresentable(sum) || !Money.isRepresentable(commission)) {
+            metrics.transferRejected(RejectReason.INVALID_AMOUNT, 0);
             return false;
         }
+        return makeTransferMinor(sourceAccountId, destinationAccountId, Money.toMinor(sum), Money.toMinor(commission));
+    }
 
-        if (sum.compareTo(BigDecimal.ZERO) <= 0) {
-            return false;
+    @Override
+    public boolean makeTransferMinor(long sourceAccountId, long destinationAccountId, long sum, long commission) {
+        return tryTransferMinor(sourceAccountId, destinationAccountId, sum, commission) == null;
+    }
+
+    @Override
+    public RejectReason tryTransferMinor(long sourceAccountId, long destinationAccountId, long sum, long commission) {
+        long start = System.nanoTime();
+        try {
+            RejectReason rejected = transfer(sourceAccountId, destinationAccountId, sum, commission);
+            if (rejected == null) {
+                accountDao.awaitDurable();
+                metrics.transferCompleted(System.nanoTime() - start);
+                return null;
+            }
+            metrics.transferRejected(rejected, System.nanoTime() - start);
+            return rejected;
+        } catch (AccountException e) {
+            metrics.transferRejected(RejectReason.ACCOUNT_NOT_FOUND, System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.transferRejected(RejectReason.FAILED, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns null if the transfer is done, otherwise why it was refused.
+     */
+    private RejectReason transfer(long sourceAccountId, long destinationAccountId, long sum, long commission) {
+        Account sourceAccount = findAccount(sourceAccountId, "No source account");
+        Account destinationAccount = findAccount(destinationAccountId, "No destination account");
+
+        if (sum <= 0 || commission < 0) {
+            return RejectReason.INVALID_AMOUNT;
         }
 
-        accountDao.save(sourceAccount);
-        accountDao.save(destinationAccount);
+        SplitBalance hotSource = hotBalance(sourceAccountId);
+        SplitBalance hotDestination = hotBalance(destinationAccountId);
+        if (hotSource == null && hotDestination == null) {
+            accountLocks.lock(sourceAccountId, destinationAccountId);
+            try {
+                hotSource = hotBalance(sourceAccountId);
+                hotDestination = hotBalance(destinationAccountId);
+                if (hotSource == null && hotDestination == null) {
+                    if (sourceAccount.getMinorAmount() < Money.add(sum, commission)) {
+                        return RejectReason.INSUFFICIENT_FUNDS;
+                    }
 
+                    AccountUnitOfWork unitOfWork = unitOfWork();
+                    unitOfWork.debit(sourceAccount, commission);
+                    unitOfWork.debit(sourceAccount, sum);
+                    unitOfWork.credit(destinationAccount, sum);
+                    unitOfWork.commit();
+
+                    return null;
+                }
+            } finally {
+                accountLocks.unlock(sourceAccountId, destinationAccountId);
+            }
+        }
+        return makeHotTransfer(sourceAccount, hotSource, destinationAccount, hotDestination, sum, commission)
+                ? null : RejectReason.INSUFFICIENT_FUNDS;
+    }
+
+    /**
+     * Transfer with at least one hot side. The hot debit is taken first, so a refused debit changes nothing; a
+     * locked debit is committed before the hot credit. If the locked credit can't be saved, the hot debit is
+     * refunded. A side found hot once its lock is taken goes through its cells.
+     */
+    private boolean makeHotTransfer(Account sourceAccount, SplitBalance hotSource,
+                                    Account destinationAccount, SplitBalance hotDestination,
+                                    long sum, long commission) {
+        long debit = Money.add(sum, commission);
+        if (hotSource == null) {
+            long sourceAccountId = sourceAccount.getId();
+            accountLocks.lock(sourceAccountId);
+            try {
+                hotSource = hotBalance(sourceAccountId);
+                if (hotSource == null) {
+                    if (sourceAccount.getMinorAmount() < debit) {
+                        return false;
+                    }
+                    AccountUnitOfWork unitOfWork = unitOfWork();
+                    unitOfWork.debit(sourceAccount, debit);
+                    unitOfWork.commit();
+                }
+            } finally {
+                accountLocks.unlock(sourceAccountId);
+            }
+        }
+        if (hotSource != null && !hotSource.tryDebit(debit)) {
+            return false;
+        }
+
+        if (hotDestination == null) {
+            long destinationAccountId = destinationAccount.getId();
+            accountLocks.lock(destinationAccountId);
+            try {
+                hotDestination = hotBalance(destinationAccountId);
+                if (hotDestination == null) {
+                    AccountUnitOfWork unitOfWork = unitOfWork();
+                    unitOfWork.credit(destinationAccount, sum);
+                    unitOfWork.commit();
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                hotSource.credit(debit);
+                throw e;
+            } finally {
+                accountLocks.unlock(destinationAccountId);
+            }
+        }
+        hotDestination.credit(sum);
         return true;
     }
 
+    /**
+     * Lookup for the balance-changing paths: one probe, no {@code Optional} and no boxed id.
+     */
+    private Account findAccount(long accountId, String missingMessage) {
+        Account account = accountDao.findByIdOrNull(accountId);
+        if (account == null) {
+            throw new AccountException(missingMessage);
+        }
+        return account;
+    }
+
+    /**
+     * Skips the map, and with it boxing the id, while no account is hot.
+     */
+    private SplitBalance hotBalance(long accountId) {
+        return hotBalances.isEmpty() ? null : hotBalances.get(accountId);
+    }
+
+    private AccountUnitOfWork unitOfWork() {
+        AccountUnitOfWork unitOfWork = unitsOfWork.get();
+        if (unitOfWork == null) {
+            unitOfWork = new AccountUnitOfWork(accountDao);
+            unitsOfWork.set(unitOfWork);
+        }
+        return unitOfWork;
+    }
+
 }
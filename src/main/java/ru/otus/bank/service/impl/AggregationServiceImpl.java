@@ -0,0 +1,87 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.service.AggregationService;
+import ru.otus.bank.service.BalanceSummary;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates balances with a parallel stream over {@link AccountDao#streamAll()}, run in the given fork/join
+ * pool. Each worker accumulates primitive sums for its part of the store and the parts are merged at the end,
+ * so no {@link java.math.BigDecimal} or account list is created along the way. Balances changed while the
+ * aggregation runs may or may not be counted.
+ */
+public class AggregationServiceImpl implements AggregationService {
+
+    private final AccountDao accountDao;
+
+    private final ForkJoinPool pool;
+
+    public AggregationServiceImpl(AccountDao accountDao) {
+        this(accountDao, ForkJoinPool.commonPool());
+    }
+
+    public AggregationServiceImpl(AccountDao accountDao, ForkJoinPool pool) {
+        this.accountDao = accountDao;
+        this.pool = pool;
+    }
+
+    @Override
+    public BalanceSummary summarize() {
+        return pool.submit(() -> accountDao.streamAll().parallel().collect(summarizing())).join();
+    }
+
+    @Override
+    public Map<Long, BalanceSummary> summarizeByAgreement() {
+        return groupBy(Account::getAgreementId);
+    }
+
+    @Override
+    public Map<Integer, BalanceSummary> summarizeByType() {
+        return groupBy(Account::getType);
+    }
+
+    private <K> Map<K, BalanceSummary> groupBy(Function<Account, K> key) {
+        return pool.submit(() -> accountDao.streamAll().parallel()
+                .filter(account -> key.apply(account) != null)
+                .collect(Collectors.groupingByConcurrent(key, summarizing()))).join();
+    }
+
+    private static Collector<Account, Accumulator, BalanceSummary> summarizing() {
+        return Collector.of(Accumulator::new, Accumulator::add, Accumulator::combine, Accumulator::toSummary,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    private static final class Accumulator {
+        long count;
+        long total;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        void add(Account account) {
+            long amount = account.getMinorAmount();
+            count++;
+            total = Math.addExact(total, amount);
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+        }
+
+        Accumulator combine(Accumulator other) {
+            count += other.count;
+            total = Math.addExact(total, other.total);
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            return this;
+        }
+
+        BalanceSummary toSummary() {
+            return count == 0 ? new BalanceSummary(0, 0, 0, 0) : new BalanceSummary(count, total, min, max);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AsyncPaymentProcessor;
+import ru.otus.bank.service.PaymentProcessor;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs transfers of a {@link PaymentProcessor} on a thread per task, virtual where the runtime has them.
+ * <p>
+ * At most {@code maxInFlight} transfers run at once. Submitting never blocks the caller: beyond that limit the
+ * returned future is already failed with {@link RejectedExecutionException}. Result futures fail with a
+ * {@link java.util.concurrent.TimeoutException} if the transfer takes longer than {@code timeout}. A timed-out
+ * transfer is not interrupted and may still complete, and it keeps its slot until it does.
+ */
+public class AsyncPaymentProcessorImpl implements AsyncPaymentProcessor, AutoCloseable {
+
+    private final PaymentProcessor paymentProcessor;
+
+    private final ExecutorService executor;
+
+    private final Semaphore inFlight;
+
+    private final long timeoutNanos;
+
+    public AsyncPaymentProcessorImpl(PaymentProcessor paymentProcessor, int maxInFlight, Duration timeout) {
+        this(paymentProcessor, maxInFlight, timeout, newThreadPerTaskExecutor());
+    }
+
+    public AsyncPaymentProcessorImpl(PaymentProcessor paymentProcessor, int maxInFlight, Duration timeout,
+                                     ExecutorService executor) {
+        this.paymentProcessor = paymentProcessor;
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransfer(Agreement source, Agreement destination,
+                                                   int sourceType, int destinationType, BigDecimal amount) {
+        return submit(() -> paymentProcessor.makeTransfer(source, destination, sourceType, destinationType, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransferWithComission(Agreement source, Agreement destination,
+                                                                int sourceType, int destinationType,
+                                                                BigDecimal amount,
+                                                                BigDecimal comissionPercent) {
+        return submit(() -> paymentProcessor.makeTransferWithComission(source, destination,
+                sourceType, destinationType, amount, comissionPercent));
+    }
+
+    /**
+     * Stops accepting transfers; the ones already submitted run to completion.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Boolean> submit(Supplier<Boolean> transfer) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many transfers in flight"));
+        }
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(transfer.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            result.completeExceptionally(e);
+        }
+        return result.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} when the runtime supports virtual threads, otherwise
+     * an unbounded pool of daemon platform threads; the in-flight limit bounds its size.
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "payment-processor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
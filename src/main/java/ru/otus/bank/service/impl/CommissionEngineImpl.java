@@ -0,0 +1,160 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Money;
+import ru.otus.bank.metrics.RejectReason;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.CommissionEngine;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects commissions into a fee account without making every transfer write to it. The commission is debited
+ * from the source with the transfer; the revenue is added to a buffer of the calling thread and credited to the
+ * fee account once the buffer reaches {@code flushThreshold}, and for all threads every {@code flushInterval}
+ * and on {@link #close()}. Until then it is reported by {@link #pendingRevenue()}. A transfer that has been
+ * applied is never failed by crediting the fee account: if that fails, the revenue stays pending for the next
+ * flush.
+ */
+public class CommissionEngineImpl implements CommissionEngine, AutoCloseable {
+
+    private final AccountService accountService;
+
+    private final long feeAccountId;
+
+    private final long flushThreshold;
+
+    private final Queue<Accrual> accruals = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Accrual> localAccrual = ThreadLocal.withInitial(this::register);
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param flushThreshold revenue in minor units a thread collects before crediting it
+     */
+    public CommissionEngineImpl(AccountService accountService, long feeAccountId, long flushThreshold,
+                                Duration flushInterval) {
+        this.accountService = accountService;
+        this.feeAccountId = feeAccountId;
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "commission-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public long commission(long amount, BigDecimal rate) {
+        return Money.multiply(amount, rate);
+    }
+
+    @Override
+    public RejectReason tryTransfer(long sourceAccountId, long destinationAccountId, long amount, BigDecimal rate) {
+        long commission = commission(amount, rate);
+        RejectReason rejected = accountService.tryTransferMinor(sourceAccountId, destinationAccountId, amount,
+                commission);
+        if (rejected != null) {
+            return rejected;
+        }
+        if (commission > 0) {
+            Accrual accrual = localAccrual.get();
+            if (accrual.amount.addAndGet(commission) >= flushThreshold) {
+                drainQuietly(accrual);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long pendingRevenue() {
+        long pending = 0;
+        for (Accrual accrual : accruals) {
+            pending += accrual.amount.get();
+        }
+        return pending;
+    }
+
+    /**
+     * Credits the buffers of all threads. If the fee account can't be credited or refuses the deposit, the
+     * revenue stays pending and the exception is rethrown.
+     */
+    @Override
+    public void flush() {
+        for (Accrual accrual : accruals) {
+            drain(accrual);
+            if (!accrual.owner.isAlive() && accrual.amount.get() == 0) {
+                accruals.remove(accrual);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void drain(Accrual accrual) {
+        long amount = accrual.amount.getAndSet(0);
+        if (amount == 0) {
+            return;
+        }
+        boolean deposited;
+        try {
+            deposited = accountService.depositMinor(feeAccountId, amount);
+        } catch (RuntimeException e) {
+            accrual.amount.addAndGet(amount);
+            throw e;
+        }
+        if (!deposited) {
+            accrual.amount.addAndGet(amount);
+            throw new IllegalStateException("Fee account " + feeAccountId + " refused " + amount + " minor units");
+        }
+    }
+
+    private void drainQuietly(Accrual accrual) {
+        try {
+            drain(accrual);
+        } catch (RuntimeException e) {
+            // the revenue stays pending and is credited by a later flush
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // the revenue stays pending and is credited on the next run
+        }
+    }
+
+    private Accrual register() {
+        Accrual accrual = new Accrual(Thread.currentThread());
+        accruals.add(accrual);
+        return accrual;
+    }
+
+    private static final class Accrual {
+        final AtomicLong amount = new AtomicLong();
+        final Thread owner;
+
+        Accrual(Thread owner) {
+            this.owner = owner;
+        }
+    }
+}
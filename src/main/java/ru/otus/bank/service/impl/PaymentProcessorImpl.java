@@ -2,33 +2,69 @@ package ru.otus.bank.service.impl;
 
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+import ru.otus.bank.metrics.BankMetrics;
+import ru.otus.bank.metrics.RejectReason;
 import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.CommissionEngine;
 import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
 import ru.otus.bank.service.exception.AccountException;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 public class PaymentProcessorImpl implements PaymentProcessor {
     private AccountService accountService;
 
+    private CommissionEngine commissionEngine;
+
+    private BankMetrics metrics;
+
     public PaymentProcessorImpl(AccountService accountService) {
+        this(accountService, null);
+    }
+
+    /**
+     * @param commissionEngine collects the commissions of {@link #makeTransferWithComission}; without one the
+     *                         commission is only debited from the source
+     */
+    public PaymentProcessorImpl(AccountService accountService, CommissionEngine commissionEngine) {
+        this(accountService, commissionEngine, null);
+    }
+
+    /**
+     * @param metrics receives the outcome and latency of every payment; null records nothing
+     */
+    public PaymentProcessorImpl(AccountService accountService, CommissionEngine commissionEngine,
+                                BankMetrics metrics) {
         this.accountService = accountService;
+        this.commissionEngine = commissionEngine;
+        this.metrics = metrics == null ? BankMetrics.NOOP : metrics;
     }
 
     public boolean makeTransfer(Agreement source, Agreement destination, int sourceType,
                                 int destinationType, BigDecimal amount) {
-
-        Account sourceAccount = accountService.getAccounts(source).stream()
-                .filter(account -> account.getType() == sourceType)
-                .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
-
-        Account destinationAccount = accountService.getAccounts(destination).stream()
-                .filter(account -> account.getType() == destinationType)
-                .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
-
-        return accountService.makeTransfer(sourceAccount.getId(), destinationAccount.getId(), amount);
+        long start = System.nanoTime();
+        if (!Money.isRepresentable(amount)) {
+            metrics.paymentRejected(RejectReason.INVALID_AMOUNT, System.nanoTime() - start);
+            return false;
+        }
+        try {
+            return recordPayment(start, transfer(source, destination, sourceType, destinationType, amount));
+        } catch (RuntimeException e) {
+            recordPaymentFailure(start, e);
+            throw e;
+        }
     }
 
     @Override
@@ -36,19 +72,201 @@ public class PaymentProcessorImpl implements PaymentProcessor {
                                              int sourceType, int destinationType,
                                              BigDecimal amount,
                                              BigDecimal comissionPercent) {
+        long start = System.nanoTime();
+        if (!Money.isRepresentable(amount)) {
+            metrics.paymentRejected(RejectReason.INVALID_AMOUNT, System.nanoTime() - start);
+            return false;
+        }
+        try {
+            return recordPayment(start, transferWithCommission(source, destination, sourceType,
+                    destinationType, amount, comissionPercent));
+        } catch (RuntimeException e) {
+            recordPaymentFailure(start, e);
+            throw e;
+        }
+    }
+
+    private boolean recordPayment(long start, RejectReason rejected) {
+        if (rejected == null) {
+            metrics.paymentCompleted(System.nanoTime() - start);
+            return true;
+        }
+        metrics.paymentRejected(rejected, System.nanoTime() - start);
+        return false;
+    }
+
+    private void recordPaymentFailure(long start, RuntimeException e) {
+        metrics.paymentRejected(e instanceof AccountException ? RejectReason.ACCOUNT_NOT_FOUND : RejectReason.FAILED,
+                System.nanoTime() - start);
+    }
+
+    private RejectReason transfer(Agreement source, Agreement destination, int sourceType,
+                                  int destinationType, BigDecimal amount) {
+
+        Account sourceAccount = findAccount(source, sourceType);
+        Account destinationAccount = findAccount(destination, destinationType);
+
+        return accountService.tryTransferMinor(sourceAccount.getId(), destinationAccount.getId(),
+                Money.toMinor(amount), 0);
+    }
 
-        Account sourceAccount = accountService.getAccounts(source).stream()
-                .filter(account -> account.getType() == sourceType)
+    private RejectReason transferWithCommission(Agreement source, Agreement destination,
+                                           int sourceType, int destinationType,
+                                           BigDecimal amount,
+                                           BigDecimal comissionPercent) {
+
+        Account sourceAccount = findAccount(source, sourceType);
+        Account destinationAccount = findAccount(destination, destinationType);
+
+        if (commissionEngine != null) {
+            if (!Money.isRate(comissionPercent)) {
+                return RejectReason.INVALID_AMOUNT;
+            }
+            return commissionEngine.tryTransfer(sourceAccount.getId(), destinationAccount.getId(),
+                    Money.toMinor(amount), comissionPercent);
+        }
+        BigDecimal commission = amount.multiply(comissionPercent).setScale(Money.SCALE, RoundingMode.HALF_EVEN);
+        if (!Money.isRepresentable(commission)) {
+            return RejectReason.INVALID_AMOUNT;
+        }
+        return accountService.tryTransferMinor(sourceAccount.getId(), destinationAccount.getId(),
+                Money.toMinor(amount), Money.toMinor(commission));
+    }
+
+    private Account findAccount(Agreement agreement, int type) {
+        return accountService.getAccounts(agreement, type).stream()
                 .findAny()
                 .orElseThrow(() -> new AccountException("Account not found"));
+    }
 
-        Account destinationAccount = accountService.getAccounts(destination).stream()
-                .filter(account -> account.getType() == destinationType)
+    /**
+     * Resolves every distinct (agreement, type) pair once, then splits the batch into groups of transfers that
+     * share accounts. Groups run in parallel; transfers inside a group run in submission order. Transfers wait
+     * for their changes to be durable, so the groups run on threads of their own rather than on the common
+     * fork-join pool: the calling thread takes the first group, every other group gets a thread of
+     * {@link AsyncPaymentProcessorImpl#newThreadPerTaskExecutor()}. Every transfer is recorded as a payment.
+     */
+    @Override
+    public List<TransferResult> makeTransfers(List<TransferRequest> requests) {
+        TransferResult[] results = new TransferResult[requests.size()];
+        Map<AccountKey, Long> resolvedAccounts = new HashMap<>();
+        long[] sourceIds = new long[requests.size()];
+        long[] destinationIds = new long[requests.size()];
+        AccountGroups groups = new AccountGroups();
+
+        for (int i = 0; i < requests.size(); i++) {
+            long start = System.nanoTime();
+            TransferRequest request = requests.get(i);
+            Long sourceId = resolve(resolvedAccounts, request.source(), request.sourceType());
+            Long destinationId = resolve(resolvedAccounts, request.destination(), request.destinationType());
+            if (sourceId == null || destinationId == null) {
+                metrics.paymentRejected(RejectReason.ACCOUNT_NOT_FOUND, System.nanoTime() - start);
+                results[i] = TransferResult.ACCOUNT_NOT_FOUND;
+                continue;
+            }
+            sourceIds[i] = sourceId;
+            destinationIds[i] = destinationId;
+            groups.union(sourceId, destinationId);
+        }
+
+        Map<Long, List<Integer>> transfersByGroup = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] == null) {
+                transfersByGroup.computeIfAbsent(groups.find(sourceIds[i]), group -> new ArrayList<>()).add(i);
+            }
+        }
+
+        List<List<Integer>> transferGroups = new ArrayList<>(transfersByGroup.values());
+        if (transferGroups.size() > 1) {
+            ExecutorService executor = AsyncPaymentProcessorImpl.newThreadPerTaskExecutor();
+            try {
+                CompletableFuture<?>[] others = new CompletableFuture<?>[transferGroups.size() - 1];
+                for (int group = 1; group < transferGroups.size(); group++) {
+                    List<Integer> transfers = transferGroups.get(group);
+                    others[group - 1] = CompletableFuture.runAsync(
+                            () -> transfer(transfers, requests, sourceIds, destinationIds, results), executor);
+                }
+                transfer(transferGroups.get(0), requests, sourceIds, destinationIds, results);
+                CompletableFuture.allOf(others).join();
+            } finally {
+                executor.shutdown();
+            }
+        } else if (!transferGroups.isEmpty()) {
+            transfer(transferGroups.get(0), requests, sourceIds, destinationIds, results);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private void transfer(List<Integer> group, List<TransferRequest> requests, long[] sourceIds,
+                          long[] destinationIds, TransferResult[] results) {
+        for (int i : group) {
+            results[i] = transfer(sourceIds[i], destinationIds[i], requests.get(i).amount());
+        }
+    }
+
+    private Long resolve(Map<AccountKey, Long> resolvedAccounts, Agreement agreement, int type) {
+        AccountKey key = new AccountKey(agreement.getId(), type);
+        if (resolvedAccounts.containsKey(key)) {
+            return resolvedAccounts.get(key);
+        }
+        Long accountId = accountService.getAccounts(agreement, type).stream()
                 .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
+                .map(Account::getId)
+                .orElse(null);
+        resolvedAccounts.put(key, accountId);
+        return accountId;
+    }
+
+    private TransferResult transfer(long sourceAccountId, long destinationAccountId, BigDecimal amount) {
+        long start = System.nanoTime();
+        if (!Money.isRepresentable(amount)) {
+            metrics.paymentRejected(RejectReason.INVALID_AMOUNT, System.nanoTime() - start);
+            return TransferResult.REJECTED;
+        }
+        try {
+            return recordPayment(start, accountService.tryTransferMinor(sourceAccountId, destinationAccountId,
+                    Money.toMinor(amount), 0))
+                    ? TransferResult.COMPLETED
+                    : TransferResult.REJECTED;
+        } catch (AccountException e) {
+            recordPaymentFailure(start, e);
+            return TransferResult.ACCOUNT_NOT_FOUND;
+        } catch (RuntimeException e) {
+            recordPaymentFailure(start, e);
+            return TransferResult.FAILED;
+        }
+    }
+
+    private record AccountKey(Long agreementId, int type) {
+    }
+
+    /**
+     * Union-find over account ids: accounts connected by any transfer of the batch end up in one group.
+     */
+    private static class AccountGroups {
+        private final Map<Long, Long> parents = new HashMap<>();
 
-        accountService.charge(sourceAccount.getId(), amount.multiply(comissionPercent));
+        long find(long accountId) {
+            long root = accountId;
+            Long parent;
+            while ((parent = parents.get(root)) != null) {
+                root = parent;
+            }
+            long current = accountId;
+            while ((parent = parents.get(current)) != null && parent != root) {
+                parents.put(current, root);
+                current = parent;
+            }
+            return root;
+        }
 
-        return accountService.makeTransfer(sourceAccount.getId(), destinationAccount.getId(), amount);
+        void union(long first, long second) {
+            long firstRoot = find(first);
+            long secondRoot = find(second);
+            if (firstRoot != secondRoot) {
+                parents.put(firstRoot, secondRoot);
+            }
+        }
     }
 }
@@ -0,0 +1,415 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.dao.AccountUnitOfWork;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Single-writer {@link AccountService}: accounts are partitioned by id into shards, and the balances of a shard
+ * are changed only by that shard's thread, which takes operations from its own queue. No account locks are
+ * needed; all balance changes must go through this service.
+ * <p>
+ * A transfer inside one shard is applied by one task. A transfer between shards is done in two phases: the
+ * source shard debits the sum and the commission and hands the credit over to the destination shard. If the
+ * credit can't be saved, the source shard refunds the debit. Callers wait for both phases, so the total of all
+ * balances is only off while a transfer is in flight.
+ * <p>
+ * A shard runs the operations queued since its last pass as one batch and calls
+ * {@link AccountDao#awaitDurable()} once after it, before the callers of the batch are answered, so they share
+ * one sync. If a shard thread stops, e.g. on an {@link Error}, the operations it still holds fail.
+ */
+public class ShardedAccountService implements AccountService, AutoCloseable {
+
+    private static final int MAX_BATCH = 256;
+
+    private final AccountDao accountDao;
+
+    private final Shard[] shards;
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public ShardedAccountService(AccountDao accountDao) {
+        this(accountDao, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedAccountService(AccountDao accountDao, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.accountDao = accountDao;
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
+        Account account = new Account();
+        account.setAgreementId(agreement.getId());
+        account.setNumber(accountNumber);
+        account.setType(type);
+        if (!Money.isRepresentable(amount)) {
+            throw new AccountException("Invalid amount " + amount);
+        }
+        account.setAmount(amount);
+
+        return accountDao.save(account);
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return iterableToList(accountDao.findAll());
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return accountDao.streamAll();
+    }
+
+    @Override
+    public AccountPage getAccountsPage(long afterId, int limit) {
+        return accountDao.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        return iterableToList(accountDao.findByAgreementId(agreement.getId()));
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement, Integer type) {
+        return iterableToList(accountDao.findByAgreementIdAndType(agreement.getId(), type));
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        return makeTransfer(sourceAccountId, destinationAccountId, sum, BigDecimal.ZERO);
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum, BigDecimal commission) {
+        if (!Money.isRepresentable(sum) || !Money.isRepresentable(commission)) {
+            return false;
+        }
+        return makeTransferMinor(sourceAccountId, destinationAccountId, Money.toMinor(sum), Money.toMinor(commission));
+    }
+
+    @Override
+    public boolean makeTransferMinor(long sourceAccountId, long destinationAccountId, long sum, long commission) {
+        Account sourceAccount = findAccount(sourceAccountId, "No source account");
+        Account destinationAccount = findAccount(destinationAccountId, "No destination account");
+
+        if (sum <= 0 || commission < 0) {
+            return false;
+        }
+        long debit = Money.add(sum, commission);
+
+        Shard sourceShard = shardOf(sourceAccountId);
+        Shard destinationShard = shardOf(destinationAccountId);
+        CompletableFuture<Boolean> result = start();
+        if (sourceShard == destinationShard) {
+            sourceShard.execute(result, unitOfWork -> {
+                if (sourceAccount.getMinorAmount() < debit) {
+                    return false;
+                }
+                unitOfWork.debit(sourceAccount, commission);
+                unitOfWork.debit(sourceAccount, sum);
+                unitOfWork.credit(destinationAccount, sum);
+                unitOfWork.commit();
+                return true;
+            });
+        } else {
+            sourceShard.submit(result, () -> {
+                try {
+                    if (sourceAccount.getMinorAmount() < debit) {
+                        sourceShard.complete(result, false, null);
+                        return;
+                    }
+                    sourceShard.unitOfWork.debit(sourceAccount, debit);
+                    sourceShard.unitOfWork.commit();
+                } catch (RuntimeException e) {
+                    sourceShard.unitOfWork.rollback();
+                    sourceShard.complete(result, false, e);
+                    return;
+                }
+                destinationShard.submit(result, () -> credit(destinationShard, destinationAccount, sum,
+                        sourceShard, sourceAccount, debit, result));
+            });
+        }
+        return await(result);
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        if (!Money.isRepresentable(chargeAmount)) {
+            return false;
+        }
+        return chargeMinor(accountId, Money.toMinor(chargeAmount));
+    }
+
+    @Override
+    public boolean chargeMinor(long accountId, long chargeAmount) {
+        Account account = findAccount(accountId, "No source account");
+
+        CompletableFuture<Boolean> result = start();
+        shardOf(accountId).execute(result, unitOfWork -> {
+            if (account.getMinorAmount() < chargeAmount) {
+                return false;
+            }
+            unitOfWork.debit(account, chargeAmount);
+            unitOfWork.commit();
+            return true;
+        });
+        return await(result);
+    }
+
+    @Override
+    public boolean deposit(Long accountId, BigDecimal amount) {
+        if (!Money.isRepresentable(amount)) {
+            return false;
+        }
+        return depositMinor(accountId, Money.toMinor(amount));
+    }
+
+    @Override
+    public boolean depositMinor(long accountId, long amount) {
+        Account account = findAccount(accountId, "No destination account");
+
+        if (amount <= 0) {
+            return false;
+        }
+        CompletableFuture<Boolean> result = start();
+        shardOf(accountId).execute(result, unitOfWork -> {
+            unitOfWork.credit(account, amount);
+            unitOfWork.commit();
+            return true;
+        });
+        return await(result);
+    }
+
+    /**
+     * Stops accepting operations, lets the ones in flight finish and stops the shard threads. If the calling
+     * thread is interrupted while waiting, the shards finish in the background.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            for (Shard shard : shards) {
+                shard.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void credit(Shard destinationShard, Account destinationAccount, long sum,
+                        Shard sourceShard, Account sourceAccount, long debit,
+                        CompletableFuture<Boolean> result) {
+        try {
+            destinationShard.unitOfWork.credit(destinationAccount, sum);
+            destinationShard.unitOfWork.commit();
+        } catch (RuntimeException e) {
+            destinationShard.unitOfWork.rollback();
+            sourceShard.submit(result, () -> {
+                try {
+                    sourceShard.unitOfWork.credit(sourceAccount, debit);
+                    sourceShard.unitOfWork.commit();
+                } catch (RuntimeException refundFailure) {
+                    sourceShard.unitOfWork.rollback();
+                    e.addSuppressed(refundFailure);
+                }
+                sourceShard.complete(result, false, e);
+            });
+            return;
+        }
+        destinationShard.complete(result, true, null);
+    }
+
+    private Account findAccount(long accountId, String missingMessage) {
+        Account account = accountDao.findByIdOrNull(accountId);
+        if (account == null) {
+            throw new AccountException(missingMessage);
+        }
+        return account;
+    }
+
+    private CompletableFuture<Boolean> start() {
+        pending.incrementAndGet();
+        if (closed) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Account service is closed");
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        result.whenComplete((completed, failure) -> pending.decrementAndGet());
+        return result;
+    }
+
+    private Shard shardOf(long accountId) {
+        return shards[Math.floorMod(Long.hashCode(accountId * 0x9E3779B97F4A7C15L), shards.length)];
+    }
+
+    private static boolean await(CompletableFuture<Boolean> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> List<T> iterableToList(Iterable<T> src) {
+        ArrayList<T> result = new ArrayList<>();
+        src.forEach(result::add);
+        return result;
+    }
+
+    private record Task(CompletableFuture<Boolean> result, Runnable body) {
+    }
+
+    /**
+     * Outcome of an operation, handed to its caller once the batch is durable.
+     */
+    private record Completion(CompletableFuture<Boolean> result, boolean completed, RuntimeException failure) {
+    }
+
+    /**
+     * Owner of a partition of accounts: a thread running the tasks of its queue in batches, with a unit of work
+     * confined to that thread.
+     */
+    private final class Shard implements Runnable {
+        private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+        private final AccountUnitOfWork unitOfWork = new AccountUnitOfWork(accountDao);
+        private final List<Completion> completions = new ArrayList<>();
+        private final Thread thread;
+        private volatile boolean stopped;
+
+        Shard(int index) {
+            thread = new Thread(this, "account-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Queues a step of the operation answered through {@code result}; fails it if the shard has stopped.
+         */
+        void submit(CompletableFuture<Boolean> result, Runnable body) {
+            queue.add(new Task(result, body));
+            if (stopped) {
+                failQueued(new IllegalStateException(thread.getName() + " has stopped"));
+            }
+        }
+
+        void execute(CompletableFuture<Boolean> result, Predicate<AccountUnitOfWork> task) {
+            submit(result, () -> {
+                try {
+                    complete(result, task.test(unitOfWork), null);
+                } catch (RuntimeException e) {
+                    unitOfWork.rollback();
+                    complete(result, false, e);
+                }
+            });
+        }
+
+        /**
+         * Answers the caller after the current batch. Shard thread only.
+         */
+        void complete(CompletableFuture<Boolean> result, boolean completed, RuntimeException failure) {
+            completions.add(new Completion(result, completed, failure));
+        }
+
+        @Override
+        public void run() {
+            List<Task> batch = new ArrayList<>(MAX_BATCH);
+            Throwable cause = null;
+            try {
+                while (!closed || pending.get() > 0 || !queue.isEmpty()) {
+                    Task first = queue.poll(10, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (Task task : batch) {
+                        task.body().run();
+                    }
+                    batch.clear();
+                    completeBatch();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cause = e;
+            } catch (Throwable e) {
+                cause = e;
+                throw e;
+            } finally {
+                stopped = true;
+                if (cause != null) {
+                    IllegalStateException failure = new IllegalStateException(thread.getName() + " has stopped",
+                            cause);
+                    for (Task task : batch) {
+                        task.result().completeExceptionally(failure);
+                    }
+                    for (Completion completion : completions) {
+                        completion.result().completeExceptionally(failure);
+                    }
+                    failQueued(failure);
+                }
+            }
+        }
+
+        private void completeBatch() {
+            if (completions.isEmpty()) {
+                return;
+            }
+            RuntimeException syncFailure = null;
+            try {
+                accountDao.awaitDurable();
+            } catch (RuntimeException e) {
+                syncFailure = e;
+            }
+            for (Completion completion : completions) {
+                if (completion.failure() != null) {
+                    completion.result().completeExceptionally(completion.failure());
+                } else if (syncFailure != null) {
+                    completion.result().completeExceptionally(syncFailure);
+                } else {
+                    completion.result().complete(completion.completed());
+                }
+            }
+            completions.clear();
+        }
+
+        private void failQueued(RuntimeException failure) {
+            Task task;
+            while ((task = queue.poll()) != null) {
+                task.result().completeExceptionally(failure);
+            }
+        }
+    }
+}
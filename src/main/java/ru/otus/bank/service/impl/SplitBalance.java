@@ -0,0 +1,129 @@
+package ru.otus.bank.service.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Balance of a hot account spread over several cells, in minor units, in the manner of
+ * {@link java.util.concurrent.atomic.LongAdder}: each thread credits its own cell, debits take from the
+ * thread's cell first and borrow from the others, and the balance is the sum of the cells. No cell goes below
+ * zero, so the balance can't be overdrawn; a debit racing with other debits may be refused while they hold
+ * borrowed amounts.
+ * <p>
+ * {@link #sum()} adds up cells that may be changing. {@link #snapshot()} returns the balance at one instant: it
+ * freezes the cells one by one, so changes of frozen cells wait until all of them are summed.
+ */
+final class SplitBalance {
+
+    /**
+     * Longs per cell, so neighbouring cells don't share a cache line.
+     */
+    private static final int STRIDE = 16;
+
+    private static final long FROZEN = Long.MIN_VALUE;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    SplitBalance(long amount, int cellCount) {
+        if (cellCount <= 0 || Integer.bitCount(cellCount) != 1) {
+            throw new IllegalArgumentException("Cell count must be a positive power of two: " + cellCount);
+        }
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative balance: " + amount);
+        }
+        cells = new AtomicLongArray(cellCount * STRIDE);
+        mask = cellCount - 1;
+        cells.set(0, amount);
+    }
+
+    void credit(long sum) {
+        add(homeCell() * STRIDE, sum);
+    }
+
+    boolean tryDebit(long sum) {
+        int home = homeCell();
+        long collected = 0;
+        for (int i = 0; i <= mask && collected < sum; i++) {
+            int cell = (home + i & mask) * STRIDE;
+            for (int attempt = 0; ; attempt++) {
+                long available = cells.get(cell);
+                if (available == FROZEN) {
+                    backOff(attempt);
+                    continue;
+                }
+                if (available <= 0) {
+                    break;
+                }
+                long taken = Math.min(available, sum - collected);
+                if (cells.compareAndSet(cell, available, available - taken)) {
+                    collected += taken;
+                    break;
+                }
+            }
+        }
+        if (collected < sum) {
+            if (collected > 0) {
+                add(home * STRIDE, collected);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += unfrozen(i * STRIDE);
+        }
+        return sum;
+    }
+
+    long snapshot() {
+        long[] frozen = new long[mask + 1];
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            int cell = i * STRIDE;
+            long value = unfrozen(cell);
+            for (int attempt = 0; !cells.compareAndSet(cell, value, FROZEN); attempt++) {
+                backOff(attempt);
+                value = unfrozen(cell);
+            }
+            frozen[i] = value;
+            sum += value;
+        }
+        for (int i = 0; i <= mask; i++) {
+            cells.set(i * STRIDE, frozen[i]);
+        }
+        return sum;
+    }
+
+    private void add(int cell, long sum) {
+        long value = unfrozen(cell);
+        for (int attempt = 0; !cells.compareAndSet(cell, value, value + sum); attempt++) {
+            backOff(attempt);
+            value = unfrozen(cell);
+        }
+    }
+
+    private long unfrozen(int cell) {
+        long value;
+        for (int attempt = 0; (value = cells.get(cell)) == FROZEN; attempt++) {
+            backOff(attempt);
+        }
+        return value;
+    }
+
+    private static void backOff(int attempt) {
+        if (attempt < 100) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private int homeCell() {
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.otus.bank.service.pipeline;
+
+import ru.otus.bank.dao.wal.WriteAheadLog;
+import ru.otus.bank.service.TransferResult;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pipeline stage that journals completed transfers: the transfers of one batch are encoded into a reusable
+ * buffer and appended to the log as one record at the end of the batch. If the append fails, the transfers
+ * stay buffered and go into the record of the next batch.
+ * <p>
+ * Record layout: the number of transfers, then per transfer the correlation id, source and destination
+ * account ids, amount and commission, all as longs.
+ */
+public class JournalingTransferHandler implements TransferHandler {
+
+    private static final int ENTRY_SIZE = Long.BYTES * 5;
+
+    private final WriteAheadLog log;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + ENTRY_SIZE * 64);
+
+    private int count;
+
+    public JournalingTransferHandler(WriteAheadLog log) {
+        this.log = log;
+        buffer.position(Integer.BYTES);
+    }
+
+    public record JournaledTransfer(long correlationId, long sourceAccountId, long destinationAccountId,
+                                    long amount, long commission) {
+    }
+
+    @Override
+    public void onTransfer(TransferSlot slot, long sequence, boolean endOfBatch) {
+        if (slot.getResult() == TransferResult.COMPLETED) {
+            if (buffer.remaining() < ENTRY_SIZE) {
+                buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.capacity() * 2))
+                        .position(buffer.position());
+            }
+            buffer.putLong(slot.getCorrelationId())
+                    .putLong(slot.getSourceAccountId())
+                    .putLong(slot.getDestinationAccountId())
+                    .putLong(slot.getAmount())
+                    .putLong(slot.getCommission());
+            count++;
+        }
+        if (endOfBatch && count > 0) {
+            buffer.putInt(0, count);
+            log.append(buffer.array(), 0, buffer.position());
+            buffer.position(Integer.BYTES);
+            count = 0;
+        }
+    }
+
+    public static List<JournaledTransfer> decode(ByteBuffer record) {
+        int count = record.getInt();
+        List<JournaledTransfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transfers.add(new JournaledTransfer(record.getLong(), record.getLong(), record.getLong(),
+                    record.getLong(), record.getLong()));
+        }
+        return transfers;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.otus.bank.service.pipeline;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi-producer, single-consumer ring of preallocated, reusable entries.
+ * <p>
+ * A producer claims a sequence with {@link #next()} or {@link #tryNext()}, fills {@link #get(long) the entry}
+ * and {@link #publish(long) publishes} it. The consumer reads published entries in sequence order and
+ * {@link #release(long) releases} them, after which producers may reuse their entries. Claiming is a CAS on one
+ * counter; publishing is a release store into a per-entry array, so no locks are taken and nothing is
+ * allocated per entry.
+ */
+public class RingBuffer<E> {
+
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Object[] entries;
+
+    private final long[] published;
+
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private final AtomicLong released = new AtomicLong(-1);
+
+    public RingBuffer(int capacity, Supplier<E> factory) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        entries = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+        }
+        published = new long[capacity];
+        Arrays.fill(published, -1);
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Claims the next sequence, or returns -1 if the ring is full.
+     */
+    public long tryNext() {
+        long current;
+        long next;
+        do {
+            current = claimed.get();
+            next = current + 1;
+            if (next - entries.length > released.get()) {
+                return -1;
+            }
+        } while (!claimed.compareAndSet(current, next));
+        return next;
+    }
+
+    /**
+     * Claims the next sequence, waiting for the consumer while the ring is full.
+     */
+    public long next() {
+        for (int attempt = 0; ; attempt++) {
+            long sequence = tryNext();
+            if (sequence >= 0) {
+                return sequence;
+            }
+            if (attempt < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        PUBLISHED.setRelease(published, (int) sequence & mask, sequence);
+    }
+
+    /**
+     * Highest sequence in {@code [from, limit]} such that it and all sequences before it are published, or
+     * {@code from - 1} if {@code from} isn't published yet.
+     */
+    public long highestPublished(long from, long limit) {
+        long sequence = from;
+        while (sequence <= limit && (long) PUBLISHED.getAcquire(published, (int) sequence & mask) == sequence) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    /**
+     * Highest sequence claimed by producers so far, published or not.
+     */
+    public long claimed() {
+        return claimed.get();
+    }
+
+    /**
+     * Hands the entries up to and including {@code sequence} back to producers.
+     */
+    public void release(long sequence) {
+        released.set(sequence);
+    }
+}
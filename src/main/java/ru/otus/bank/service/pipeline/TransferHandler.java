@@ -0,0 +1,10 @@
+package ru.otus.bank.service.pipeline;
+
+/**
+ * Stage of a {@link TransferPipeline}. A stage sees every transfer of a batch before the next stage starts, and
+ * {@code endOfBatch} marks the last one, so work can be batched up to that point.
+ */
+public interface TransferHandler {
+
+    void onTransfer(TransferSlot slot, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,235 @@
+package ru.otus.bank.service.pipeline;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.Money;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingestion front for transfers from many producer threads: requests are copied into the slots of a
+ * preallocated {@link RingBuffer}, and one consumer thread runs them through the stages resolve accounts,
+ * validate, apply and then the downstream handlers given to the constructor (e.g. a
+ * {@link JournalingTransferHandler} and whatever hands results back to the callers).
+ * <p>
+ * The consumer takes all transfers published since its last pass, up to {@code maxBatch}, and runs each stage
+ * over the whole batch, so batches grow with the load. Resolution and validation failures are recorded as the
+ * slot's result and later stages skip the slot; an exception thrown by a downstream handler is recorded as the
+ * slot's failure and doesn't stop the pipeline. Cancelled slots are skipped, and {@code endOfBatch} is passed
+ * with the last slot that isn't cancelled.
+ * <p>
+ * {@link #close()} processes every transfer published before it. A producer that claims a slot after the
+ * pipeline closed gets an {@link IllegalStateException} instead, so a transfer is either processed or refused,
+ * never dropped.
+ */
+public class TransferPipeline implements AutoCloseable {
+
+    private static final int BASIS_POINTS = 10_000;
+
+    private final RingBuffer<TransferSlot> ringBuffer;
+
+    private final AccountService accountService;
+
+    private final List<TransferHandler> stages = new ArrayList<>();
+
+    private final int maxBatch;
+
+    private final Thread consumer;
+
+    private volatile boolean running = true;
+
+    public TransferPipeline(AccountService accountService, int capacity, TransferHandler... downstream) {
+        this(accountService, capacity, capacity, downstream);
+    }
+
+    public TransferPipeline(AccountService accountService, int capacity, int maxBatch,
+                            TransferHandler... downstream) {
+        this.accountService = accountService;
+        this.ringBuffer = new RingBuffer<>(capacity, TransferSlot::new);
+        this.maxBatch = Math.min(maxBatch, capacity);
+        stages.add(this::resolve);
+        stages.add(this::validate);
+        stages.add(this::apply);
+        stages.addAll(List.of(downstream));
+
+        consumer = new Thread(this::consume, "transfer-pipeline");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Publishes a transfer, waiting while the ring is full. Returns its sequence.
+     */
+    public long publish(long correlationId, Agreement source, Agreement destination,
+                        int sourceType, int destinationType, long amount, int commissionBasisPoints) {
+        checkRunning();
+        for (int attempt = 0; ; attempt++) {
+            long sequence = ringBuffer.tryNext();
+            if (sequence >= 0) {
+                fill(sequence, correlationId, source, destination, sourceType, destinationType, amount,
+                        commissionBasisPoints);
+                return sequence;
+            }
+            checkRunning();
+            if (attempt < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+    }
+
+    /**
+     * Publishes a transfer if the ring has room. Returns its sequence, or -1 if the ring is full.
+     */
+    public long tryPublish(long correlationId, Agreement source, Agreement destination,
+                           int sourceType, int destinationType, long amount, int commissionBasisPoints) {
+        checkRunning();
+        long sequence = ringBuffer.tryNext();
+        if (sequence >= 0) {
+            fill(sequence, correlationId, source, destination, sourceType, destinationType, amount,
+                    commissionBasisPoints);
+        }
+        return sequence;
+    }
+
+    /**
+     * Stops accepting transfers, processes the ones already published and stops the consumer. If the calling
+     * thread is interrupted while waiting, the consumer finishes in the background.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The consumer only stops once it has seen {@code running == false} and nothing claimed beyond its
+     * position. Checking {@code running} again after the claim therefore tells the producer whether the
+     * consumer will still reach the slot; if it may not, the slot is published as cancelled so the sequence
+     * has no gap, and the transfer is refused.
+     */
+    private void fill(long sequence, long correlationId, Agreement source, Agreement destination,
+                      int sourceType, int destinationType, long amount, int commissionBasisPoints) {
+        TransferSlot slot = ringBuffer.get(sequence);
+        slot.request(correlationId, source, destination, sourceType, destinationType, amount,
+                commissionBasisPoints);
+        if (!running) {
+            slot.cancel();
+            ringBuffer.publish(sequence);
+            throw new IllegalStateException("Transfer pipeline is closed");
+        }
+        ringBuffer.publish(sequence);
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new IllegalStateException("Transfer pipeline is closed");
+        }
+    }
+
+    private void consume() {
+        long next = 0;
+        int idle = 0;
+        while (running || ringBuffer.claimed() >= next) {
+            long last = ringBuffer.highestPublished(next, next + maxBatch - 1);
+            if (last < next) {
+                if (++idle < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(10_000);
+                }
+                continue;
+            }
+            idle = 0;
+            long lastLive = lastLive(ringBuffer, next, last);
+            for (TransferHandler stage : stages) {
+                for (long sequence = next; sequence <= lastLive; sequence++) {
+                    TransferSlot slot = ringBuffer.get(sequence);
+                    if (slot.isCancelled()) {
+                        continue;
+                    }
+                    try {
+                        stage.onTransfer(slot, sequence, sequence == lastLive);
+                    } catch (RuntimeException e) {
+                        slot.setFailure(e);
+                    }
+                }
+            }
+            ringBuffer.release(last);
+            next = last + 1;
+        }
+    }
+
+    /**
+     * The last slot of the batch that isn't cancelled, the one stages get {@code endOfBatch} with; below
+     * {@code first} if all are cancelled.
+     */
+    static long lastLive(RingBuffer<TransferSlot> ringBuffer, long first, long last) {
+        long sequence = last;
+        while (sequence >= first && ringBuffer.get(sequence).isCancelled()) {
+            sequence--;
+        }
+        return sequence;
+    }
+
+    private void resolve(TransferSlot slot, long sequence, boolean endOfBatch) {
+        long sourceAccountId = findAccountId(slot.getSource(), slot.getSourceType());
+        long destinationAccountId = findAccountId(slot.getDestination(), slot.getDestinationType());
+        if (sourceAccountId == 0 || destinationAccountId == 0) {
+            slot.setResult(TransferResult.ACCOUNT_NOT_FOUND);
+            return;
+        }
+        slot.setSourceAccountId(sourceAccountId);
+        slot.setDestinationAccountId(destinationAccountId);
+    }
+
+    private void validate(TransferSlot slot, long sequence, boolean endOfBatch) {
+        if (slot.getResult() != null) {
+            return;
+        }
+        if (slot.getAmount() <= 0 || slot.getCommissionBasisPoints() < 0) {
+            slot.setResult(TransferResult.REJECTED);
+            return;
+        }
+        slot.setCommission(commission(slot.getAmount(), slot.getCommissionBasisPoints()));
+    }
+
+    private void apply(TransferSlot slot, long sequence, boolean endOfBatch) {
+        if (slot.getResult() != null) {
+            return;
+        }
+        try {
+            boolean completed = accountService.makeTransferMinor(slot.getSourceAccountId(),
+                    slot.getDestinationAccountId(), slot.getAmount(), slot.getCommission());
+            slot.setResult(completed ? TransferResult.COMPLETED : TransferResult.REJECTED);
+        } catch (AccountException e) {
+            slot.setResult(TransferResult.ACCOUNT_NOT_FOUND);
+        } catch (RuntimeException e) {
+            slot.setResult(TransferResult.FAILED);
+            slot.setFailure(e);
+        }
+    }
+
+    private long findAccountId(Agreement agreement, int type) {
+        List<Account> accounts = accountService.getAccounts(agreement, type);
+        return accounts.isEmpty() ? 0 : accounts.get(0).getId();
+    }
+
+    /**
+     * {@code amount * basisPoints / 10000}, rounded half to even like the BigDecimal commission of
+     * {@link ru.otus.bank.service.impl.PaymentProcessorImpl}.
+     */
+    static long commission(long amount, int basisPoints) {
+        return Money.multiply(amount, basisPoints, BASIS_POINTS);
+    }
+}
@@ -0,0 +1,143 @@
+package ru.otus.bank.service.pipeline;
+
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferResult;
+
+/**
+ * Reusable ring entry: a transfer request as published by a producer, plus what the pipeline stages found out
+ * about it. Amounts are minor units, see {@link ru.otus.bank.entity.Money}; the commission rate is in basis
+ * points (1/100 of a percent).
+ */
+public class TransferSlot {
+
+    private long correlationId;
+
+    private Agreement source;
+
+    private Agreement destination;
+
+    private int sourceType;
+
+    private int destinationType;
+
+    private long amount;
+
+    private int commissionBasisPoints;
+
+    private long sourceAccountId;
+
+    private long destinationAccountId;
+
+    private long commission;
+
+    private TransferResult result;
+
+    private RuntimeException failure;
+
+    private boolean cancelled;
+
+    void request(long correlationId, Agreement source, Agreement destination, int sourceType, int destinationType,
+                 long amount, int commissionBasisPoints) {
+        this.correlationId = correlationId;
+        this.source = source;
+        this.destination = destination;
+        this.sourceType = sourceType;
+        this.destinationType = destinationType;
+        this.amount = amount;
+        this.commissionBasisPoints = commissionBasisPoints;
+        this.sourceAccountId = 0;
+        this.destinationAccountId = 0;
+        this.commission = 0;
+        this.result = null;
+        this.failure = null;
+        this.cancelled = false;
+    }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public Agreement getSource() {
+        return source;
+    }
+
+    public Agreement getDestination() {
+        return destination;
+    }
+
+    public int getSourceType() {
+        return sourceType;
+    }
+
+    public int getDestinationType() {
+        return destinationType;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public int getCommissionBasisPoints() {
+        return commissionBasisPoints;
+    }
+
+    public long getSourceAccountId() {
+        return sourceAccountId;
+    }
+
+    void setSourceAccountId(long sourceAccountId) {
+        this.sourceAccountId = sourceAccountId;
+    }
+
+    public long getDestinationAccountId() {
+        return destinationAccountId;
+    }
+
+    void setDestinationAccountId(long destinationAccountId) {
+        this.destinationAccountId = destinationAccountId;
+    }
+
+    public long getCommission() {
+        return commission;
+    }
+
+    void setCommission(long commission) {
+        this.commission = commission;
+    }
+
+    /**
+     * Outcome of the transfer, {@code null} while it is still undecided.
+     */
+    public TransferResult getResult() {
+        return result;
+    }
+
+    void setResult(TransferResult result) {
+        this.result = result;
+    }
+
+    /**
+     * First exception thrown while processing the transfer, if any.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    void setFailure(RuntimeException failure) {
+        if (this.failure == null) {
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Whether the producer gave the slot up because the pipeline closed after it was claimed. No stage sees
+     * such a slot.
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+}
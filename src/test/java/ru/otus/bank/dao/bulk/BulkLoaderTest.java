@@ -0,0 +1,130 @@
+package ru.otus.bank.dao.bulk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.impl.AgreementDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    AgreementDaoImpl agreementDao = new AgreementDaoImpl();
+
+    AccountDaoImpl accountDao = new AccountDaoImpl();
+
+    @Test
+    void loadCsvTest() throws IOException {
+        Agreement existing = agreementDao.addAgreement("client0");
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) {
+            csv.append("client").append(i / 10).append(",acc_").append(i).append(',').append(i % 3)
+                    .append(',').append(i).append(".5").append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        csv.append("client100,,,-0.01\n\n");
+        Path file = directory.resolve("accounts.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        BulkLoader.LoadResult result = loader(7, 100).loadCsv(file);
+
+        assertEquals(100, result.agreementsCreated());
+        assertEquals(1_001, result.accountsLoaded());
+        assertUniqueIds();
+        Account first = toList(accountDao.findByAgreementIdAndType(existing.getId(), 0)).stream()
+                .filter(account -> "acc_0".equals(account.getNumber())).findFirst().orElseThrow();
+        assertEquals(0, new BigDecimal("0.5").compareTo(first.getAmount()));
+        Account last = toList(accountDao.findByAgreementId(agreementDao.findByName("client100").orElseThrow().getId()))
+                .get(0);
+        assertNull(last.getNumber());
+        assertNull(last.getType());
+        assertEquals(-1, last.getMinorAmount());
+    }
+
+    @Test
+    void loadBinaryTest() {
+        Path file = directory.resolve("accounts.bin");
+        try (BulkFileWriter writer = new BulkFileWriter(file)) {
+            for (int i = 0; i < 1_000; i++) {
+                writer.add("client" + i % 7, "acc_" + i, i % 3, i * 100L);
+            }
+            writer.add("client7", null, null, 1);
+        }
+
+        BulkLoader.LoadResult result = loader(100, 512).loadBinary(file);
+
+        assertEquals(8, result.agreementsCreated());
+        assertEquals(1_001, result.accountsLoaded());
+        assertUniqueIds();
+        long total = 0;
+        for (Account account : accountDao.findAll()) {
+            total += account.getMinorAmount();
+        }
+        assertEquals(999 * 1_000 / 2 * 100 + 1, total);
+        List<Account> client7 = toList(accountDao.findByAgreementId(
+                agreementDao.findByName("client7").orElseThrow().getId()));
+        assertEquals(1, client7.size());
+        assertNull(client7.get(0).getNumber());
+        assertNull(client7.get(0).getType());
+    }
+
+    @Test
+    void malformedCsvTest() throws IOException {
+        Path file = directory.resolve("accounts.csv");
+        Files.writeString(file, "client,acc_1,0,10\nclient,acc_2,0,1.001\n", StandardCharsets.UTF_8);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> loader(10, 1024).loadCsv(file));
+        assertTrue(e.getMessage().contains("byte 18"), e.getMessage());
+    }
+
+    @Test
+    void parseMinorTest() {
+        assertEquals(1050, parseMinor("10.5"));
+        assertEquals(1000, parseMinor("10"));
+        assertEquals(1, parseMinor("0.01"));
+        assertEquals(-250, parseMinor("-2.50"));
+        assertThrows(IllegalArgumentException.class, () -> parseMinor("1.001"));
+        assertThrows(IllegalArgumentException.class, () -> parseMinor("1,0"));
+        assertThrows(IllegalArgumentException.class, () -> parseMinor("-"));
+        assertThrows(ArithmeticException.class, () -> parseMinor("92233720368547758.08"));
+    }
+
+    private BulkLoader loader(int batchSize, int chunkSize) {
+        return new BulkLoader(agreementDao, accountDao, ForkJoinPool.commonPool(), batchSize, chunkSize);
+    }
+
+    private void assertUniqueIds() {
+        Set<Long> ids = new HashSet<>();
+        for (Account account : accountDao.findAll()) {
+            assertTrue(ids.add(account.getId()));
+            assertEquals(account, accountDao.findByIdOrNull(account.getId()));
+        }
+    }
+
+    private static long parseMinor(String amount) {
+        byte[] bytes = amount.getBytes(StandardCharsets.US_ASCII);
+        return BulkLoader.parseMinor(bytes, 0, bytes.length);
+    }
+
+    private static List<Account> toList(Iterable<Account> accounts) {
+        List<Account> result = new ArrayList<>();
+        accounts.forEach(result::add);
+        return result;
+    }
+}
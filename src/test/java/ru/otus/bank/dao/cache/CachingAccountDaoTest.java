@@ -0,0 +1,235 @@
+package ru.otus.bank.dao.cache;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CachingAccountDaoTest {
+
+    AccountDao delegate = spy(new AccountDaoImpl());
+
+    Agreement agreement = new Agreement();
+
+    @Test
+    void readThroughTest() {
+        Long id = delegate.save(account(100)).getId();
+        CachingAccountDao accountDao = new CachingAccountDao(delegate, 10);
+
+        Account first = accountDao.findById(id).orElseThrow();
+        Account second = accountDao.findById(id).orElseThrow();
+
+        assertSame(first, second);
+        assertTrue(accountDao.findById(42L).isEmpty());
+        verify(delegate, times(1)).findByIdOrNull(id);
+        assertEquals(1, accountDao.stats().hits());
+        assertEquals(2, accountDao.stats().misses());
+        assertEquals(1, accountDao.stats().size());
+    }
+
+    @Test
+    void writeThroughTest() {
+        CachingAccountDao accountDao = new CachingAccountDao(delegate, 10);
+        AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 0, BigDecimal.ZERO).getId();
+
+        accountService.makeTransfer(source, destination, new BigDecimal(30));
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).beginBatch();
+        inOrder.verify(delegate, times(2)).save(any());
+        inOrder.verify(delegate).commitBatch();
+        verify(delegate, never()).findById(any());
+        assertEquals(new BigDecimal(70), delegate.findById(source).orElseThrow().getAmount());
+    }
+
+    @Test
+    void writeBehindTest() {
+        try (CachingAccountDao accountDao = new CachingAccountDao(delegate, 10, Duration.ofHours(1))) {
+            AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+            Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            Long destination = accountService.addAccount(agreement, "acc2", 0, BigDecimal.ZERO).getId();
+            clearInvocations(delegate);
+
+            accountService.makeTransfer(source, destination, new BigDecimal(30));
+            accountService.makeTransfer(source, destination, new BigDecimal(20));
+
+            verify(delegate, never()).save(any());
+            verify(delegate, never()).beginBatch();
+
+            accountDao.flush();
+
+            verify(delegate, times(1)).beginBatch();
+            verify(delegate, times(2)).save(any());
+            verify(delegate, times(1)).commitBatch();
+            accountDao.flush();
+            verify(delegate, times(2)).save(any());
+        }
+    }
+
+    @Test
+    void writeBehindFailedFlushKeepsQueueTest() {
+        Account account = delegate.save(account(100));
+        Account stale = account(100);
+        stale.setId(account.getId());
+        AccountDao failingDelegate = mock(AccountDao.class);
+        when(failingDelegate.findByIdOrNull(account.getId())).thenReturn(stale);
+        doThrow(new IllegalStateException("Storage failure")).doReturn(account).when(failingDelegate).save(any());
+
+        try (CachingAccountDao accountDao = new CachingAccountDao(failingDelegate, 1, Duration.ofHours(1))) {
+            accountDao.beginBatch();
+            accountDao.save(account);
+            accountDao.commitBatch();
+            accountDao.findById(99L);
+
+            assertThrows(IllegalStateException.class, accountDao::flush);
+            verify(failingDelegate).abortBatch();
+            assertSame(account, accountDao.findById(account.getId()).orElseThrow());
+
+            accountDao.flush();
+            verify(failingDelegate).commitBatch();
+        }
+        verify(failingDelegate, times(2)).save(account);
+    }
+
+    @Test
+    void writeBehindFlushWritesWholeTransfersTest() throws InterruptedException {
+        PersistingAccountDao persisting = new PersistingAccountDao();
+        try (CachingAccountDao accountDao = new CachingAccountDao(persisting, 10, Duration.ofHours(1))) {
+            AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                ids.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(1000)).getId());
+            }
+
+            Thread[] threads = new Thread[3];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        int source = random.nextInt(ids.size());
+                        accountService.makeTransfer(ids.get(source), ids.get((source + 1) % ids.size()),
+                                BigDecimal.ONE);
+                        if (i % 1000 == 0) {
+                            accountDao.flush();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (int i = 0; i < 200; i++) {
+                accountDao.flush();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            accountDao.flush();
+
+            assertTrue(persisting.commits > 1);
+            assertEquals(0, persisting.unbalancedCommits);
+        }
+    }
+
+    @Test
+    void writeBehindPinsQueuedAccountsTest() {
+        Long id = delegate.save(account(100)).getId();
+        Account stale = account(100);
+        stale.setId(id);
+        AccountDao copyingDelegate = mock(AccountDao.class);
+        when(copyingDelegate.findByIdOrNull(id)).thenReturn(stale);
+        when(copyingDelegate.findAll()).thenReturn(List.of(stale));
+
+        try (CachingAccountDao accountDao = new CachingAccountDao(copyingDelegate, 1, Duration.ofHours(1))) {
+            accountDao.findById(id);
+            Account modified = account(40);
+            modified.setId(id);
+            accountDao.save(modified);
+            accountDao.findById(99L);
+            accountDao.findById(98L);
+
+            assertSame(modified, accountDao.findById(id).orElseThrow());
+            assertSame(modified, accountDao.findAll().iterator().next());
+            verify(copyingDelegate, times(1)).findByIdOrNull(id);
+        }
+        verify(copyingDelegate).save(any());
+    }
+
+    @Test
+    void writeBehindAbortedBatchIsNotQueuedTest() {
+        Account account = delegate.save(account(100));
+        try (CachingAccountDao accountDao = new CachingAccountDao(delegate, 10, Duration.ofHours(1))) {
+            accountDao.beginBatch();
+            accountDao.save(account);
+            accountDao.abortBatch();
+
+            accountDao.flush();
+
+            verify(delegate, times(1)).save(any());
+        }
+    }
+
+    /**
+     * Remembers the amounts each committed batch would have persisted and checks they add up to the total.
+     */
+    private static class PersistingAccountDao extends AccountDaoImpl {
+        private final Map<Long, Long> persisted = new HashMap<>();
+        private final ThreadLocal<Map<Long, Long>> staged = new ThreadLocal<>();
+        private long expectedTotal;
+        private int commits;
+        private int unbalancedCommits;
+
+        @Override
+        public synchronized Account save(Account account) {
+            Account saved = super.save(account);
+            Map<Long, Long> batch = staged.get();
+            if (batch != null) {
+                batch.put(saved.getId(), saved.getMinorAmount());
+            } else {
+                persisted.put(saved.getId(), saved.getMinorAmount());
+                expectedTotal += saved.getMinorAmount();
+            }
+            return saved;
+        }
+
+        @Override
+        public void beginBatch() {
+            staged.set(new HashMap<>());
+        }
+
+        @Override
+        public synchronized void commitBatch() {
+            persisted.putAll(staged.get());
+            staged.remove();
+            commits++;
+            if (persisted.values().stream().mapToLong(Long::longValue).sum() != expectedTotal) {
+                unbalancedCommits++;
+            }
+        }
+
+        @Override
+        public void abortBatch() {
+            staged.remove();
+        }
+    }
+
+    private static Account account(int amount) {
+        Account account = new Account();
+        account.setAmount(new BigDecimal(amount));
+        return account;
+    }
+}
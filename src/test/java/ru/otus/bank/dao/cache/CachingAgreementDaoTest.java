@@ -0,0 +1,39 @@
+package ru.otus.bank.dao.cache;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.dao.impl.AgreementDaoImpl;
+import ru.otus.bank.entity.Agreement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CachingAgreementDaoTest {
+
+    AgreementDao delegate = spy(new AgreementDaoImpl());
+
+    CachingAgreementDao agreementDao = new CachingAgreementDao(delegate, 10);
+
+    @Test
+    void findByNameTest() {
+        Agreement agreement = agreementDao.addAgreement("Bank");
+
+        assertSame(agreement, agreementDao.findByName("Bank").orElseThrow());
+        assertSame(agreement, agreementDao.findByName("Bank").orElseThrow());
+        assertTrue(agreementDao.findByName("Client").isEmpty());
+
+        verify(delegate, times(1)).findByName(any());
+        assertEquals(2, agreementDao.stats().hits());
+        assertEquals(1, agreementDao.stats().misses());
+    }
+
+    @Test
+    void renamedAgreementTest() {
+        Agreement agreement = agreementDao.addAgreement("Client1");
+        agreement.setName("Client2");
+        agreementDao.save(agreement);
+
+        assertSame(agreement, agreementDao.findByName("Client2").orElseThrow());
+        assertEquals(delegate.findByName("Client1"), agreementDao.findByName("Client1"));
+    }
+}
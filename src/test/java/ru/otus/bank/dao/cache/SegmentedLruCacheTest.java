@@ -0,0 +1,102 @@
+package ru.otus.bank.dao.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedLruCacheTest {
+
+    @Test
+    void getAndPutTest() {
+        SegmentedLruCache<Long, String> cache = new SegmentedLruCache<>(10);
+
+        assertNull(cache.get(1L));
+        cache.put(1L, "one");
+        assertEquals("one", cache.get(1L));
+        cache.put(1L, "uno");
+        assertEquals("uno", cache.get(1L));
+        cache.invalidate(1L);
+        assertNull(cache.get(1L));
+
+        assertEquals(new CacheStats(2, 2, 0, 0), cache.stats());
+        assertEquals(0.5, cache.stats().hitRate());
+    }
+
+    @Test
+    void sizeIsBoundedTest() {
+        SegmentedLruCache<Long, Long> cache = new SegmentedLruCache<>(100, 4);
+
+        for (long i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.stats().evictions());
+    }
+
+    @Test
+    void scanDoesNotEvictHotEntriesTest() {
+        SegmentedLruCache<Long, Long> cache = new SegmentedLruCache<>(10, 1);
+        for (long hot = 0; hot < 5; hot++) {
+            cache.put(hot, hot);
+            cache.get(hot);
+        }
+
+        for (long cold = 100; cold < 200; cold++) {
+            cache.put(cold, cold);
+        }
+
+        for (long hot = 0; hot < 5; hot++) {
+            assertEquals(hot, cache.get(hot));
+        }
+        assertNull(cache.get(100L));
+    }
+
+    @Test
+    void leastRecentlyUsedProtectedEntryIsDemotedTest() {
+        SegmentedLruCache<Long, Long> cache = new SegmentedLruCache<>(5, 1);
+        for (long key = 0; key < 5; key++) {
+            cache.put(key, key);
+            cache.get(key);
+        }
+
+        cache.put(10L, 10L);
+        cache.put(11L, 11L);
+
+        assertNull(cache.get(0L));
+        for (long key = 1; key < 5; key++) {
+            assertEquals(key, cache.get(key));
+        }
+    }
+
+    @Test
+    void concurrentAccessTest() throws InterruptedException {
+        SegmentedLruCache<Long, Long> cache = new SegmentedLruCache<>(256, 8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 50_000; j++) {
+                    long key = random.nextLong(1024);
+                    Long value = cache.get(key);
+                    if (value == null) {
+                        cache.put(key, key);
+                    } else {
+                        assertEquals(key, value);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(cache.size() <= 256);
+        assertEquals(200_000, cache.stats().hits() + cache.stats().misses());
+    }
+}
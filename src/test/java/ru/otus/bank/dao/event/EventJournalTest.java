@@ -0,0 +1,131 @@
+package ru.otus.bank.dao.event;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.dao.wal.WriteAheadLog;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendAndGetTest() {
+        EventJournal journal = new EventJournal();
+
+        assertEquals(0, journal.append(List.of(opened(1, 100), opened(2, 0))));
+        assertEquals(2, journal.append(List.of(new AccountEvent.Debited(1, 2, 10), new AccountEvent.Credited(2, 2, 10))));
+
+        assertEquals(4, journal.size());
+        assertEquals(new AccountEvent.Credited(2, 2, 10), journal.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> journal.get(4));
+    }
+
+    @Test
+    void reloadFromLogTest() {
+        Path file = dir.resolve("events.wal");
+        List<AccountEvent> events = List.of(
+                new AccountEvent.Opened(1, 1, 5L, 0, "acc1", 100),
+                new AccountEvent.Opened(2, 2, null, null, null, 0),
+                new AccountEvent.Debited(1, 3, 10),
+                new AccountEvent.Credited(2, 3, 10));
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            EventJournal journal = new EventJournal(log);
+            journal.append(events.subList(0, 2));
+            journal.append(events.subList(2, 4));
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            EventJournal journal = new EventJournal(log);
+            List<AccountEvent> reloaded = new ArrayList<>();
+            journal.replay(0, (offset, event) -> reloaded.add(event));
+            assertEquals(events, reloaded);
+        }
+    }
+
+    @Test
+    void parallelReplayKeepsAccountOrderTest() {
+        EventJournal journal = new EventJournal();
+        int accounts = 100;
+        for (int account = 0; account < accounts; account++) {
+            journal.append(List.of(opened(account, 0)));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            journal.append(List.of(new AccountEvent.Credited(i % accounts, i, 1)));
+        }
+
+        Map<Long, Long> lastOffsets = new ConcurrentHashMap<>();
+        BalanceProjection balances = new BalanceProjection();
+        journal.replay(0, 8, (offset, event) -> {
+            Long previous = lastOffsets.put(event.accountId(), offset);
+            assertTrue(previous == null || previous < offset);
+            balances.apply(offset, event);
+        });
+
+        assertEquals(accounts, balances.size());
+        for (int account = 0; account < accounts; account++) {
+            assertEquals(100, balances.balanceOf(account).orElseThrow());
+        }
+    }
+
+    @Test
+    void replayFromOffsetTest() {
+        EventJournal journal = new EventJournal();
+        journal.append(List.of(opened(1, 100), new AccountEvent.Debited(1, 2, 30), new AccountEvent.Debited(1, 3, 20)));
+
+        List<Long> offsets = new ArrayList<>();
+        journal.replay(1, 4, (offset, event) -> offsets.add(offset));
+
+        assertEquals(List.of(1L, 2L), offsets);
+    }
+
+    @Test
+    void parallelReplaySpanningWindowsTest() {
+        EventJournal journal = new EventJournal();
+        journal.append(List.of(opened(1, 0), opened(2, 0)));
+        for (int i = 0; i < 100_000; i++) {
+            journal.append(List.of(new AccountEvent.Credited(1 + i % 2, i, 1)));
+        }
+
+        List<Long> offsets = new ArrayList<>();
+        journal.replay(0, 3, (offset, event) -> {
+            if (event.accountId() == 1) {
+                offsets.add(offset);
+            }
+        });
+
+        assertEquals(50_001, offsets.size());
+        for (int i = 1; i < offsets.size(); i++) {
+            assertEquals(offsets.get(i - 1) + 2, offsets.get(i));
+        }
+    }
+
+    @Test
+    void replayFromOffsetIntoSeededProjectionTest() {
+        EventJournal journal = new EventJournal();
+        journal.append(List.of(opened(1, 100)));
+        long from = journal.append(List.of(new AccountEvent.Debited(1, 2, 30)));
+        journal.append(List.of(opened(2, 0), new AccountEvent.Credited(2, 3, 5)));
+
+        assertThrows(IllegalStateException.class, () -> journal.replay(from, 4, new BalanceProjection()));
+
+        BalanceProjection balances = new BalanceProjection();
+        balances.seed(1, 100);
+        journal.replay(from, 4, balances);
+        assertEquals(70, balances.balanceOf(1).orElseThrow());
+        assertEquals(5, balances.balanceOf(2).orElseThrow());
+    }
+
+    private static AccountEvent opened(long accountId, long amount) {
+        return new AccountEvent.Opened(accountId, accountId, 1L, 0, "acc" + accountId, amount);
+    }
+}
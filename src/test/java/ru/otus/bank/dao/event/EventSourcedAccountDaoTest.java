@@ -0,0 +1,102 @@
+package ru.otus.bank.dao.event;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventSourcedAccountDaoTest {
+
+    Long failingAccountId;
+
+    AccountDaoImpl delegate = new AccountDaoImpl() {
+        @Override
+        public Account save(Account account) {
+            if (account.getId().equals(failingAccountId)) {
+                throw new IllegalStateException("Storage failure");
+            }
+            return super.save(account);
+        }
+    };
+
+    EventJournal journal = new EventJournal();
+
+    EventSourcedAccountDao accountDao = new EventSourcedAccountDao(delegate, journal);
+
+    AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+    Agreement agreement = new Agreement();
+
+    @Test
+    void transferEventsTest() {
+        agreement.setId(1L);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 0, BigDecimal.ZERO).getId();
+
+        assertTrue(accountService.makeTransfer(source, destination, new BigDecimal(10), BigDecimal.ONE));
+        assertTrue(accountService.charge(destination, new BigDecimal(3)));
+        assertFalse(accountService.makeTransfer(source, destination, new BigDecimal(1000)));
+
+        List<AccountEvent> events = events();
+        assertEquals(5, events.size());
+        assertEquals(new AccountEvent.Opened(source, 1, 1L, 0, "acc1", 10000), events.get(0));
+        assertEquals(new AccountEvent.Debited(source, 3, 1100), events.get(2));
+        assertEquals(new AccountEvent.Credited(destination, 3, 1000), events.get(3));
+        assertEquals(new AccountEvent.Debited(destination, 4, 300), events.get(4));
+        assertEquals(8900, accountDao.balances().balanceOf(source).orElseThrow());
+        assertEquals(700, accountDao.balances().balanceOf(destination).orElseThrow());
+    }
+
+    @Test
+    void failedTransferRecordsNoEventsTest() {
+        agreement.setId(1L);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 0, BigDecimal.ZERO).getId();
+        failingAccountId = destination;
+
+        assertThrows(IllegalStateException.class,
+                () -> accountService.makeTransfer(source, destination, new BigDecimal(10)));
+
+        assertEquals(2, journal.size());
+        assertEquals(10000, accountDao.balances().balanceOf(source).orElseThrow());
+    }
+
+    @Test
+    void projectionsRebuiltFromJournalTest() {
+        agreement.setId(1L);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(100)).getId());
+        }
+        for (int i = 0; i < 1000; i++) {
+            accountService.makeTransfer(ids.get(i % 20), ids.get((i * 7 + 3) % 20), new BigDecimal(i % 50 + 1));
+        }
+
+        List<Long> rebuiltOffsets = new ArrayList<>();
+        EventSourcedAccountDao rebuilt = new EventSourcedAccountDao(new AccountDaoImpl(), journal,
+                (offset, event) -> {
+                    synchronized (rebuiltOffsets) {
+                        rebuiltOffsets.add(offset);
+                    }
+                });
+
+        assertEquals(journal.size(), rebuiltOffsets.size());
+        for (Long id : ids) {
+            assertEquals(delegate.findById(id).orElseThrow().getMinorAmount(),
+                    rebuilt.balances().balanceOf(id).orElseThrow());
+        }
+    }
+
+    private List<AccountEvent> events() {
+        List<AccountEvent> events = new ArrayList<>();
+        journal.replay(0, (offset, event) -> events.add(event));
+        return events;
+    }
+}
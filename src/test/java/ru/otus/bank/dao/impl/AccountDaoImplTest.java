@@ -0,0 +1,144 @@
+package ru.otus.bank.dao.impl;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountDaoImplTest {
+
+    AccountDaoImpl accountDao = new AccountDaoImpl();
+
+    @Test
+    void findByAgreementIdTest() {
+        Account first = accountDao.save(account(1L, 0));
+        Account second = accountDao.save(account(1L, 1));
+        accountDao.save(account(2L, 0));
+
+        assertEquals(List.of(first, second), toList(accountDao.findByAgreementId(1L)));
+        assertTrue(toList(accountDao.findByAgreementId(3L)).isEmpty());
+    }
+
+    @Test
+    void findByAgreementIdAndTypeTest() {
+        accountDao.save(account(1L, 0));
+        Account second = accountDao.save(account(1L, 1));
+        accountDao.save(account(2L, 1));
+
+        assertEquals(List.of(second), toList(accountDao.findByAgreementIdAndType(1L, 1)));
+        assertTrue(toList(accountDao.findByAgreementIdAndType(1L, 2)).isEmpty());
+    }
+
+    @Test
+    void agreementChangeReindexTest() {
+        Account account = accountDao.save(account(1L, 0));
+
+        account.setAgreementId(2L);
+        accountDao.save(account);
+
+        assertTrue(toList(accountDao.findByAgreementId(1L)).isEmpty());
+        assertEquals(List.of(account), toList(accountDao.findByAgreementId(2L)));
+
+        account.setAgreementId(null);
+        accountDao.save(account);
+
+        assertTrue(toList(accountDao.findByAgreementId(2L)).isEmpty());
+        assertTrue(accountDao.findById(account.getId()).isPresent());
+    }
+
+    @Test
+    void findByIdOrNullTest() {
+        Account account = accountDao.save(account(1L, 0));
+
+        assertSame(account, accountDao.findByIdOrNull(account.getId()));
+        assertSame(account, accountDao.findById(account.getId()).orElseThrow());
+        assertNull(accountDao.findByIdOrNull(account.getId() + 1));
+        assertTrue(accountDao.findById(account.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void saveAllTest() {
+        Account existing = accountDao.save(account(1L, 0));
+        Account explicit = account(2L, 0);
+        explicit.setId(100L);
+        List<Account> batch = List.of(account(1L, 1), explicit, account(2L, 1));
+
+        accountDao.saveAll(batch);
+
+        assertEquals(101L, batch.get(0).getId());
+        assertEquals(102L, batch.get(2).getId());
+        assertEquals(List.of(existing, batch.get(0)), toList(accountDao.findByAgreementId(1L)));
+        assertEquals(List.of(explicit, batch.get(2)), toList(accountDao.findByAgreementId(2L)));
+        assertEquals(103L, accountDao.save(account(3L, 0)).getId());
+    }
+
+    @Test
+    void findPageTest() {
+        for (int i = 0; i < 25; i++) {
+            accountDao.save(account(1L, 0));
+        }
+
+        List<Long> ids = new ArrayList<>();
+        AccountPage page = accountDao.findPage(AccountPage.FIRST, 10);
+        ids.addAll(ids(page));
+        while (page.hasNext()) {
+            page = accountDao.findPage(page.nextAfterId(), 10);
+            ids.addAll(ids(page));
+        }
+
+        assertEquals(25, ids.size());
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1) < ids.get(i));
+        }
+    }
+
+    @Test
+    void findPageWithSparseIdsTest() {
+        for (long id : new long[]{5, 1_000_000_000L, 40, 7}) {
+            Account account = account(1L, 0);
+            account.setId(id);
+            accountDao.save(account);
+        }
+
+        AccountPage first = accountDao.findPage(AccountPage.FIRST, 3);
+        assertEquals(List.of(5L, 7L, 40L), ids(first));
+        AccountPage second = accountDao.findPage(first.nextAfterId(), 3);
+        assertEquals(List.of(1_000_000_000L), ids(second));
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    void streamAllTest() {
+        for (int i = 0; i < 100; i++) {
+            accountDao.save(account(1L, i % 2));
+        }
+
+        assertEquals(100, accountDao.streamAll().parallel().count());
+        assertEquals(50, accountDao.streamAll().filter(account -> account.getType() == 1).count());
+    }
+
+    private static List<Long> ids(AccountPage page) {
+        List<Long> ids = new ArrayList<>();
+        page.accounts().forEach(account -> ids.add(account.getId()));
+        return ids;
+    }
+
+    private static Account account(Long agreementId, Integer type) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setAmount(BigDecimal.TEN);
+        return account;
+    }
+
+    private static <T> List<T> toList(Iterable<T> src) {
+        List<T> result = new ArrayList<>();
+        src.forEach(result::add);
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package ru.otus.bank.dao.impl;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AgreementException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgreementDaoImplTest {
+
+    AgreementDaoImpl agreementDao = new AgreementDaoImpl();
+
+    @Test
+    void findByNameTest() {
+        Agreement agreement = agreementDao.addAgreement("Client1");
+        agreementDao.addAgreement("Client2");
+
+        assertEquals(agreement, agreementDao.findByName("Client1").orElseThrow());
+        assertTrue(agreementDao.findByName("Client3").isEmpty());
+    }
+
+    @Test
+    void saveAllTest() {
+        agreementDao.addAgreement("Client1");
+        Agreement second = new Agreement();
+        second.setName("Client2");
+        Agreement third = new Agreement();
+        third.setName("Client3");
+
+        agreementDao.saveAll(List.of(second, third));
+
+        assertEquals(2L, second.getId());
+        assertEquals(3L, third.getId());
+        assertEquals(third, agreementDao.findByName("Client3").orElseThrow());
+
+        Agreement unnamed = new Agreement();
+        assertThrows(AgreementException.class, () -> agreementDao.saveAll(List.of(unnamed)));
+        assertNull(unnamed.getId());
+    }
+
+    @Test
+    void duplicateNameTest() {
+        agreementDao.addAgreement("Client1");
+
+        AgreementException result = assertThrows(AgreementException.class,
+                () -> agreementDao.addAgreement("Client1"));
+        assertEquals("Agreement with name Client1 already exists", result.getMessage());
+
+        Agreement duplicate = new Agreement();
+        duplicate.setName("Client1");
+        assertThrows(AgreementException.class, () -> agreementDao.save(duplicate));
+        assertNull(duplicate.getId());
+        assertEquals(2L, agreementDao.addAgreement("Client2").getId());
+    }
+
+    @Test
+    void saveAllDuplicateNameTest() {
+        agreementDao.addAgreement("Client1");
+        Agreement second = new Agreement();
+        second.setName("Client2");
+        Agreement sameBatch = new Agreement();
+        sameBatch.setName("Client2");
+        Agreement stored = new Agreement();
+        stored.setName("Client1");
+
+        assertThrows(AgreementException.class, () -> agreementDao.saveAll(List.of(second, sameBatch)));
+        assertThrows(AgreementException.class, () -> agreementDao.saveAll(List.of(second, stored)));
+
+        assertNull(second.getId());
+        assertNull(sameBatch.getId());
+        assertNull(stored.getId());
+        assertTrue(agreementDao.findByName("Client2").isEmpty());
+        assertEquals(2L, agreementDao.addAgreement("Client2").getId());
+    }
+
+    @Test
+    void rejectedSaveKeepsIdTest() {
+        agreementDao.addAgreement("Client1");
+        Agreement duplicate = new Agreement();
+        duplicate.setId(0L);
+        duplicate.setName("Client1");
+
+        assertThrows(AgreementException.class, () -> agreementDao.save(duplicate));
+
+        assertEquals(0L, duplicate.getId());
+    }
+
+    @Test
+    void concurrentSaveAllIsAtomicTest() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<List<Agreement>> batches = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            Agreement first = new Agreement();
+            first.setName("Batch" + i);
+            Agreement contested = new Agreement();
+            contested.setName("Client" + i);
+            List<Agreement> batch = List.of(first, contested);
+            batches.add(batch);
+            int index = i;
+            executor.execute(() -> {
+                try {
+                    agreementDao.saveAll(batch);
+                } catch (AgreementException e) {
+                    // the single save took the name first
+                }
+            });
+            executor.execute(() -> {
+                try {
+                    agreementDao.addAgreement("Client" + index);
+                } catch (AgreementException e) {
+                    // the batch took the name first
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (List<Agreement> batch : batches) {
+            boolean stored = agreementDao.findByName(batch.get(1).getName()).orElseThrow() == batch.get(1);
+            assertEquals(stored, agreementDao.findByName(batch.get(0).getName()).isPresent());
+            assertEquals(stored, batch.get(0).getId() != null);
+        }
+    }
+
+    @Test
+    void renameTest() {
+        Agreement agreement = agreementDao.addAgreement("Client1");
+
+        agreement.setName("Client2");
+        agreementDao.save(agreement);
+
+        assertTrue(agreementDao.findByName("Client1").isEmpty());
+        assertEquals(agreement, agreementDao.findByName("Client2").orElseThrow());
+        assertNotEquals(agreement.getId(), agreementDao.addAgreement("Client1").getId());
+    }
+
+    @Test
+    void concurrentAddTest() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        IntStream.range(0, 10_000).forEach(i -> executor.execute(() -> agreementDao.addAgreement("Client" + i)));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        IntStream.range(0, 10_000).forEach(i ->
+                assertEquals("Client" + i, agreementDao.findByName("Client" + i).orElseThrow().getName()));
+    }
+}
@@ -0,0 +1,204 @@
+package ru.otus.bank.dao.impl;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarAccountDaoTest {
+
+    ColumnarAccountDao accountDao = new ColumnarAccountDao(16);
+
+    @Test
+    void saveAndFindByIdTest() {
+        Account saved = accountDao.save(account(1L, 0, "acc1"));
+
+        Account found = accountDao.findById(saved.getId()).orElseThrow();
+        assertEquals(saved.getId(), found.getId());
+        assertEquals(new BigDecimal(10), found.getAmount());
+        assertEquals(0, found.getType());
+        assertEquals("acc1", found.getNumber());
+        assertEquals(1L, found.getAgreementId());
+        assertTrue(accountDao.findById(saved.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void viewWritesAreVisibleTest() {
+        Account saved = accountDao.save(account(1L, 0, "acc1"));
+
+        saved.setAmount(new BigDecimal("8.9"));
+        saved.setNumber(null);
+        saved.setType(null);
+
+        Account found = accountDao.findById(saved.getId()).orElseThrow();
+        assertEquals(new BigDecimal("8.9"), found.getAmount());
+        assertNull(found.getNumber());
+        assertNull(found.getType());
+        assertSame(saved, accountDao.save(saved));
+    }
+
+    @Test
+    void findByAgreementIdAndTypeTest() {
+        Account first = accountDao.save(account(1L, 0, "acc1"));
+        Account second = accountDao.save(account(1L, 1, "acc2"));
+        accountDao.save(account(2L, 1, "acc3"));
+
+        assertEquals(List.of(first.getId(), second.getId()), ids(accountDao.findByAgreementId(1L)));
+        assertEquals(List.of(second.getId()), ids(accountDao.findByAgreementIdAndType(1L, 1)));
+        assertTrue(ids(accountDao.findByAgreementIdAndType(1L, 2)).isEmpty());
+        assertTrue(ids(accountDao.findByAgreementId(3L)).isEmpty());
+    }
+
+    @Test
+    void agreementChangeReindexTest() {
+        Account first = accountDao.save(account(1L, 0, "acc1"));
+        Account second = accountDao.save(account(1L, 0, "acc2"));
+        Account third = accountDao.save(account(1L, 0, "acc3"));
+
+        second.setAgreementId(2L);
+        accountDao.save(second);
+
+        assertEquals(List.of(first.getId(), third.getId()), ids(accountDao.findByAgreementId(1L)));
+        assertEquals(List.of(second.getId()), ids(accountDao.findByAgreementId(2L)));
+
+        second.setAgreementId(null);
+        assertTrue(ids(accountDao.findByAgreementId(2L)).isEmpty());
+        assertTrue(accountDao.findById(second.getId()).isPresent());
+    }
+
+    @Test
+    void saveWithExplicitIdTest() {
+        Account account = account(1L, 0, "acc1");
+        account.setId(100L);
+        accountDao.save(account);
+
+        account.setAmount(BigDecimal.ONE);
+        account.setAgreementId(2L);
+        accountDao.save(account);
+
+        Account found = accountDao.findById(100L).orElseThrow();
+        assertEquals(BigDecimal.ONE, found.getAmount());
+        assertEquals(List.of(100L), ids(accountDao.findByAgreementId(2L)));
+        assertEquals(1, accountDao.size());
+        assertTrue(accountDao.save(account(1L, 0, "acc2")).getId() > 100L);
+    }
+
+    @Test
+    void growsAcrossChunksTest() {
+        int count = 40_000;
+        for (int i = 0; i < count; i++) {
+            accountDao.save(account((long) i % 100, i % 3, "acc" + i));
+        }
+
+        assertEquals(count, accountDao.size());
+        assertEquals(count * 1000L, accountDao.totalMinorAmount());
+        assertEquals(count, ids(accountDao.findAll()).size());
+        assertEquals(count / 100, ids(accountDao.findByAgreementId(7L)).size());
+        Account last = accountDao.findById(ids(accountDao.findAll()).get(count - 1)).orElseThrow();
+        assertEquals("acc" + (count - 1), last.getNumber());
+    }
+
+    @Test
+    void streamAndPageTest() {
+        int count = 40_000;
+        for (int i = 0; i < count; i++) {
+            accountDao.save(account(1L, 0, "acc" + i));
+        }
+
+        assertEquals(count * 1000L, accountDao.streamAll().parallel().mapToLong(Account::getMinorAmount).sum());
+
+        int pages = 0;
+        int accounts = 0;
+        long previousId = 0;
+        for (AccountPage page = accountDao.findPage(AccountPage.FIRST, 1000); ;
+             page = accountDao.findPage(page.nextAfterId(), 1000)) {
+            pages++;
+            for (Account account : page.accounts()) {
+                assertTrue(account.getId() > previousId);
+                previousId = account.getId();
+                accounts++;
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+        }
+        assertEquals(count, accounts);
+        assertEquals(count / 1000 + 1, pages);
+    }
+
+    @Test
+    void concurrentTransfersConserveTotalTest() throws InterruptedException {
+        AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        List<Long> accountIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            accountIds.add(accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(1000)).getId());
+        }
+        long total = accountDao.totalMinorAmount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    accountService.makeTransfer(accountIds.get(random.nextInt(accountIds.size())),
+                            accountIds.get(random.nextInt(accountIds.size())),
+                            new BigDecimal(random.nextInt(1, 100)));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(total, accountDao.totalMinorAmount());
+    }
+
+    @Test
+    void readsWhileGrowingTest() throws InterruptedException {
+        int accounts = 100_000;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < accounts; i++) {
+                accountDao.save(account(1L, 0, null));
+            }
+        });
+        writer.start();
+        int previous = 0;
+        while (writer.isAlive()) {
+            int seen = ids(accountDao.findByAgreementIdAndType(1L, 0)).size();
+            assertTrue(seen >= previous);
+            previous = seen;
+            assertEquals(0, accountDao.totalMinorAmount() % 1000);
+        }
+        writer.join();
+
+        assertEquals(accounts, ids(accountDao.findByAgreementId(1L)).size());
+        assertEquals(accounts * 1000L, accountDao.totalMinorAmount());
+    }
+
+    private static Account account(Long agreementId, Integer type, String number) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setNumber(number);
+        account.setAmount(BigDecimal.TEN);
+        return account;
+    }
+
+    private static List<Long> ids(Iterable<Account> accounts) {
+        List<Long> result = new ArrayList<>();
+        accounts.forEach(account -> result.add(account.getId()));
+        return result;
+    }
+}
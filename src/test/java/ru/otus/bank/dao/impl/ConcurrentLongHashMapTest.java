@@ -0,0 +1,130 @@
+package ru.otus.bank.dao.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLongHashMapTest {
+
+    @Test
+    void putAndGetTest() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>(4, 4);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(map.put(i * 7L - 500, "v" + i));
+        }
+        map.put(0, "zero");
+        assertEquals("v1", map.put(-493, "replaced"));
+
+        assertEquals(10_001, map.size());
+        assertEquals("zero", map.get(0));
+        assertEquals("replaced", map.get(-493));
+        assertEquals("v9999", map.get(9_999 * 7L - 500));
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(1));
+        assertThrows(IllegalArgumentException.class, () -> map.put(Long.MIN_VALUE, "reserved"));
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    void valuesTest() {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>();
+        for (long key = 1; key <= 1_000; key++) {
+            map.put(key, key);
+        }
+
+        Set<Long> iterated = new HashSet<>();
+        map.values().forEach(iterated::add);
+
+        assertEquals(1_000, map.values().size());
+        assertEquals(1_000, iterated.size());
+        assertEquals(iterated, map.values().parallelStream().collect(Collectors.toSet()));
+    }
+
+    @Test
+    void spliteratorTest() {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>(16, 4);
+        for (long key = 1; key <= 10_000; key++) {
+            map.put(key, key);
+        }
+
+        List<Spliterator<Long>> leaves = new ArrayList<>();
+        Deque<Spliterator<Long>> pending = new ArrayDeque<>();
+        pending.push(map.values().spliterator());
+        while (!pending.isEmpty()) {
+            Spliterator<Long> spliterator = pending.pop();
+            Spliterator<Long> prefix = spliterator.trySplit();
+            if (prefix == null) {
+                leaves.add(spliterator);
+            } else {
+                pending.push(prefix);
+                pending.push(spliterator);
+            }
+        }
+
+        assertTrue(leaves.size() > 4, "split below segment level: " + leaves.size());
+        Set<Long> seen = new HashSet<>();
+        for (Spliterator<Long> leaf : leaves) {
+            leaf.forEachRemaining(value -> assertTrue(seen.add(value), "seen twice: " + value));
+        }
+        assertEquals(10_000, seen.size());
+    }
+
+    @Test
+    void concurrentPutAndGetTest() throws Exception {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>(16, 8);
+        int threads = 4;
+        int keysPerThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<Boolean> reader = executor.submit(() -> {
+                start.await();
+                boolean consistent = true;
+                for (int round = 0; round < 20; round++) {
+                    for (long key = 0; key < threads * keysPerThread; key++) {
+                        Long value = map.get(key);
+                        consistent &= value == null || value == key;
+                    }
+                }
+                return consistent;
+            });
+            Future<?>[] writers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                long from = (long) t * keysPerThread;
+                writers[t] = executor.submit(() -> {
+                    start.await();
+                    for (long key = from; key < from + keysPerThread; key++) {
+                        map.put(key, key);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+
+            assertTrue(reader.get());
+            assertEquals(threads * keysPerThread, map.size());
+            for (long key = 0; key < threads * keysPerThread; key++) {
+                assertEquals(key, map.get(key));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.otus.bank.dao.mapped;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.dao.AccountPage;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedAccountDaoTest {
+
+    @TempDir
+    Path directory;
+
+    MappedAccountDao accountDao;
+
+    @AfterEach
+    void close() throws IOException {
+        if (accountDao != null) {
+            accountDao.close();
+        }
+    }
+
+    @Test
+    void saveAndFindTest() {
+        accountDao = new MappedAccountDao(directory);
+
+        Account saved = accountDao.save(account(1L, 0, "acc1", "10.5"));
+        accountDao.save(account(1L, 1, "acc2", "3"));
+        accountDao.save(account(2L, 0, null, "0"));
+
+        Account found = accountDao.findById(saved.getId()).orElseThrow();
+        assertEquals(1L, found.getId());
+        assertEquals(new BigDecimal("10.5"), found.getAmount());
+        assertEquals(0, found.getType());
+        assertEquals("acc1", found.getNumber());
+        assertEquals(1L, found.getAgreementId());
+        assertNull(accountDao.findById(3L).orElseThrow().getNumber());
+        assertTrue(accountDao.findById(42L).isEmpty());
+        assertEquals(List.of("acc1", "acc2"), numbers(accountDao.findByAgreementId(1L)));
+        assertEquals(List.of("acc2"), numbers(accountDao.findByAgreementIdAndType(1L, 1)));
+        assertEquals(3, accountDao.size());
+    }
+
+    @Test
+    void viewsWriteInPlaceTest() {
+        accountDao = new MappedAccountDao(directory);
+        Long id = accountDao.save(account(1L, 0, "acc1", "10")).getId();
+
+        Account view = accountDao.findById(id).orElseThrow();
+        view.setMinorAmount(250);
+        view.setNumber("renamed");
+        view.setAgreementId(2L);
+
+        assertSame(view, accountDao.save(view));
+        Account reloaded = accountDao.findById(id).orElseThrow();
+        assertEquals(250, reloaded.getMinorAmount());
+        assertEquals("renamed", reloaded.getNumber());
+        assertFalse(accountDao.findByAgreementId(1L).iterator().hasNext());
+        assertEquals(List.of("renamed"), numbers(accountDao.findByAgreementId(2L)));
+
+        assertEquals(300, accountDao.addToBalance(id, 50));
+        assertTrue(accountDao.compareAndSetBalance(id, 300, 10));
+        assertFalse(accountDao.compareAndSetBalance(id, 300, 20));
+        assertEquals(10, reloaded.getMinorAmount());
+    }
+
+    @Test
+    void reopenTest() throws IOException {
+        accountDao = new MappedAccountDao(directory, 4, 16);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(accountDao.save(account((long) i % 3, i % 2, "account-" + i, String.valueOf(i))).getId());
+        }
+        accountDao.findById(ids.get(4)).orElseThrow().setMinorAmount(12345);
+        accountDao.close();
+
+        accountDao = new MappedAccountDao(directory);
+
+        assertEquals(10, accountDao.size());
+        Account account = accountDao.findById(ids.get(4)).orElseThrow();
+        assertEquals(12345, account.getMinorAmount());
+        assertEquals("account-4", account.getNumber());
+        assertEquals(List.of("account-0", "account-3", "account-6", "account-9"),
+                numbers(accountDao.findByAgreementId(0L)));
+        assertEquals(11, accountDao.save(account(0L, 0, "new", "1")).getId());
+        assertTrue(Files.size(directory.resolve("accounts.dat")) >= MappedAccountDao.HEADER_SIZE
+                + 3 * 4 * MappedAccountDao.RECORD_SIZE);
+    }
+
+    @Test
+    void streamAndPageTest() {
+        accountDao = new MappedAccountDao(directory, 1024, 1 << 16);
+        for (int i = 0; i < 5000; i++) {
+            accountDao.save(account(1L, 0, "acc" + i, "1"));
+        }
+
+        assertEquals(500_000, accountDao.streamAll().parallel().mapToLong(Account::getMinorAmount).sum());
+        assertEquals(500_000, accountDao.totalMinorAmount());
+        AccountPage page = accountDao.findPage(4990, 100);
+        assertEquals(10, page.accounts().size());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void concurrentTransfersConserveTotalTest() throws InterruptedException {
+        accountDao = new MappedAccountDao(directory, 16, 1024);
+        AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(100)).getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 10_000; j++) {
+                    accountService.makeTransfer(ids.get(random.nextInt(ids.size())),
+                            ids.get(random.nextInt(ids.size())), new BigDecimal(random.nextInt(1, 20)));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(400_000, accountDao.totalMinorAmount());
+    }
+
+    private static List<String> numbers(Iterable<Account> accounts) {
+        List<Account> list = new ArrayList<>();
+        accounts.forEach(list::add);
+        return list.stream().map(Account::getNumber).collect(Collectors.toList());
+    }
+
+    private static Account account(Long agreementId, Integer type, String number, String amount) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setNumber(number);
+        account.setAmount(new BigDecimal(amount));
+        return account;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.otus.bank.dao.mapped;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapLongIntIndexTest {
+
+    @Test
+    void putAndGetTest() {
+        OffHeapLongIntIndex index = new OffHeapLongIntIndex(4);
+
+        for (int i = 0; i < 10_000; i++) {
+            index.put(i * 7L - 500, i);
+        }
+        index.put(0, 42);
+        index.put(Long.MAX_VALUE, 1);
+
+        assertEquals(10_002, index.size());
+        assertEquals(42, index.get(0));
+        assertEquals(9_999, index.get(9_999 * 7L - 500));
+        assertEquals(1, index.get(Long.MAX_VALUE));
+        assertEquals(OffHeapLongIntIndex.MISSING, index.get(1));
+        assertThrows(IllegalArgumentException.class, () -> index.put(Long.MIN_VALUE, 1));
+    }
+}
@@ -0,0 +1,177 @@
+package ru.otus.bank.dao.mvcc;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionedAccountDaoTest {
+
+    VersionedAccountDao accountDao = new VersionedAccountDao(new AccountDaoImpl());
+
+    AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+    Agreement agreement = new Agreement();
+
+    @Test
+    void snapshotIgnoresLaterCommitsTest() {
+        agreement.setId(1L);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 0, BigDecimal.ZERO).getId();
+
+        try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+            accountService.makeTransfer(source, destination, new BigDecimal(30));
+            accountService.addAccount(agreement, "acc3", 0, BigDecimal.TEN);
+
+            assertEquals(new BigDecimal(100), snapshot.findById(source).orElseThrow().getAmount());
+            assertEquals(BigDecimal.ZERO, snapshot.findById(destination).orElseThrow().getAmount());
+            assertEquals(2, snapshot.findAll().size());
+            assertEquals(2, snapshot.findByAgreementId(1L).size());
+            assertEquals(10000, snapshot.totalMinorAmount());
+        }
+
+        try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+            assertEquals(new BigDecimal(70), snapshot.findById(source).orElseThrow().getAmount());
+            assertEquals(11000, snapshot.totalMinorAmount());
+        }
+    }
+
+    @Test
+    void snapshotCopiesAreDetachedTest() {
+        agreement.setId(1L);
+        Long id = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+
+        try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+            Account copy = snapshot.findById(id).orElseThrow();
+            copy.setAmount(BigDecimal.ONE);
+
+            assertEquals(new BigDecimal(100), snapshot.findById(id).orElseThrow().getAmount());
+            assertEquals(new BigDecimal(100), accountDao.findById(id).orElseThrow().getAmount());
+        }
+    }
+
+    @Test
+    void oldVersionsAreCollectedTest() {
+        agreement.setId(1L);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 0, BigDecimal.ZERO).getId();
+
+        AccountSnapshot snapshot = accountDao.openSnapshot();
+        for (int i = 0; i < 10; i++) {
+            accountService.makeTransfer(source, destination, BigDecimal.ONE);
+        }
+        assertEquals(11, accountDao.versionCount(source));
+
+        snapshot.close();
+        accountService.makeTransfer(source, destination, BigDecimal.ONE);
+
+        assertEquals(1, accountDao.versionCount(source));
+        assertEquals(new BigDecimal(89), accountDao.openSnapshot().findById(source).orElseThrow().getAmount());
+    }
+
+    @Test
+    void existingAccountsAreVersionedTest() {
+        AccountDaoImpl delegate = new AccountDaoImpl();
+        Account account = new Account();
+        account.setAmount(BigDecimal.TEN);
+        delegate.save(account);
+
+        VersionedAccountDao versioned = new VersionedAccountDao(delegate);
+
+        try (AccountSnapshot snapshot = versioned.openSnapshot()) {
+            assertEquals(BigDecimal.TEN, snapshot.findById(account.getId()).orElseThrow().getAmount());
+        }
+    }
+
+    @Test
+    void snapshotFindsAccountsByAgreementAsOfItsVersionTest() {
+        agreement.setId(1L);
+        Account moved = accountService.addAccount(agreement, "acc1", 0, BigDecimal.TEN);
+        accountService.addAccount(agreement, "acc2", 0, BigDecimal.TEN);
+        Agreement other = new Agreement();
+        other.setId(2L);
+        accountService.addAccount(other, "acc3", 0, BigDecimal.TEN);
+
+        try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+            moved.setAgreementId(2L);
+            accountDao.save(moved);
+
+            assertEquals(2, snapshot.findByAgreementId(1L).size());
+            assertEquals(1, snapshot.findByAgreementId(2L).size());
+            assertEquals(0, snapshot.findByAgreementId(3L).size());
+        }
+        try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+            assertEquals(1, snapshot.findByAgreementId(1L).size());
+            assertEquals(2, snapshot.findByAgreementId(2L).size());
+        }
+    }
+
+    @Test
+    void concurrentCommitsArePublishedInOrderTest() throws InterruptedException {
+        int threads = 4;
+        int saves = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            executor.execute(() -> {
+                Account account = new Account();
+                account.setAmount(BigDecimal.ZERO);
+                for (int i = 1; i <= saves; i++) {
+                    account.setAmount(new BigDecimal(i));
+                    accountDao.save(account);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(threads * saves, accountDao.currentVersion());
+        try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+            assertEquals(threads * saves * 100L, snapshot.totalMinorAmount());
+        }
+    }
+
+    @Test
+    void snapshotTotalsAreConsistentUnderTransfersTest() throws InterruptedException {
+        agreement.setId(1L);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(1000)).getId());
+        }
+        long total = 50 * 1000 * 100L;
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    accountService.makeTransfer(ids.get(random.nextInt(ids.size())),
+                            ids.get(random.nextInt(ids.size())), new BigDecimal(random.nextInt(1, 100)));
+                }
+            });
+        }
+        try {
+            for (int i = 0; i < 500; i++) {
+                try (AccountSnapshot snapshot = accountDao.openSnapshot()) {
+                    assertEquals(total, snapshot.totalMinorAmount());
+                }
+            }
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+}
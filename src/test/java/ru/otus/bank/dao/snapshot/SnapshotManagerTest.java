@@ -0,0 +1,134 @@
+package ru.otus.bank.dao.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.impl.AgreementDaoImpl;
+import ru.otus.bank.dao.wal.JournaledAccountDao;
+import ru.otus.bank.dao.wal.JournaledAgreementDao;
+import ru.otus.bank.dao.wal.WriteAheadLog;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SnapshotManagerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotWithLogTailTest() {
+        Path snapshot = dir.resolve("bank.snapshot");
+        Long firstId;
+        Long secondId;
+        try (WriteAheadLog accountLog = openLog("accounts.wal");
+             WriteAheadLog agreementLog = openLog("agreements.wal")) {
+            JournaledAgreementDao agreementDao = new JournaledAgreementDao(new AgreementDaoImpl(), agreementLog);
+            JournaledAccountDao accountDao = new JournaledAccountDao(new AccountDaoImpl(), accountLog);
+            AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+            Agreement agreement = agreementDao.addAgreement("Client1");
+            firstId = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            secondId = accountService.addAccount(agreement, "\u0441\u0447\u0435\u04512", 1, new BigDecimal("0.5")).getId();
+            accountService.makeTransfer(firstId, secondId, BigDecimal.TEN);
+
+            SnapshotManager.SnapshotInfo info = new SnapshotManager(snapshot, accountDao, accountLog,
+                    agreementDao, agreementLog).takeSnapshot();
+            assertEquals(2, info.accountCount());
+            assertEquals(1, info.agreementCount());
+            assertFalse(Files.exists(dir.resolve("accounts.wal")));
+            assertFalse(Files.exists(dir.resolve("agreements.wal")));
+
+            accountService.makeTransfer(firstId, secondId, new BigDecimal("0.25"));
+            agreementDao.addAgreement("Client2");
+        }
+
+        try (WriteAheadLog accountLog = openLog("accounts.wal");
+             WriteAheadLog agreementLog = openLog("agreements.wal")) {
+            AccountDaoImpl accounts = new AccountDaoImpl();
+            AgreementDaoImpl agreements = new AgreementDaoImpl();
+            SnapshotManager.SnapshotInfo info = SnapshotManager.load(snapshot, accounts, agreements).orElseThrow();
+
+            Account first = accounts.findById(firstId).orElseThrow();
+            assertEquals(new BigDecimal(90), first.getAmount());
+
+            JournaledAccountDao accountDao = new JournaledAccountDao(accounts, accountLog, info.accountLogPosition());
+            JournaledAgreementDao agreementDao = new JournaledAgreementDao(agreements, agreementLog,
+                    info.agreementLogPosition());
+
+            first = accountDao.findById(firstId).orElseThrow();
+            Account second = accountDao.findById(secondId).orElseThrow();
+            assertEquals(new BigDecimal("89.75"), first.getAmount());
+            assertEquals(new BigDecimal("10.75"), second.getAmount());
+            assertEquals("\u0441\u0447\u0435\u04512", second.getNumber());
+            assertEquals(1, second.getType());
+            assertEquals(1L, second.getAgreementId());
+            assertTrue(agreementDao.findByName("Client1").isPresent());
+            assertTrue(agreementDao.findByName("Client2").isPresent());
+        }
+    }
+
+    @Test
+    void missingSnapshotTest() {
+        assertTrue(SnapshotManager.load(dir.resolve("none"), new AccountDaoImpl(), new AgreementDaoImpl()).isEmpty());
+    }
+
+    @Test
+    void loadReservesAccountsTest() {
+        Path snapshot = dir.resolve("bank.snapshot");
+        try (WriteAheadLog accountLog = openLog("accounts.wal");
+             WriteAheadLog agreementLog = openLog("agreements.wal")) {
+            AccountDaoImpl accountDao = new AccountDaoImpl();
+            AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+            Agreement agreement = new Agreement();
+            agreement.setId(1L);
+            for (int i = 0; i < 3; i++) {
+                accountService.addAccount(agreement, "acc" + i, 0, BigDecimal.ONE);
+            }
+            new SnapshotManager(snapshot, accountDao, accountLog, new AgreementDaoImpl(), agreementLog).takeSnapshot();
+        }
+
+        AccountDaoImpl accounts = spy(new AccountDaoImpl());
+        SnapshotManager.load(snapshot, accounts, new AgreementDaoImpl());
+
+        InOrder inOrder = inOrder(accounts);
+        inOrder.verify(accounts).reserve(3);
+        inOrder.verify(accounts, times(3)).save(any());
+    }
+
+    @Test
+    void scheduledSnapshotsSurviveFailureTest() throws InterruptedException {
+        Path snapshot = dir.resolve("bank.snapshot");
+        AccountDao accountDao = mock(AccountDao.class);
+        when(accountDao.findAll()).thenThrow(new IllegalStateException("Storage failure")).thenReturn(List.of());
+        try (WriteAheadLog accountLog = openLog("accounts.wal");
+             WriteAheadLog agreementLog = openLog("agreements.wal");
+             SnapshotManager snapshotManager = new SnapshotManager(snapshot, accountDao, accountLog,
+                     new AgreementDaoImpl(), agreementLog)) {
+            snapshotManager.schedule(Duration.ofMillis(10));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!Files.exists(snapshot) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        assertTrue(Files.exists(snapshot));
+    }
+
+    private WriteAheadLog openLog(String name) {
+        return new WriteAheadLog(dir.resolve(name), WriteAheadLog.Durability.STRICT, Duration.ZERO);
+    }
+}
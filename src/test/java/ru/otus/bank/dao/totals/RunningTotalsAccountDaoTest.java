@@ -0,0 +1,145 @@
+package ru.otus.bank.dao.totals;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RunningTotalsAccountDaoTest {
+
+    RunningTotalsAccountDao accountDao = new RunningTotalsAccountDao(new AccountDaoImpl());
+
+    AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+    @Test
+    void totalsFollowSavesTest() {
+        Long source = accountService.addAccount(agreement(1L), "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement(2L), "acc2", 1, BigDecimal.TEN).getId();
+
+        accountService.makeTransfer(source, destination, new BigDecimal(30), BigDecimal.ONE);
+
+        assertEquals(2, accountDao.count());
+        assertEquals(10900, accountDao.totalMinorAmount());
+        assertEquals(1, accountDao.countByAgreement(1L));
+        assertEquals(6900, accountDao.totalMinorAmountByAgreement(1L));
+        assertEquals(4000, accountDao.totalMinorAmountByAgreement(2L));
+        assertEquals(4000, accountDao.totalMinorAmountByType(1));
+        assertEquals(0, accountDao.countByType(5));
+        assertEquals(0, accountDao.totalMinorAmountByAgreement(3L));
+    }
+
+    @Test
+    void movedAccountIsRecountedTest() {
+        Account account = accountService.addAccount(agreement(1L), "acc1", 0, new BigDecimal(100));
+
+        account.setAgreementId(2L);
+        account.setType(1);
+        accountDao.save(account);
+
+        assertEquals(1, accountDao.count());
+        assertEquals(0, accountDao.countByAgreement(1L));
+        assertEquals(0, accountDao.totalMinorAmountByAgreement(1L));
+        assertEquals(10000, accountDao.totalMinorAmountByAgreement(2L));
+        assertEquals(0, accountDao.countByType(0));
+        assertEquals(1, accountDao.countByType(1));
+    }
+
+    @Test
+    void abortedBatchIsNotCountedTest() {
+        Account account = accountService.addAccount(agreement(1L), "acc1", 0, new BigDecimal(100));
+
+        accountDao.beginBatch();
+        account.setAmount(BigDecimal.ONE);
+        accountDao.save(account);
+        assertEquals(10000, accountDao.totalMinorAmount());
+        accountDao.abortBatch();
+
+        assertEquals(10000, accountDao.totalMinorAmount());
+
+        accountDao.beginBatch();
+        accountDao.save(account);
+        accountDao.commitBatch();
+
+        assertEquals(100, accountDao.totalMinorAmount());
+    }
+
+    @Test
+    void batchesAreForwardedTest() {
+        AccountDaoImpl delegate = spy(new AccountDaoImpl());
+        RunningTotalsAccountDao totals = new RunningTotalsAccountDao(delegate);
+        AccountServiceImpl service = new AccountServiceImpl(totals);
+        Long source = service.addAccount(agreement(1L), "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = service.addAccount(agreement(1L), "acc2", 0, BigDecimal.ZERO).getId();
+
+        service.makeTransfer(source, destination, BigDecimal.TEN);
+        totals.beginBatch();
+        totals.abortBatch();
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).beginBatch();
+        inOrder.verify(delegate, times(2)).save(any());
+        inOrder.verify(delegate).commitBatch();
+        inOrder.verify(delegate).beginBatch();
+        inOrder.verify(delegate).abortBatch();
+    }
+
+    @Test
+    void existingAccountsAreCountedOnConstructionTest() {
+        AccountDaoImpl delegate = new AccountDaoImpl();
+        new AccountServiceImpl(delegate).addAccount(agreement(1L), "acc1", 0, new BigDecimal(100));
+
+        RunningTotalsAccountDao totals = new RunningTotalsAccountDao(delegate);
+
+        assertEquals(1, totals.count());
+        assertEquals(10000, totals.totalMinorAmountByAgreement(1L));
+    }
+
+    @Test
+    void concurrentTransfersKeepTotalTest() throws InterruptedException {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(accountService.addAccount(agreement(i % 3L), "acc" + i, i % 2, new BigDecimal(100)).getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 2000; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Long source = ids.get(random.nextInt(ids.size()));
+                Long destination = ids.get(random.nextInt(ids.size()));
+                if (!source.equals(destination)) {
+                    accountService.makeTransfer(source, destination, BigDecimal.ONE);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(100000, accountDao.totalMinorAmount());
+        long byAgreement = 0;
+        for (long agreementId = 0; agreementId < 3; agreementId++) {
+            byAgreement += accountDao.totalMinorAmountByAgreement(agreementId);
+        }
+        assertEquals(100000, byAgreement);
+        assertEquals(100000, accountDao.totalMinorAmountByType(0) + accountDao.totalMinorAmountByType(1));
+    }
+
+    private static Agreement agreement(Long id) {
+        Agreement agreement = new Agreement();
+        agreement.setId(id);
+        return agreement;
+    }
+}
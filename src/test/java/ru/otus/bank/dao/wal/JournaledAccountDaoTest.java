@@ -0,0 +1,88 @@
+package ru.otus.bank.dao.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.impl.AgreementDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.impl.AgreementServiceImpl;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledAccountDaoTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoveryTest() {
+        Long firstId;
+        Long secondId;
+        try (WriteAheadLog accountLog = openLog("accounts.wal");
+             WriteAheadLog agreementLog = openLog("agreements.wal")) {
+            AgreementServiceImpl agreementService = new AgreementServiceImpl(
+                    new JournaledAgreementDao(new AgreementDaoImpl(), agreementLog));
+            AccountServiceImpl accountService = new AccountServiceImpl(
+                    new JournaledAccountDao(new AccountDaoImpl(), accountLog));
+
+            Agreement agreement = agreementService.addAgreement("Client1");
+            firstId = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            secondId = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+
+            assertTrue(accountService.makeTransfer(firstId, secondId, new BigDecimal("12.5")));
+            assertFalse(accountService.makeTransfer(firstId, secondId, new BigDecimal(1000)));
+        }
+
+        try (WriteAheadLog accountLog = openLog("accounts.wal");
+             WriteAheadLog agreementLog = openLog("agreements.wal")) {
+            AgreementServiceImpl agreementService = new AgreementServiceImpl(
+                    new JournaledAgreementDao(new AgreementDaoImpl(), agreementLog));
+            JournaledAccountDao accountDao = new JournaledAccountDao(new AccountDaoImpl(), accountLog);
+            AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+            Agreement agreement = agreementService.findByName("Client1").orElseThrow();
+            Account first = accountDao.findById(firstId).orElseThrow();
+            Account second = accountDao.findById(secondId).orElseThrow();
+
+            assertEquals(new BigDecimal("87.5"), first.getAmount());
+            assertEquals(new BigDecimal("12.5"), second.getAmount());
+            assertEquals("acc2", second.getNumber());
+            assertEquals(2, accountService.getAccounts(agreement).size());
+
+            Account third = accountService.addAccount(agreement, "acc3", 2, BigDecimal.ZERO);
+            assertTrue(third.getId() > secondId);
+            assertNotEquals(agreement.getId(), agreementService.addAgreement("Client2").getId());
+        }
+    }
+
+    @Test
+    void strictBatchIsSyncedOnAwaitDurableTest() {
+        try (WriteAheadLog log = new WriteAheadLog(dir.resolve("accounts.wal"), WriteAheadLog.Durability.STRICT,
+                Duration.ofMillis(500))) {
+            JournaledAccountDao accountDao = new JournaledAccountDao(new AccountDaoImpl(), log);
+            assertTrue(accountDao.isDurable());
+            Account account = new Account();
+            account.setAmount(BigDecimal.TEN);
+            accountDao.save(account);
+            long durable = log.durablePosition();
+
+            accountDao.beginBatch();
+            accountDao.save(account);
+            accountDao.commitBatch();
+
+            assertEquals(durable, log.durablePosition());
+            accountDao.awaitDurable();
+            assertTrue(log.durablePosition() > durable);
+        }
+    }
+
+    private WriteAheadLog openLog(String name) {
+        return new WriteAheadLog(dir.resolve(name), WriteAheadLog.Durability.STRICT, Duration.ZERO);
+    }
+}
@@ -0,0 +1,165 @@
+package ru.otus.bank.dao.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayAfterReopenTest() {
+        Path file = dir.resolve("test.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            log.append(bytes("first"));
+            log.append(bytes("second"));
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            assertEquals(List.of("first", "second"), replay(log, 0));
+            long position = log.append(bytes("third"));
+            assertEquals(List.of(), replay(log, position));
+        }
+    }
+
+    @Test
+    void relaxedDurabilityFlushesOnCloseTest() {
+        Path file = dir.resolve("test.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.RELAXED, Duration.ofSeconds(10))) {
+            for (int i = 0; i < 1000; i++) {
+                log.append(bytes("record" + i));
+            }
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.RELAXED, Duration.ofSeconds(10))) {
+            List<String> records = replay(log, 0);
+            assertEquals(1000, records.size());
+            assertEquals("record999", records.get(999));
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedTest() throws IOException {
+        Path file = dir.resolve("test.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            log.append(bytes("first"));
+            log.append(bytes("second"));
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 2);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            assertEquals(List.of("first"), replay(log, 0));
+            log.append(bytes("third"));
+            assertEquals(List.of("first", "third"), replay(log, 0));
+        }
+    }
+
+    @Test
+    void corruptedRecordIsDroppedTest() throws IOException {
+        Path file = dir.resolve("test.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            log.append(bytes("first"));
+            log.append(bytes("second"));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")), Files.size(file) - 1);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            assertEquals(List.of("first"), replay(log, 0));
+        }
+    }
+
+    @Test
+    void concurrentAppendTest() throws InterruptedException {
+        Path file = dir.resolve("test.wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ofMillis(1))) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 2000; i++) {
+                int record = i;
+                executor.execute(() -> log.append(bytes("record" + record)));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+            assertEquals(2000, replay(log, 0).size());
+        }
+    }
+
+    @Test
+    void discardBeforeTest() {
+        Path file = dir.resolve("test.wal");
+        long position;
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            log.append(bytes("first"));
+            log.append(bytes("second"));
+            position = log.sync();
+            log.discardBefore(position);
+            log.append(bytes("third"));
+
+            assertFalse(Files.exists(file));
+            assertTrue(Files.exists(dir.resolve("test.wal." + position)));
+            assertEquals(List.of("third"), replay(log, position));
+            assertThrows(IllegalStateException.class, () -> replay(log, 0));
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            assertEquals(List.of("third"), replay(log, position));
+            log.append(bytes("fourth"));
+            assertEquals(List.of("third", "fourth"), replay(log, position));
+        }
+    }
+
+    @Test
+    void tornTailOfLastSegmentIsTruncatedTest() throws IOException {
+        Path file = dir.resolve("test.wal");
+        long position;
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            log.append(bytes("first"));
+            position = log.sync();
+            log.discardBefore(0);
+            log.append(bytes("second"));
+            log.append(bytes("third"));
+        }
+        Path segment = dir.resolve("test.wal." + position);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(segment) - 2);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            assertEquals(List.of("first", "second"), replay(log, 0));
+            log.append(bytes("fourth"));
+            assertEquals(List.of("first", "second", "fourth"), replay(log, 0));
+        }
+    }
+
+    private static List<String> replay(WriteAheadLog log, long position) {
+        List<String> records = new ArrayList<>();
+        log.replay(position, record -> records.add(StandardCharsets.UTF_8.decode(record).toString()));
+        return records;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
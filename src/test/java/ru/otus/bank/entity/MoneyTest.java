@@ -0,0 +1,79 @@
+package ru.otus.bank.entity;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @ParameterizedTest
+    @CsvSource({"0, 0", "10, 1000", "8.9, 890", "0.01, 1", "-1.5, -150", "1.000, 100"})
+    void toMinorTest(String amount, long minor) {
+        assertEquals(minor, Money.toMinor(new BigDecimal(amount)));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, 0", "1000, 10", "890, 8.9", "1, 0.01", "-150, -1.5"})
+    void toBigDecimalTest(long minor, String amount) {
+        assertEquals(new BigDecimal(amount), Money.toBigDecimal(minor));
+    }
+
+    @Test
+    void precisionLossTest() {
+        assertThrows(ArithmeticException.class, () -> Money.toMinor(new BigDecimal("0.001")));
+        assertEquals(2, Money.toMinor(new BigDecimal("0.015"), RoundingMode.HALF_EVEN));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"0, true", "8.9, true", "1.000, true", "-0.01, true", "0.001, false", "92233720368547758.07, true",
+            "92233720368547758.08, false", "-92233720368547758.09, false"})
+    void isRepresentableTest(String amount, boolean representable) {
+        assertEquals(representable, Money.isRepresentable(new BigDecimal(amount)));
+    }
+
+    @Test
+    void overflowTest() {
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.subtract(Long.MIN_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.toMinor(BigDecimal.valueOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void valueTest() {
+        Money money = Money.of(new BigDecimal("12.3"));
+
+        assertEquals(1230, money.minor());
+        assertEquals(Money.ofMinor(1330), money.plus(Money.of(BigDecimal.ONE)));
+        assertEquals(-1, Money.ZERO.minus(Money.ofMinor(1)).signum());
+        assertEquals("12.30", money.toString());
+    }
+
+    @Test
+    void multiplyTest() {
+        assertEquals(2, Money.multiply(250, 100, 10_000));
+        assertEquals(4, Money.multiply(350, 100, 10_000));
+        assertEquals(-2, Money.multiply(-250, 100, 10_000));
+        assertEquals(110, Money.multiply(1100, new BigDecimal("0.1")));
+        assertEquals(2, Money.multiply(25, new BigDecimal("0.1")));
+        assertEquals(3000, Money.multiply(1000, new BigDecimal("3")));
+        assertEquals(Money.toMinor(new BigDecimal("12.34").multiply(new BigDecimal("0.0125"))
+                        .setScale(Money.SCALE, RoundingMode.HALF_EVEN)),
+                Money.multiply(1234, new BigDecimal("0.0125")));
+        assertThrows(ArithmeticException.class, () -> Money.multiply(1, new BigDecimal("1E-19")));
+    }
+
+    @Test
+    void isRateTest() {
+        assertTrue(Money.isRate(new BigDecimal("0.0125")));
+        assertTrue(Money.isRate(new BigDecimal("1E+3")));
+        assertTrue(Money.isRate(new BigDecimal("1E-18")));
+        assertFalse(Money.isRate(new BigDecimal("1E-19")));
+        assertFalse(Money.isRate(new BigDecimal("1E+19")));
+        assertFalse(Money.isRate(new BigDecimal("10.000000000000000001")));
+    }
+}
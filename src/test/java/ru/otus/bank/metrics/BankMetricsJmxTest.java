@@ -0,0 +1,36 @@
+package ru.otus.bank.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BankMetricsJmxTest {
+
+    @Test
+    void attributesTest() throws Exception {
+        RecordingBankMetrics metrics = new RecordingBankMetrics();
+        metrics.transferCompleted(1_000);
+        metrics.transferRejected(RejectReason.INSUFFICIENT_FUNDS, 3_000);
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+
+        ObjectName name = BankMetricsJmx.register(metrics, server, new ObjectName(BankMetricsJmx.DEFAULT_NAME));
+
+        TabularData counters = (TabularData) server.getAttribute(name, "Counters");
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        assertEquals(2L, valueOf(counters, "transfer.attempted"));
+        assertEquals(1L, valueOf(counters, "transfer.rejected.INSUFFICIENT_FUNDS"));
+        assertEquals(2L, valueOf(latencies, "transfer.count"));
+        assertEquals(3_000L, valueOf(latencies, "transfer.max"));
+    }
+
+    private static Object valueOf(TabularData table, String key) {
+        CompositeData row = table.get(new Object[]{key});
+        return row.get("value");
+    }
+}
@@ -0,0 +1,80 @@
+package ru.otus.bank.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void bucketsTest() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(31, LatencyHistogram.bucketOf(31));
+        assertEquals(32, LatencyHistogram.bucketOf(32));
+        assertEquals(63, LatencyHistogram.bucketOf(63));
+        assertEquals(64, LatencyHistogram.bucketOf(64));
+        assertEquals(64, LatencyHistogram.bucketOf(65));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        for (long value : new long[]{1, 100, 1_000, 123_456, 10_000_000_000L}) {
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / 32);
+        }
+    }
+
+    @Test
+    void percentilesTest() {
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        histogram.record(-5);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(1001, snapshot.count());
+        assertEquals(1_000_000, snapshot.max());
+        assertEquals(0, snapshot.percentile(0));
+        assertEquals(500_000, snapshot.percentile(50), 500_000 / 32);
+        assertEquals(990_000, snapshot.percentile(99), 990_000 / 32);
+        assertEquals(1_000_000, snapshot.percentile(100));
+        assertEquals(500_500_000.0 / 1001, snapshot.mean(), 0.001);
+    }
+
+    @Test
+    void emptyTest() {
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.percentile(99));
+        assertEquals(0, snapshot.mean());
+    }
+
+    @Test
+    void threadsAreMergedTest() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.record(j);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(40_000, histogram.snapshot().count());
+
+        Thread ended = new Thread(() -> histogram.record(5));
+        ended.start();
+        ended.join();
+
+        assertEquals(40_001, histogram.snapshot().count());
+        assertEquals(40_001, histogram.snapshot().count());
+    }
+}
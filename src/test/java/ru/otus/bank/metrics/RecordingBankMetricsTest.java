@@ -0,0 +1,128 @@
+package ru.otus.bank.metrics;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.impl.PaymentProcessorImpl;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingBankMetricsTest {
+
+    RecordingBankMetrics metrics = new RecordingBankMetrics();
+
+    AccountServiceImpl accountService = new AccountServiceImpl(new MeteredAccountDao(new AccountDaoImpl(), metrics),
+            metrics);
+
+    Agreement agreement = new Agreement();
+
+    @Test
+    void transfersTest() {
+        agreement.setId(1L);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+
+        assertTrue(accountService.makeTransfer(source, destination, BigDecimal.TEN));
+        assertFalse(accountService.makeTransfer(source, destination, new BigDecimal(1000)));
+        assertFalse(accountService.makeTransfer(source, destination, BigDecimal.ZERO));
+        assertThrows(AccountException.class, () -> accountService.makeTransfer(source, 42L, BigDecimal.ONE));
+        assertTrue(accountService.charge(source, BigDecimal.ONE));
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        Map<String, Long> counters = snapshot.counters();
+        assertEquals(4, counters.get("transfer.attempted"));
+        assertEquals(1, counters.get("transfer.completed"));
+        assertEquals(1, counters.get("transfer.rejected.INSUFFICIENT_FUNDS"));
+        assertEquals(1, counters.get("transfer.rejected.INVALID_AMOUNT"));
+        assertEquals(1, counters.get("transfer.rejected.ACCOUNT_NOT_FOUND"));
+        assertEquals(0, counters.get("transfer.rejected.FAILED"));
+        assertEquals(1, counters.get("charge.completed"));
+        assertEquals(4, snapshot.latencies().get("transfer").count());
+        assertEquals(9, snapshot.latencies().get("dao.lookup").count());
+        assertEquals(5, snapshot.latencies().get("dao.save").count());
+        assertEquals(5, snapshot.latencies().get("lock.wait").count());
+    }
+
+    @Test
+    void paymentsTest() {
+        agreement.setId(1L);
+        accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService, null, metrics);
+
+        assertTrue(paymentProcessor.makeTransfer(agreement, agreement, 0, 1, BigDecimal.TEN));
+        assertFalse(paymentProcessor.makeTransferWithComission(agreement, agreement, 0, 1, new BigDecimal(100),
+                new BigDecimal("0.1")));
+        assertThrows(AccountException.class,
+                () -> paymentProcessor.makeTransfer(agreement, agreement, 0, 5, BigDecimal.TEN));
+
+        Map<String, Long> counters = metrics.snapshot().counters();
+        assertEquals(3, counters.get("payment.attempted"));
+        assertEquals(1, counters.get("payment.completed"));
+        assertEquals(1, counters.get("payment.rejected.INSUFFICIENT_FUNDS"));
+        assertEquals(1, counters.get("payment.rejected.ACCOUNT_NOT_FOUND"));
+    }
+
+    @Test
+    void rejectReasonComesFromServiceTest() {
+        agreement.setId(1L);
+        accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService, null, metrics);
+
+        assertFalse(paymentProcessor.makeTransferWithComission(agreement, agreement, 0, 1, BigDecimal.TEN,
+                new BigDecimal("-0.1")));
+
+        Map<String, Long> counters = metrics.snapshot().counters();
+        assertEquals(1, counters.get("payment.rejected.INVALID_AMOUNT"));
+        assertEquals(0, counters.get("payment.rejected.INSUFFICIENT_FUNDS"));
+    }
+
+    @Test
+    void batchPaymentsTest() {
+        agreement.setId(1L);
+        accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService, null, metrics);
+
+        List<TransferResult> results = paymentProcessor.makeTransfers(List.of(
+                new TransferRequest(agreement, agreement, 0, 1, BigDecimal.TEN),
+                new TransferRequest(agreement, agreement, 0, 1, new BigDecimal(1000)),
+                new TransferRequest(agreement, agreement, 0, 1, BigDecimal.ZERO),
+                new TransferRequest(agreement, agreement, 0, 5, BigDecimal.ONE)));
+
+        assertEquals(List.of(TransferResult.COMPLETED, TransferResult.REJECTED, TransferResult.REJECTED,
+                TransferResult.ACCOUNT_NOT_FOUND), results);
+        Map<String, Long> counters = metrics.snapshot().counters();
+        assertEquals(4, counters.get("payment.attempted"));
+        assertEquals(1, counters.get("payment.completed"));
+        assertEquals(1, counters.get("payment.rejected.INSUFFICIENT_FUNDS"));
+        assertEquals(1, counters.get("payment.rejected.INVALID_AMOUNT"));
+        assertEquals(1, counters.get("payment.rejected.ACCOUNT_NOT_FOUND"));
+    }
+
+    @Test
+    void reporterTest() throws InterruptedException {
+        List<MetricsSnapshot> exported = new CopyOnWriteArrayList<>();
+
+        MetricsReporter reporter = new MetricsReporter(metrics, exported::add, Duration.ofMillis(5));
+        try {
+            Thread.sleep(50);
+        } finally {
+            reporter.close();
+        }
+
+        assertFalse(exported.isEmpty());
+        assertEquals(0, exported.get(exported.size() - 1).counters().get("transfer.attempted"));
+    }
+}
@@ -0,0 +1,89 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountServiceImplConcurrencyTest {
+
+    private static final int ACCOUNTS = 50;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 20_000;
+
+    AccountServiceImpl accountService;
+
+    List<Long> accountIds = new ArrayList<>();
+
+    @BeforeEach
+    void init() {
+        accountService = new AccountServiceImpl(new AccountDaoImpl());
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds.add(accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(1000)).getId());
+        }
+    }
+
+    @Test
+    void totalAmountIsConservedTest() throws InterruptedException {
+        BigDecimal total = total();
+        LongAdder charged = new LongAdder();
+
+        runConcurrently(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Long source = accountIds.get(random.nextInt(ACCOUNTS));
+            Long destination = accountIds.get(random.nextInt(ACCOUNTS));
+            if (random.nextInt(10) == 0) {
+                if (accountService.charge(source, BigDecimal.ONE)) {
+                    charged.increment();
+                }
+            } else {
+                accountService.makeTransfer(source, destination, new BigDecimal(random.nextInt(1, 100)));
+            }
+        });
+
+        assertEquals(0, total.subtract(BigDecimal.valueOf(charged.sum())).compareTo(total()));
+    }
+
+    private void runConcurrently(Runnable transfer) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < THREADS; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+                    transfer.run();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+
+    private BigDecimal total() {
+        return accountService.getAccounts().stream()
+                .map(Account::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
@@ -0,0 +1,197 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AccountServiceImplHotAccountTest {
+
+    BlockingAccountDao accountDao = new BlockingAccountDao();
+
+    AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+    Agreement agreement = new Agreement();
+
+    Long bank;
+
+    Long client;
+
+    @BeforeEach
+    void init() {
+        agreement.setId(1L);
+        bank = accountService.addAccount(agreement, "bank", 0, new BigDecimal(1000)).getId();
+        client = accountService.addAccount(agreement, "client", 1, new BigDecimal(100)).getId();
+        accountService.markHot(bank, 4);
+    }
+
+    @Test
+    void transfersWithHotAccountTest() {
+        assertTrue(accountService.makeTransfer(bank, client, new BigDecimal(50), BigDecimal.ONE));
+        assertTrue(accountService.makeTransfer(client, bank, new BigDecimal(20)));
+        assertFalse(accountService.makeTransfer(bank, client, new BigDecimal(2000)));
+        assertTrue(accountService.charge(bank, BigDecimal.TEN));
+
+        assertEquals(new BigDecimal(959), amountOf(bank));
+        assertEquals(new BigDecimal(130), amountOf(client));
+    }
+
+    @Test
+    void negativeChargeCreditsHotAccountTest() {
+        assertTrue(accountService.charge(bank, new BigDecimal(-5)));
+        assertTrue(accountService.charge(client, new BigDecimal(-5)));
+
+        assertEquals(new BigDecimal(1005), amountOf(bank));
+        assertEquals(new BigDecimal(105), amountOf(client));
+    }
+
+    @Test
+    void durableStorageRefusesHotAccountsTest() {
+        AccountDao durable = mock(AccountDao.class);
+        when(durable.isDurable()).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> new AccountServiceImpl(durable).markHot(bank, 4));
+        verify(durable, never()).findByIdOrNull(anyLong());
+    }
+
+    @Test
+    void syncSavesHotBalanceTest() {
+        accountService.makeTransfer(client, bank, new BigDecimal(20));
+
+        assertEquals(new BigDecimal(1000), accountDao.findById(bank).orElseThrow().getAmount());
+        accountService.syncHotAccounts();
+        assertEquals(new BigDecimal(1020), accountDao.findById(bank).orElseThrow().getAmount());
+    }
+
+    @Test
+    void readsDontChangeStoredAccountTest() {
+        accountService.makeTransfer(client, bank, new BigDecimal(20));
+
+        assertEquals(new BigDecimal(1020), amountOf(bank));
+        assertEquals(new BigDecimal(1000), accountDao.findById(bank).orElseThrow().getAmount());
+    }
+
+    @Test
+    void scheduledSyncTest() throws InterruptedException {
+        accountService.scheduleHotSync(Duration.ofMillis(10));
+        accountService.makeTransfer(client, bank, new BigDecimal(20));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (accountDao.findById(bank).orElseThrow().getMinorAmount() != 102000 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(new BigDecimal(1020), accountDao.findById(bank).orElseThrow().getAmount());
+
+        accountService.makeTransfer(bank, client, new BigDecimal(5));
+        accountService.close();
+        assertEquals(new BigDecimal(1015), accountDao.findById(bank).orElseThrow().getAmount());
+    }
+
+    @Test
+    void depositWaitingForMarkHotIsKeptTest() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        accountDao.blocked = release;
+        Thread first = new Thread(() -> accountService.deposit(client, BigDecimal.ONE));
+        first.start();
+        accountDao.saving.await();
+        Thread marking = new Thread(() -> accountService.markHot(client, 2));
+        Thread second = new Thread(() -> accountService.deposit(client, BigDecimal.TEN));
+        marking.start();
+        second.start();
+        awaitWaiting(marking);
+        awaitWaiting(second);
+
+        release.countDown();
+        first.join();
+        marking.join();
+        second.join();
+
+        assertEquals(new BigDecimal(111), amountOf(client));
+        accountService.syncHotAccounts();
+        assertEquals(new BigDecimal(111), accountDao.findById(client).orElseThrow().getAmount());
+    }
+
+    @Test
+    void concurrentTransfersConserveTotalTest() throws InterruptedException {
+        List<Long> clients = new ArrayList<>(List.of(client));
+        for (int i = 0; i < 20; i++) {
+            clients.add(accountService.addAccount(agreement, "client" + i, 1, new BigDecimal(100)).getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 20_000; j++) {
+                    Long other = clients.get(random.nextInt(clients.size()));
+                    BigDecimal sum = new BigDecimal(random.nextInt(1, 50));
+                    if (random.nextBoolean()) {
+                        accountService.makeTransfer(bank, other, sum);
+                    } else {
+                        accountService.makeTransfer(other, bank, sum);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        BigDecimal total = accountService.getAccounts().stream()
+                .map(Account::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, new BigDecimal(3100).compareTo(total));
+        assertTrue(accountService.getAccounts().stream().allMatch(account -> account.getMinorAmount() >= 0));
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    private BigDecimal amountOf(Long accountId) {
+        return accountService.getAccounts().stream()
+                .filter(account -> account.getId() == accountId)
+                .findAny()
+                .orElseThrow()
+                .getAmount();
+    }
+
+    /**
+     * Blocks the first save after {@link #blocked} is set until it is counted down.
+     */
+    static class BlockingAccountDao extends AccountDaoImpl {
+        volatile CountDownLatch blocked;
+        final CountDownLatch saving = new CountDownLatch(1);
+
+        @Override
+        public Account save(Account account) {
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                blocked = null;
+                saving.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.save(account);
+        }
+    }
+}
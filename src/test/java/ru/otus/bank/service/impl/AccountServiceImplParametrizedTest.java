@@ -12,7 +12,6 @@ import ru.otus.bank.dao.AccountDao;
 import ru.otus.bank.entity.Account;
 
 import java.math.BigDecimal;
-import java.util.Optional;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -42,8 +41,8 @@ class AccountServiceImplParametrizedTest {
         destinationAccount.setAmount(new BigDecimal(10));
         destinationAccount.setId(2L);
 
-        when(accountDao.findById(eq(1L))).thenReturn(Optional.of(sourceAccount));
-        when(accountDao.findById(eq(2L))).thenReturn(Optional.of(destinationAccount));
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
 
         assertEquals(expected, accountServiceImpl.makeTransfer(1L, 2L, transferAmount));
     }
@@ -59,8 +58,8 @@ class AccountServiceImplParametrizedTest {
         destinationAccount.setAmount(new BigDecimal(10));
         destinationAccount.setId(2L);
 
-        when(accountDao.findById(eq(1L))).thenReturn(Optional.of(sourceAccount));
-        when(accountDao.findById(eq(2L))).thenReturn(Optional.of(destinationAccount));
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
 
         assertEquals(expected, accountServiceImpl.makeTransfer(1L, 2L, transferAmount));
     }
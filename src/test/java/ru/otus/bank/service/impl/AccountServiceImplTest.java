@@ -14,7 +14,6 @@ import ru.otus.bank.service.exception.AccountException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -36,8 +35,8 @@ class AccountServiceImplTest {
         Account destinationAccount = new Account();
         destinationAccount.setAmount(new BigDecimal(10));
 
-        when(accountDao.findById(eq(1L))).thenReturn(Optional.of(sourceAccount));
-        when(accountDao.findById(eq(2L))).thenReturn(Optional.of(destinationAccount));
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
 
         accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(10));
 
@@ -45,9 +44,71 @@ class AccountServiceImplTest {
         assertEquals(new BigDecimal(20), destinationAccount.getAmount());
     }
 
+    @Test
+    void testRejectedTransferLeavesAccountsUnchanged() {
+        Account sourceAccount = new Account();
+        sourceAccount.setAmount(new BigDecimal(10));
+
+        Account destinationAccount = new Account();
+        destinationAccount.setAmount(new BigDecimal(10));
+
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
+
+        assertFalse(accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(100)));
+
+        assertEquals(new BigDecimal(10), sourceAccount.getAmount());
+        assertEquals(new BigDecimal(10), destinationAccount.getAmount());
+        verify(accountDao, never()).save(any());
+    }
+
+    @Test
+    void testTransferRolledBackOnSaveFailure() {
+        Account sourceAccount = new Account();
+        sourceAccount.setId(1L);
+        sourceAccount.setAmount(new BigDecimal(100));
+
+        Account destinationAccount = new Account();
+        destinationAccount.setId(2L);
+        destinationAccount.setAmount(new BigDecimal(10));
+
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
+        when(accountDao.save(any())).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == destinationAccount) {
+                throw new IllegalStateException("Storage failure");
+            }
+            return invocation.getArgument(0);
+        });
+
+        assertThrows(IllegalStateException.class, () -> accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(10)));
+
+        assertEquals(new BigDecimal(100), sourceAccount.getAmount());
+        assertEquals(new BigDecimal(10), destinationAccount.getAmount());
+    }
+
+    @Test
+    void testTransferWithCommission() {
+        Account sourceAccount = new Account();
+        sourceAccount.setAmount(new BigDecimal(100));
+
+        Account destinationAccount = new Account();
+        destinationAccount.setAmount(new BigDecimal(10));
+
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
+
+        assertFalse(accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(100), BigDecimal.ONE));
+        assertEquals(new BigDecimal(100), sourceAccount.getAmount());
+
+        assertTrue(accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(10), BigDecimal.ONE));
+        assertEquals(new BigDecimal(89), sourceAccount.getAmount());
+        assertEquals(new BigDecimal(20), destinationAccount.getAmount());
+    }
+
     @Test
     void testSourceNotFound() {
-        when(accountDao.findById(any())).thenReturn(Optional.empty());
+        when(accountDao.findByIdOrNull(anyLong())).thenReturn(null);
 
         AccountException result = assertThrows(AccountException.class, () ->
                 accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(10)));
@@ -65,8 +126,8 @@ class AccountServiceImplTest {
         destinationAccount.setAmount(new BigDecimal(10));
         destinationAccount.setId(2L);
 
-        when(accountDao.findById(eq(1L))).thenReturn(Optional.of(sourceAccount));
-        when(accountDao.findById(eq(2L))).thenReturn(Optional.of(destinationAccount));
+        when(accountDao.findByIdOrNull(1L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(2L)).thenReturn(destinationAccount);
 
         ArgumentMatcher<Account> sourceMatcher =
                 argument -> argument.getId().equals(1L) && argument.getAmount().equals(new BigDecimal(90));
@@ -125,12 +186,12 @@ class AccountServiceImplTest {
         firstAccount.setId(1L);
         firstAccount.setAmount(initialAmount);
 
-        when(accountDao.findById(eq(1L))).thenReturn(Optional.of(firstAccount));
+        when(accountDao.findByIdOrNull(1L)).thenReturn(firstAccount);
 
         assertTrue(accountServiceImpl.charge(1L, chargeAmount));
         assertEquals(initialAmount.subtract(chargeAmount), firstAccount.getAmount());
 
-        verify(accountDao, times(1)).findById(1L);
+        verify(accountDao, times(1)).findByIdOrNull(1L);
         verify(accountDao, times(1)).save(firstAccount);
     }
 
@@ -138,14 +199,43 @@ class AccountServiceImplTest {
     void chargedExceptionTest() {
         BigDecimal chargeAmount = new BigDecimal(50);
 
-        when(accountDao.findById(anyLong())).thenReturn(Optional.empty());
+        when(accountDao.findByIdOrNull(anyLong())).thenReturn(null);
 
         assertThrows(AccountException.class, () -> accountServiceImpl.charge(10L, chargeAmount));
 
-        verify(accountDao, times(1)).findById(anyLong());
+        verify(accountDao, times(1)).findByIdOrNull(anyLong());
         verify(accountDao, never()).save(any());
     }
 
+    @Test
+    void depositTest() {
+        Account account = new Account();
+        account.setId(1L);
+        account.setAmount(new BigDecimal(100));
+
+        when(accountDao.findByIdOrNull(1L)).thenReturn(account);
+
+        assertTrue(accountServiceImpl.deposit(1L, new BigDecimal("0.5")));
+        assertFalse(accountServiceImpl.deposit(1L, BigDecimal.ZERO));
+        assertEquals(new BigDecimal("100.5"), account.getAmount());
+
+        verify(accountDao, times(1)).save(account);
+    }
+
+    @Test
+    void unrepresentableAmountTest() {
+        BigDecimal fraction = new BigDecimal("0.001");
+
+        assertFalse(accountServiceImpl.charge(1L, fraction));
+        assertFalse(accountServiceImpl.deposit(1L, fraction));
+        assertFalse(accountServiceImpl.makeTransfer(1L, 2L, fraction));
+        assertFalse(accountServiceImpl.makeTransfer(1L, 2L, BigDecimal.ONE, fraction));
+        assertThrows(AccountException.class,
+                () -> accountServiceImpl.addAccount(new Agreement(), "acc_num", 0, fraction));
+
+        verifyNoInteractions(accountDao);
+    }
+
     @Test
     void addAccountTest() {
         Long agreementId = 5L;
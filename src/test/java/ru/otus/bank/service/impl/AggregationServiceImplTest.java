@@ -0,0 +1,88 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.ColumnarAccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.BalanceSummary;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationServiceImplTest {
+
+    ColumnarAccountDao accountDao = new ColumnarAccountDao();
+
+    AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+    AggregationServiceImpl aggregationService = new AggregationServiceImpl(accountDao);
+
+    @Test
+    void summarizeTest() {
+        accountService.addAccount(agreement(1L), "acc1", 0, new BigDecimal("10.50"));
+        accountService.addAccount(agreement(1L), "acc2", 1, new BigDecimal(3));
+        accountService.addAccount(agreement(2L), "acc3", 1, new BigDecimal(100));
+
+        BalanceSummary summary = aggregationService.summarize();
+
+        assertEquals(new BalanceSummary(3, 11350, 300, 10000), summary);
+        assertEquals(0, new BigDecimal("113.50").compareTo(summary.total()));
+        assertEquals(0, new BigDecimal(3).compareTo(summary.min()));
+    }
+
+    @Test
+    void summarizeEmptyTest() {
+        assertEquals(new BalanceSummary(0, 0, 0, 0), aggregationService.summarize());
+        assertTrue(aggregationService.summarizeByAgreement().isEmpty());
+    }
+
+    @Test
+    void summarizeByAgreementAndTypeTest() {
+        accountService.addAccount(agreement(1L), "acc1", 0, new BigDecimal("10.50"));
+        accountService.addAccount(agreement(1L), "acc2", 1, new BigDecimal(3));
+        accountService.addAccount(agreement(2L), "acc3", 1, new BigDecimal(100));
+        Account untyped = new Account();
+        untyped.setAmount(BigDecimal.ONE);
+        accountDao.save(untyped);
+
+        Map<Long, BalanceSummary> byAgreement = aggregationService.summarizeByAgreement();
+        Map<Integer, BalanceSummary> byType = aggregationService.summarizeByType();
+
+        assertEquals(Map.of(1L, new BalanceSummary(2, 1350, 300, 1050),
+                2L, new BalanceSummary(1, 10000, 10000, 10000)), byAgreement);
+        assertEquals(Map.of(0, new BalanceSummary(1, 1050, 1050, 1050),
+                1, new BalanceSummary(2, 10300, 300, 10000)), byType);
+        assertEquals(4, aggregationService.summarize().count());
+    }
+
+    @Test
+    void parallelSummaryMatchesSequentialTest() {
+        long total = 0;
+        for (int i = 0; i < 50_000; i++) {
+            long amount = i % 997;
+            total += amount * 100;
+            accountService.addAccount(agreement((long) i % 100), "acc" + i, i % 4, BigDecimal.valueOf(amount));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AggregationServiceImpl service = new AggregationServiceImpl(accountDao, pool);
+
+            assertEquals(new BalanceSummary(50_000, total, 0, 99_600), service.summarize());
+            Map<Long, BalanceSummary> byAgreement = service.summarizeByAgreement();
+            assertEquals(100, byAgreement.size());
+            assertEquals(total, byAgreement.values().stream().mapToLong(BalanceSummary::totalMinor).sum());
+            assertEquals(50_000, service.summarizeByType().values().stream().mapToLong(BalanceSummary::count).sum());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Agreement agreement(Long id) {
+        Agreement agreement = new Agreement();
+        agreement.setId(id);
+        return agreement;
+    }
+}
@@ -0,0 +1,109 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncPaymentProcessorImplTest {
+
+    @Mock
+    PaymentProcessor paymentProcessor;
+
+    Agreement source = new Agreement();
+
+    Agreement destination = new Agreement();
+
+    CountDownLatch release = new CountDownLatch(1);
+
+    AsyncPaymentProcessorImpl asyncPaymentProcessor;
+
+    @AfterEach
+    void close() {
+        release.countDown();
+        asyncPaymentProcessor.close();
+    }
+
+    @Test
+    void makeTransferTest() throws Exception {
+        asyncPaymentProcessor = new AsyncPaymentProcessorImpl(paymentProcessor, 10, Duration.ofSeconds(10));
+        when(paymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN)).thenReturn(true);
+
+        assertTrue(asyncPaymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN)
+                .get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void makeTransferWithComissionTest() throws Exception {
+        asyncPaymentProcessor = new AsyncPaymentProcessorImpl(paymentProcessor, 10, Duration.ofSeconds(10));
+        when(paymentProcessor.makeTransferWithComission(source, destination, 0, 1, BigDecimal.TEN,
+                new BigDecimal("0.01"))).thenReturn(false);
+
+        assertFalse(asyncPaymentProcessor.makeTransferWithComission(source, destination, 0, 1, BigDecimal.TEN,
+                new BigDecimal("0.01")).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void makeTransferFailureTest() {
+        asyncPaymentProcessor = new AsyncPaymentProcessorImpl(paymentProcessor, 10, Duration.ofSeconds(10));
+        when(paymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN))
+                .thenThrow(new AccountException("Account not found"));
+
+        ExecutionException result = assertThrows(ExecutionException.class, () ->
+                asyncPaymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN)
+                        .get(10, TimeUnit.SECONDS));
+        assertInstanceOf(AccountException.class, result.getCause());
+    }
+
+    @Test
+    void makeTransferTimeoutTest() {
+        asyncPaymentProcessor = new AsyncPaymentProcessorImpl(paymentProcessor, 10, Duration.ofMillis(50));
+        blockTransfers();
+
+        ExecutionException result = assertThrows(ExecutionException.class, () ->
+                asyncPaymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN)
+                        .get(10, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, result.getCause());
+    }
+
+    @Test
+    void makeTransferBackpressureTest() throws Exception {
+        asyncPaymentProcessor = new AsyncPaymentProcessorImpl(paymentProcessor, 1, Duration.ofMillis(100));
+        blockTransfers();
+
+        CompletableFuture<Boolean> first = asyncPaymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN);
+        CompletableFuture<Boolean> second = asyncPaymentProcessor.makeTransfer(source, destination, 0, 1, BigDecimal.TEN);
+
+        assertTrue(second.isCompletedExceptionally());
+        ExecutionException result = assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, result.getCause());
+        assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+    }
+
+    private void blockTransfers() {
+        when(paymentProcessor.makeTransfer(any(), any(), anyInt(), anyInt(), eq(BigDecimal.TEN))).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+    }
+}
@@ -0,0 +1,191 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CommissionEngineImplTest {
+
+    AccountDaoImpl accountDao = new AccountDaoImpl();
+
+    AccountServiceImpl accountService = new AccountServiceImpl(accountDao);
+
+    Agreement client = new Agreement();
+
+    Agreement bank = new Agreement();
+
+    Long source;
+
+    Long destination;
+
+    Long fees;
+
+    CommissionEngineImpl commissionEngine;
+
+    @BeforeEach
+    void init() {
+        client.setId(1L);
+        bank.setId(2L);
+        source = accountService.addAccount(client, "acc1", 0, new BigDecimal(1000)).getId();
+        destination = accountService.addAccount(client, "acc2", 1, BigDecimal.ZERO).getId();
+        fees = accountService.addAccount(bank, "fees", 0, BigDecimal.ZERO).getId();
+    }
+
+    @AfterEach
+    void close() {
+        if (commissionEngine != null) {
+            commissionEngine.close();
+        }
+    }
+
+    @Test
+    void commissionTest() {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, 1, Duration.ofHours(1));
+
+        assertEquals(110, commissionEngine.commission(1100, new BigDecimal("0.1")));
+        assertEquals(2, commissionEngine.commission(25, new BigDecimal("0.1")));
+        assertEquals(0, commissionEngine.commission(1000, BigDecimal.ZERO));
+    }
+
+    @Test
+    void revenueIsCreditedAtThresholdTest() {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, 250, Duration.ofHours(1));
+
+        assertTrue(commissionEngine.transfer(source, destination, 1000, new BigDecimal("0.1")));
+        assertEquals(100, commissionEngine.pendingRevenue());
+        assertEquals(BigDecimal.ZERO, amountOf(fees));
+        assertEquals(new BigDecimal(989), amountOf(source));
+        assertEquals(BigDecimal.TEN, amountOf(destination));
+
+        commissionEngine.transfer(source, destination, 1000, new BigDecimal("0.1"));
+        commissionEngine.transfer(source, destination, 1000, new BigDecimal("0.1"));
+
+        assertEquals(0, commissionEngine.pendingRevenue());
+        assertEquals(new BigDecimal(3), amountOf(fees));
+    }
+
+    @Test
+    void failedFeeCreditKeepsTransferTest() {
+        commissionEngine = new CommissionEngineImpl(accountService, 999, 1, Duration.ofHours(1));
+
+        assertTrue(commissionEngine.transfer(source, destination, 1000, new BigDecimal("0.1")));
+
+        assertEquals(100, commissionEngine.pendingRevenue());
+        assertEquals(new BigDecimal(989), amountOf(source));
+        assertEquals(BigDecimal.TEN, amountOf(destination));
+        assertThrows(AccountException.class, commissionEngine::flush);
+        assertEquals(100, commissionEngine.pendingRevenue());
+        assertThrows(AccountException.class, commissionEngine::close);
+        commissionEngine = null;
+    }
+
+    @Test
+    void refusedFeeDepositKeepsRevenueTest() {
+        AccountServiceImpl refusingService = spy(accountService);
+        doReturn(false).when(refusingService).depositMinor(anyLong(), anyLong());
+        commissionEngine = new CommissionEngineImpl(refusingService, fees, Long.MAX_VALUE, Duration.ofHours(1));
+
+        assertTrue(commissionEngine.transfer(source, destination, 1000, new BigDecimal("0.1")));
+
+        assertThrows(IllegalStateException.class, commissionEngine::flush);
+        assertEquals(100, commissionEngine.pendingRevenue());
+        assertEquals(BigDecimal.ZERO, amountOf(fees));
+        assertThrows(IllegalStateException.class, commissionEngine::close);
+        commissionEngine = null;
+    }
+
+    @Test
+    void unsupportedRateIsRejectedTest() {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, 1, Duration.ofHours(1));
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService, commissionEngine);
+
+        assertFalse(paymentProcessor.makeTransferWithComission(client, client, 0, 1, BigDecimal.TEN,
+                new BigDecimal("1E-19")));
+
+        assertEquals(new BigDecimal(1000), amountOf(source));
+        assertEquals(BigDecimal.ZERO, amountOf(destination));
+    }
+
+    @Test
+    void refusedTransferCollectsNothingTest() {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, 1, Duration.ofHours(1));
+
+        assertFalse(commissionEngine.transfer(source, destination, 100_000, new BigDecimal("0.1")));
+        commissionEngine.flush();
+
+        assertEquals(BigDecimal.ZERO, amountOf(fees));
+        assertEquals(new BigDecimal(1000), amountOf(source));
+    }
+
+    @Test
+    void revenueIsCreditedOnIntervalTest() throws InterruptedException {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, Long.MAX_VALUE, Duration.ofMillis(10));
+
+        commissionEngine.transfer(source, destination, 1000, new BigDecimal("0.1"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (commissionEngine.pendingRevenue() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(BigDecimal.ONE, amountOf(fees));
+    }
+
+    @Test
+    void paymentProcessorCollectsCommissionTest() {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, 1, Duration.ofHours(1));
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService, commissionEngine);
+
+        assertTrue(paymentProcessor.makeTransferWithComission(client, client, 0, 1, BigDecimal.TEN,
+                new BigDecimal("0.1")));
+
+        assertEquals(new BigDecimal(989), amountOf(source));
+        assertEquals(BigDecimal.TEN, amountOf(destination));
+        assertEquals(BigDecimal.ONE, amountOf(fees));
+    }
+
+    @Test
+    void concurrentTransfersConserveTotalTest() throws InterruptedException {
+        commissionEngine = new CommissionEngineImpl(accountService, fees, 500, Duration.ofMillis(1));
+        Long other = accountService.addAccount(client, "acc3", 2, new BigDecimal(1000)).getId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        for (int i = 0; i < 6; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 5_000; j++) {
+                    boolean forward = random.nextBoolean();
+                    commissionEngine.transfer(forward ? source : other, forward ? other : source,
+                            random.nextLong(1, 1000), new BigDecimal("0.01"));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        commissionEngine.flush();
+
+        assertEquals(0, commissionEngine.pendingRevenue());
+        BigDecimal total = accountService.getAccounts().stream()
+                .map(Account::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, new BigDecimal(2000).compareTo(total));
+        assertTrue(amountOf(fees).signum() > 0);
+    }
+
+    private BigDecimal amountOf(Long accountId) {
+        return accountDao.findById(accountId).orElseThrow().getAmount();
+    }
+}
@@ -0,0 +1,115 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PaymentProcessorImplBatchTest {
+
+    AccountServiceImpl accountService;
+
+    PaymentProcessorImpl paymentProcessor;
+
+    @BeforeEach
+    void init() {
+        accountService = spy(new AccountServiceImpl(new AccountDaoImpl()));
+        paymentProcessor = new PaymentProcessorImpl(accountService);
+    }
+
+    @Test
+    void makeTransfersTest() {
+        Agreement first = agreement(1L);
+        Agreement second = agreement(2L);
+        Agreement third = agreement(3L);
+        Account firstAccount = accountService.addAccount(first, "acc1", 0, new BigDecimal(100));
+        Account secondAccount = accountService.addAccount(second, "acc2", 0, BigDecimal.ZERO);
+        Account thirdAccount = accountService.addAccount(third, "acc3", 0, BigDecimal.ZERO);
+
+        List<TransferResult> results = paymentProcessor.makeTransfers(List.of(
+                new TransferRequest(first, second, 0, 0, new BigDecimal(60)),
+                new TransferRequest(second, third, 0, 0, new BigDecimal(50)),
+                new TransferRequest(first, third, 0, 0, new BigDecimal(60)),
+                new TransferRequest(first, third, 0, 1, BigDecimal.ONE)));
+
+        assertEquals(List.of(TransferResult.COMPLETED, TransferResult.COMPLETED,
+                TransferResult.REJECTED, TransferResult.ACCOUNT_NOT_FOUND), results);
+        assertEquals(new BigDecimal(40), firstAccount.getAmount());
+        assertEquals(BigDecimal.TEN, secondAccount.getAmount());
+        assertEquals(new BigDecimal(50), thirdAccount.getAmount());
+    }
+
+    @Test
+    void makeTransfersResolvesEachAccountOnceTest() {
+        List<Agreement> agreements = new ArrayList<>();
+        for (long i = 1; i <= 10; i++) {
+            Agreement agreement = agreement(i);
+            accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(1000));
+            agreements.add(agreement);
+        }
+
+        List<TransferRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(new TransferRequest(agreements.get(i % 10), agreements.get((i + 1) % 10),
+                    0, 0, BigDecimal.ONE));
+        }
+
+        List<TransferResult> results = paymentProcessor.makeTransfers(requests);
+
+        assertEquals(1000, results.stream().filter(TransferResult.COMPLETED::equals).count());
+        verify(accountService, times(10)).getAccounts(any(), anyInt());
+        assertEquals(new BigDecimal(10000), accountService.getAccounts().stream()
+                .map(Account::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+
+    @Test
+    void makeTransfersDontWaitOnCommonPoolTest() {
+        List<Thread> waiting = new CopyOnWriteArrayList<>();
+        accountService = new AccountServiceImpl(new AccountDaoImpl() {
+            @Override
+            public void awaitDurable() {
+                waiting.add(Thread.currentThread());
+            }
+        });
+        paymentProcessor = new PaymentProcessorImpl(accountService);
+        List<TransferRequest> requests = new ArrayList<>();
+        for (long i = 1; i <= 10; i += 2) {
+            Agreement source = agreement(i);
+            Agreement destination = agreement(i + 1);
+            accountService.addAccount(source, "acc" + i, 0, BigDecimal.TEN);
+            accountService.addAccount(destination, "acc" + (i + 1), 0, BigDecimal.ZERO);
+            requests.add(new TransferRequest(source, destination, 0, 0, BigDecimal.ONE));
+        }
+        waiting.clear();
+
+        List<TransferResult> results = paymentProcessor.makeTransfers(requests);
+
+        assertEquals(5, results.stream().filter(TransferResult.COMPLETED::equals).count());
+        assertEquals(5, waiting.size());
+        assertTrue(waiting.stream().noneMatch(ForkJoinWorkerThread.class::isInstance));
+    }
+
+    private static Agreement agreement(Long id) {
+        Agreement agreement = new Agreement();
+        agreement.setId(id);
+        return agreement;
+    }
+}
@@ -19,7 +19,6 @@ import ru.otus.bank.service.exception.AccountException;
 import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -62,19 +61,20 @@ class PaymentProcessorImplWithSpyTest {
         destinationAccount.setId(20L);
 
         doReturn(List.of(sourceAccount)).when(accountService).getAccounts(argThat(argument
-                -> argument != null && argument.getId() == 1L));
+                -> argument != null && argument.getId() == 1L), eq(0));
 
         doReturn(List.of(destinationAccount)).when(accountService).getAccounts(argThat(argument
-                -> argument != null && argument.getId() == 2L));
+                -> argument != null && argument.getId() == 2L), eq(0));
 
-        when(accountDao.findById(10L)).thenReturn(Optional.of(sourceAccount));
-        when(accountDao.findById(20L)).thenReturn(Optional.of(destinationAccount));
+        when(accountDao.findByIdOrNull(10L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(20L)).thenReturn(destinationAccount);
 
         assertTrue(paymentProcessor.makeTransfer(sourceAgreement, destinationAgreement,
                 0, 0, BigDecimal.ONE));
         assertEquals(new BigDecimal(9), sourceAccount.getAmount());
         assertEquals(BigDecimal.ONE, destinationAccount.getAmount());
-        verify(accountService, times(2)).getAccounts(any());
+        verify(accountService, times(2)).getAccounts(any(), anyInt());
+        verify(accountService, never()).getAccounts(any());
     }
 
     @ParameterizedTest
@@ -98,20 +98,56 @@ class PaymentProcessorImplWithSpyTest {
         destinationAccount.setId(20L);
 
         doReturn(List.of(sourceAccount)).when(accountService).getAccounts(argThat(argument
-                -> argument != null && argument.getId() == 1L));
+                -> argument != null && argument.getId() == 1L), eq(0));
 
         doReturn(List.of(destinationAccount)).when(accountService).getAccounts(argThat(argument
-                -> argument != null && argument.getId() == 2L));
+                -> argument != null && argument.getId() == 2L), eq(0));
 
-        when(accountDao.findById(10L)).thenReturn(Optional.of(sourceAccount));
-        when(accountDao.findById(20L)).thenReturn(Optional.of(destinationAccount));
+        when(accountDao.findByIdOrNull(10L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(20L)).thenReturn(destinationAccount);
 
         assertEquals(Boolean.parseBoolean(result), paymentProcessor.makeTransferWithComission(sourceAgreement, destinationAgreement,
                 0, 0, new BigDecimal(transferAmount), BigDecimal.valueOf(0.1)));
         assertEquals(new BigDecimal(sourceResultAmount), sourceAccount.getAmount());
         assertEquals(new BigDecimal(destinationResultAmount), destinationAccount.getAmount());
-        verify(accountService, times(2)).getAccounts(any());
-        verify(accountService, times(1)).charge(any(), any());
+        verify(accountService, times(2)).getAccounts(any(), anyInt());
+        verify(accountService, never()).getAccounts(any());
+        verify(accountService, times(1)).tryTransferMinor(anyLong(), anyLong(), anyLong(), anyLong());
+        verify(accountService, never()).charge(any(), any());
+    }
+
+    @Test
+    void makeTransferWithComissionRejectedTest() {
+        Agreement sourceAgreement = new Agreement();
+        sourceAgreement.setId(1L);
+
+        Agreement destinationAgreement = new Agreement();
+        destinationAgreement.setId(2L);
+
+        Account sourceAccount = new Account();
+        sourceAccount.setAmount(BigDecimal.TEN);
+        sourceAccount.setType(0);
+        sourceAccount.setId(10L);
+
+        Account destinationAccount = new Account();
+        destinationAccount.setAmount(BigDecimal.ZERO);
+        destinationAccount.setType(0);
+        destinationAccount.setId(20L);
+
+        doReturn(List.of(sourceAccount)).when(accountService).getAccounts(argThat(argument
+                -> argument != null && argument.getId() == 1L), eq(0));
+
+        doReturn(List.of(destinationAccount)).when(accountService).getAccounts(argThat(argument
+                -> argument != null && argument.getId() == 2L), eq(0));
+
+        when(accountDao.findByIdOrNull(10L)).thenReturn(sourceAccount);
+        when(accountDao.findByIdOrNull(20L)).thenReturn(destinationAccount);
+
+        assertFalse(paymentProcessor.makeTransferWithComission(sourceAgreement, destinationAgreement,
+                0, 0, BigDecimal.TEN, BigDecimal.valueOf(0.1)));
+        assertEquals(BigDecimal.TEN, sourceAccount.getAmount());
+        assertEquals(BigDecimal.ZERO, destinationAccount.getAmount());
+        verify(accountDao, never()).save(any());
     }
 
     @Test
@@ -120,9 +156,23 @@ class PaymentProcessorImplWithSpyTest {
         sourceAgreement.setId(1L);
         BigDecimal commission = BigDecimal.valueOf(0.1);
 
-        when(accountService.getAccounts(sourceAgreement)).thenReturn(Collections.emptyList());
+        doReturn(Collections.emptyList()).when(accountService).getAccounts(sourceAgreement, 0);
 
         assertThrows(AccountException.class, () -> paymentProcessor.makeTransferWithComission(sourceAgreement, new Agreement(),
                 0, 0, BigDecimal.ONE, commission));
     }
+
+    @Test
+    void makeTransferUnrepresentableAmountTest() {
+        Agreement sourceAgreement = new Agreement();
+        sourceAgreement.setId(1L);
+        Agreement destinationAgreement = new Agreement();
+        destinationAgreement.setId(2L);
+        BigDecimal amount = new BigDecimal("0.001");
+
+        assertFalse(paymentProcessor.makeTransfer(sourceAgreement, destinationAgreement, 0, 0, amount));
+        assertFalse(paymentProcessor.makeTransferWithComission(sourceAgreement, destinationAgreement, 0, 0, amount,
+                BigDecimal.valueOf(0.1)));
+        verifyNoInteractions(accountDao);
+    }
 }
@@ -0,0 +1,178 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedAccountServiceTest {
+
+    private static final int SHARDS = 4;
+
+    Long failingAccountId;
+
+    Long fatalAccountId;
+
+    AccountDaoImpl accountDao = new AccountDaoImpl() {
+        @Override
+        public Account save(Account account) {
+            if (account.getId().equals(failingAccountId)) {
+                throw new IllegalStateException("Storage failure");
+            }
+            if (account.getId().equals(fatalAccountId)) {
+                throw new AssertionError("Fatal storage failure");
+            }
+            return super.save(account);
+        }
+    };
+
+    ShardedAccountService accountService = new ShardedAccountService(accountDao, SHARDS);
+
+    Agreement agreement = new Agreement();
+
+    @AfterEach
+    void close() throws InterruptedException {
+        accountService.close();
+    }
+
+    @Test
+    void transferTest() {
+        List<Long> ids = addAccounts(SHARDS * 4, 100);
+
+        for (Long source : ids) {
+            for (Long destination : ids) {
+                assertTrue(accountService.makeTransfer(source, destination, BigDecimal.ONE));
+            }
+        }
+
+        for (Long id : ids) {
+            assertEquals(new BigDecimal(100), accountDao.findById(id).orElseThrow().getAmount());
+        }
+    }
+
+    @Test
+    void transferWithCommissionTest() {
+        List<Long> ids = addAccounts(2, 100);
+
+        assertTrue(accountService.makeTransfer(ids.get(0), ids.get(1), new BigDecimal(10), BigDecimal.ONE));
+        assertFalse(accountService.makeTransfer(ids.get(0), ids.get(1), new BigDecimal(89), new BigDecimal(1)));
+
+        assertEquals(new BigDecimal(89), accountDao.findById(ids.get(0)).orElseThrow().getAmount());
+        assertEquals(new BigDecimal(110), accountDao.findById(ids.get(1)).orElseThrow().getAmount());
+    }
+
+    @Test
+    void chargeTest() {
+        Long id = addAccounts(1, 10).get(0);
+
+        assertTrue(accountService.charge(id, new BigDecimal(4)));
+        assertFalse(accountService.charge(id, new BigDecimal(7)));
+
+        assertEquals(new BigDecimal(6), accountDao.findById(id).orElseThrow().getAmount());
+    }
+
+    @Test
+    void missingAccountTest() {
+        Long id = addAccounts(1, 10).get(0);
+
+        AccountException result = assertThrows(AccountException.class,
+                () -> accountService.makeTransfer(id, id + 1, BigDecimal.ONE));
+        assertEquals("No destination account", result.getLocalizedMessage());
+    }
+
+    @Test
+    void failedCreditIsRefundedTest() {
+        List<Long> ids = addAccounts(SHARDS * 4, 100);
+        failingAccountId = ids.get(1);
+
+        for (Long source : ids) {
+            if (!source.equals(failingAccountId)) {
+                assertThrows(IllegalStateException.class,
+                        () -> accountService.makeTransfer(source, failingAccountId, BigDecimal.ONE));
+            }
+        }
+
+        for (Long id : ids) {
+            assertEquals(new BigDecimal(100), accountDao.findById(id).orElseThrow().getAmount());
+        }
+    }
+
+    @Test
+    void stoppedShardFailsCallersTest() {
+        Long id = addAccounts(1, 10).get(0);
+        fatalAccountId = id;
+
+        IllegalStateException result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(IllegalStateException.class, () -> accountService.charge(id, BigDecimal.ONE)));
+        assertInstanceOf(AssertionError.class, result.getCause());
+
+        fatalAccountId = null;
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(IllegalStateException.class, () -> accountService.charge(id, BigDecimal.ONE)));
+    }
+
+    @Test
+    void closedServiceRejectsTest() throws InterruptedException {
+        Long id = addAccounts(1, 10).get(0);
+        accountService.close();
+
+        assertThrows(RejectedExecutionException.class, () -> accountService.charge(id, BigDecimal.ONE));
+    }
+
+    @Test
+    void totalAmountIsConservedTest() throws InterruptedException {
+        List<Long> ids = addAccounts(50, 1000);
+        LongAdder charged = new LongAdder();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    Long source = ids.get(random.nextInt(ids.size()));
+                    if (random.nextInt(10) == 0) {
+                        if (accountService.charge(source, BigDecimal.ONE)) {
+                            charged.increment();
+                        }
+                    } else {
+                        accountService.makeTransfer(source, ids.get(random.nextInt(ids.size())),
+                                new BigDecimal(random.nextInt(1, 100)));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            assertTrue(account.getAmount().signum() >= 0);
+            total = total.add(account.getAmount());
+        }
+        assertEquals(0, new BigDecimal(50 * 1000).subtract(BigDecimal.valueOf(charged.sum())).compareTo(total));
+    }
+
+    private List<Long> addAccounts(int count, int amount) {
+        agreement.setId(1L);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(accountService.addAccount(agreement, "acc" + i, 0, new BigDecimal(amount)).getId());
+        }
+        return ids;
+    }
+}
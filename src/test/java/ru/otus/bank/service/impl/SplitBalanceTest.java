@@ -0,0 +1,86 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SplitBalanceTest {
+
+    @Test
+    void debitBorrowsAcrossCellsTest() throws InterruptedException {
+        SplitBalance balance = new SplitBalance(100, 8);
+        Thread other = new Thread(() -> balance.credit(50));
+        other.start();
+        other.join();
+
+        assertTrue(balance.tryDebit(120));
+        assertEquals(30, balance.sum());
+        assertFalse(balance.tryDebit(31));
+        assertEquals(30, balance.sum());
+        assertTrue(balance.tryDebit(30));
+        assertEquals(0, balance.sum());
+    }
+
+    @Test
+    void snapshotUnderConcurrentChangesTest() throws InterruptedException {
+        SplitBalance balance = new SplitBalance(1000, 4);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    balance.credit(1);
+                    assertTrue(balance.tryDebit(1));
+                }
+            });
+        }
+        executor.shutdown();
+        while (!executor.isTerminated()) {
+            long snapshot = balance.snapshot();
+            assertTrue(snapshot >= 1000 && snapshot <= 1000 + threads, "snapshot " + snapshot);
+        }
+
+        assertEquals(1000, balance.snapshot());
+        assertEquals(1000, balance.sum());
+    }
+
+    @Test
+    void invalidArgumentsTest() {
+        assertThrows(IllegalArgumentException.class, () -> new SplitBalance(0, 3));
+        assertThrows(IllegalArgumentException.class, () -> new SplitBalance(-1, 4));
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdrawTest() throws InterruptedException {
+        SplitBalance balance = new SplitBalance(10_000, 8);
+        LongAdder credited = new LongAdder();
+        LongAdder debited = new LongAdder();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 50_000; j++) {
+                    long amount = random.nextLong(1, 100);
+                    if (random.nextBoolean()) {
+                        balance.credit(amount);
+                        credited.add(amount);
+                    } else if (balance.tryDebit(amount)) {
+                        debited.add(amount);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(10_000 + credited.sum() - debited.sum(), balance.sum());
+        assertTrue(balance.sum() >= 0);
+    }
+}
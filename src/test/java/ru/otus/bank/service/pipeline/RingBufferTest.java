@@ -0,0 +1,61 @@
+package ru.otus.bank.service.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    RingBuffer<AtomicLong> ringBuffer = new RingBuffer<>(4, AtomicLong::new);
+
+    @Test
+    void claimUntilFullTest() {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, ringBuffer.tryNext());
+        }
+        assertEquals(-1, ringBuffer.tryNext());
+
+        ringBuffer.release(1);
+
+        assertEquals(4, ringBuffer.tryNext());
+        assertEquals(5, ringBuffer.tryNext());
+        assertEquals(-1, ringBuffer.tryNext());
+        assertSame(ringBuffer.get(0), ringBuffer.get(4));
+    }
+
+    @Test
+    void highestPublishedStopsAtGapTest() {
+        for (int i = 0; i < 4; i++) {
+            ringBuffer.tryNext();
+        }
+        ringBuffer.publish(0);
+        ringBuffer.publish(1);
+        ringBuffer.publish(3);
+
+        assertEquals(1, ringBuffer.highestPublished(0, 3));
+        assertEquals(0, ringBuffer.highestPublished(0, 0));
+        assertEquals(1, ringBuffer.highestPublished(2, 3));
+
+        ringBuffer.publish(2);
+
+        assertEquals(3, ringBuffer.highestPublished(2, 3));
+    }
+
+    @Test
+    void wrappedSequenceIsNotPublishedTest() {
+        for (int i = 0; i < 4; i++) {
+            ringBuffer.publish(ringBuffer.tryNext());
+        }
+        ringBuffer.release(3);
+
+        assertEquals(4, ringBuffer.tryNext());
+        assertEquals(3, ringBuffer.highestPublished(4, 7));
+    }
+
+    @Test
+    void wrongCapacityTest() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(3, AtomicLong::new));
+    }
+}
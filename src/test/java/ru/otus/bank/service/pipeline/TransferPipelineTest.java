@@ -0,0 +1,212 @@
+package ru.otus.bank.service.pipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.dao.impl.AccountDaoImpl;
+import ru.otus.bank.dao.wal.WriteAheadLog;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TransferPipelineTest {
+
+    @TempDir
+    Path dir;
+
+    AccountServiceImpl accountService = new AccountServiceImpl(new AccountDaoImpl());
+
+    Map<Long, TransferResult> results = new ConcurrentHashMap<>();
+
+    TransferHandler collector = (slot, sequence, endOfBatch) -> results.put(slot.getCorrelationId(), slot.getResult());
+
+    @Test
+    void transferResultsTest() throws InterruptedException {
+        Agreement first = agreement(1L, 100);
+        Agreement second = agreement(2L, 0);
+
+        try (TransferPipeline pipeline = new TransferPipeline(accountService, 8, collector)) {
+            pipeline.publish(1, first, second, 0, 0, 1000, 100);
+            pipeline.publish(2, first, second, 0, 0, 8990, 0);
+            pipeline.publish(3, first, second, 0, 1, 100, 0);
+            pipeline.publish(4, first, second, 0, 0, 0, 0);
+            pipeline.publish(5, first, second, 0, 0, 100_000, 0);
+        }
+
+        assertEquals(Map.of(1L, TransferResult.COMPLETED, 2L, TransferResult.COMPLETED,
+                3L, TransferResult.ACCOUNT_NOT_FOUND, 4L, TransferResult.REJECTED,
+                5L, TransferResult.REJECTED), results);
+        assertEquals(new BigDecimal(0), balance(first));
+        assertEquals(new BigDecimal("99.9"), balance(second));
+    }
+
+    @Test
+    void concurrentProducersTest() throws InterruptedException {
+        List<Agreement> agreements = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            agreements.add(agreement(i, 1000));
+        }
+        AtomicLong correlationIds = new AtomicLong();
+        int producers = 4;
+        int transfersPerProducer = 20_000;
+
+        try (TransferPipeline pipeline = new TransferPipeline(accountService, 256, collector)) {
+            ExecutorService executor = Executors.newFixedThreadPool(producers);
+            for (int producer = 0; producer < producers; producer++) {
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < transfersPerProducer; i++) {
+                        pipeline.publish(correlationIds.incrementAndGet(),
+                                agreements.get(random.nextInt(agreements.size())),
+                                agreements.get(random.nextInt(agreements.size())),
+                                0, 0, random.nextLong(1, 10_000), 0);
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        assertEquals(producers * transfersPerProducer, results.size());
+        assertFalse(results.containsValue(TransferResult.FAILED));
+        BigDecimal total = BigDecimal.ZERO;
+        for (Agreement agreement : agreements) {
+            total = total.add(balance(agreement));
+        }
+        assertEquals(0, new BigDecimal(20 * 1000).compareTo(total));
+    }
+
+    @Test
+    void closeWhilePublishingTest() throws InterruptedException {
+        Agreement first = agreement(1L, 1000);
+        Agreement second = agreement(2L, 1000);
+        AtomicLong correlationIds = new AtomicLong();
+        AtomicLong accepted = new AtomicLong();
+        int producers = 4;
+
+        TransferPipeline pipeline = new TransferPipeline(accountService, 16, collector);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int producer = 0; producer < producers; producer++) {
+            executor.execute(() -> {
+                try {
+                    while (true) {
+                        pipeline.publish(correlationIds.incrementAndGet(), first, second, 0, 0, 1, 0);
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // closed
+                }
+            });
+        }
+        Thread.sleep(50);
+        pipeline.close();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(accepted.get(), results.size());
+        assertThrows(IllegalStateException.class, () -> pipeline.publish(0, first, second, 0, 0, 1, 0));
+    }
+
+    @Test
+    void journalTest() throws InterruptedException {
+        Agreement first = agreement(1L, 100);
+        Agreement second = agreement(2L, 0);
+        Path file = dir.resolve("transfers.wal");
+
+        try (WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.Durability.STRICT, Duration.ZERO)) {
+            try (TransferPipeline pipeline = new TransferPipeline(accountService, 8,
+                    new JournalingTransferHandler(log), collector)) {
+                for (int i = 1; i <= 20; i++) {
+                    pipeline.publish(i, first, second, i % 2, 0, 150, 200);
+                }
+            }
+
+            List<JournalingTransferHandler.JournaledTransfer> journaled = new ArrayList<>();
+            log.replay(0, record -> journaled.addAll(JournalingTransferHandler.decode(record)));
+
+            assertEquals(10, journaled.size());
+            for (JournalingTransferHandler.JournaledTransfer transfer : journaled) {
+                assertEquals(TransferResult.COMPLETED, results.get(transfer.correlationId()));
+                assertEquals(150, transfer.amount());
+                assertEquals(3, transfer.commission());
+            }
+        }
+        assertEquals(new BigDecimal(15), balance(second));
+    }
+
+    @Test
+    void endOfBatchSkipsCancelledSlotsTest() {
+        RingBuffer<TransferSlot> ringBuffer = new RingBuffer<>(8, TransferSlot::new);
+        for (int i = 0; i < 4; i++) {
+            ringBuffer.get(ringBuffer.tryNext()).request(i, null, null, 0, 0, 1, 0);
+        }
+        ringBuffer.get(2).cancel();
+        ringBuffer.get(3).cancel();
+
+        assertEquals(1, TransferPipeline.lastLive(ringBuffer, 0, 3));
+        assertEquals(1, TransferPipeline.lastLive(ringBuffer, 1, 2));
+        assertEquals(1, TransferPipeline.lastLive(ringBuffer, 2, 3));
+    }
+
+    @Test
+    void failedJournalAppendIsRetriedTest() {
+        WriteAheadLog log = mock(WriteAheadLog.class);
+        List<Integer> appended = new ArrayList<>();
+        when(log.append(any(byte[].class), anyInt(), anyInt()))
+                .thenThrow(new IllegalStateException("closed"))
+                .thenAnswer(invocation -> {
+                    appended.add(ByteBuffer.wrap(invocation.<byte[]>getArgument(0)).getInt());
+                    return 0L;
+                });
+        JournalingTransferHandler handler = new JournalingTransferHandler(log);
+
+        assertThrows(IllegalStateException.class, () -> handler.onTransfer(completed(1), 0, true));
+        handler.onTransfer(completed(2), 1, true);
+
+        assertEquals(List.of(2), appended);
+    }
+
+    @Test
+    void commissionRoundingTest() {
+        assertEquals(2, TransferPipeline.commission(250, 100));
+        assertEquals(4, TransferPipeline.commission(350, 100));
+        assertEquals(3, TransferPipeline.commission(251, 100));
+        assertEquals(0, TransferPipeline.commission(1000, 0));
+    }
+
+    private static TransferSlot completed(long correlationId) {
+        TransferSlot slot = new TransferSlot();
+        slot.request(correlationId, null, null, 0, 0, 100, 0);
+        slot.setResult(TransferResult.COMPLETED);
+        return slot;
+    }
+
+    private Agreement agreement(long id, int amount) {
+        Agreement agreement = new Agreement();
+        agreement.setId(id);
+        accountService.addAccount(agreement, "acc" + id, 0, new BigDecimal(amount));
+        return agreement;
+    }
+
+    private BigDecimal balance(Agreement agreement) {
+        List<Account> accounts = accountService.getAccounts(agreement, 0);
+        return accounts.get(0).getAmount();
+    }
+}